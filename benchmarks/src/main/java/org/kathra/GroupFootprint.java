@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Group;
+import org.kathra.core.model.User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Heap retained by the groups listed at the start of synchronizeGroups, held as generated Group models or as
+ * GroupSnapshots. Usage: GroupFootprint [groups] [members per group]
+ */
+public class GroupFootprint {
+
+    public static void main(String[] args) {
+        int groups = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int members = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        long before = usedHeap();
+        List<Group> fromUserManager = BenchmarkFixtures.groups(groups, members);
+        List<Group> fromResourceManager = resourceManagerGroups(groups, members);
+        Map<String, Group> byPath = fromResourceManager.stream().collect(Collectors.toMap(Group::getPath, g -> g));
+        long modelBytes = usedHeap() - before;
+        System.out.println(String.format("models: %d groups x %d members, %,d bytes (%,d per group)", byPath.size(),
+                members, modelBytes, modelBytes / groups));
+        fromUserManager = null;
+        fromResourceManager = null;
+        byPath = null;
+
+        before = usedHeap();
+        MemberSets memberSets = new MemberSets(new MemberDictionary());
+        List<GroupSnapshot> snapshots = GroupSnapshot.of(BenchmarkFixtures.groups(groups, members), memberSets);
+        Map<String, GroupSnapshot> snapshotsByPath = GroupSnapshot.of(resourceManagerGroups(groups, members), null)
+                .stream().collect(Collectors.toMap(GroupSnapshot::getPath, g -> g));
+        long snapshotBytes = usedHeap() - before;
+        System.out.println(String.format("snapshots: %d groups, %,d bytes (%,d per group)", snapshots.size()
+                + snapshotsByPath.size() - groups, snapshotBytes, snapshotBytes / groups));
+        System.out.println(String.format("ratio: %.1fx", (double) modelBytes / Math.max(1, snapshotBytes)));
+    }
+
+    private static List<Group> resourceManagerGroups(int groups, int members) {
+        List<Group> list = BenchmarkFixtures.groups(groups, members);
+        for (Group group : list)
+            group.technicalUser(new User().id("user" + group.getId()).name(group.getName() + "_technicaluser"));
+        return list;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
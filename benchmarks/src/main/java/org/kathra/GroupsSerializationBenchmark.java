@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Group;
+import org.kathra.utils.serialization.GsonUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the group lists logged by synchronizeGroups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GroupsSerializationBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int groups;
+
+    @Param({"20"})
+    int members;
+
+    List<Group> groupList;
+
+    @Setup
+    public void setUp() {
+        groupList = BenchmarkFixtures.groups(groups, members);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return GsonUtils.toJson(groupList);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.utils.ApiException;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RSA key generation done for every group without key pair.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class KeyGenerationBenchmark {
+
+    UserSynchronizerManager manager;
+
+    @Setup
+    public void setUp() throws ApiException {
+        manager = BenchmarkFixtures.manager(Collections.emptyList());
+    }
+
+    @Benchmark
+    public KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        return manager.generateKeyPair();
+    }
+}
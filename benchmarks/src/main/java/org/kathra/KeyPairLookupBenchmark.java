@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Group;
+import org.kathra.core.model.KeyPair;
+import org.kathra.utils.ApiException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key pair lookup of a group among all the existing key pairs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyPairLookupBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    int keys;
+
+    UserSynchronizerManager manager;
+    Group existing;
+    Group missing;
+
+    @Setup
+    public void setUp() throws ApiException {
+        manager = BenchmarkFixtures.manager(BenchmarkFixtures.keyPairs(keys));
+        existing = new Group().id(Integer.toString(keys / 2));
+        missing = new Group().id("missing");
+    }
+
+    @Benchmark
+    public Optional<KeyPair> existingKey() throws ApiException {
+        return manager.getKeyPairFromGroup(existing);
+    }
+
+    @Benchmark
+    public Optional<KeyPair> missingKey() throws ApiException {
+        return manager.getKeyPairFromGroup(missing);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * End-to-end load run of the synchronizer against {@link StubManagerServer}. The clients, synchronizers and
+ * interceptors are wired by {@link UserSynchronizer#createManager}, so the whole HTTP path is exercised.
+ * <p>
+ * Arguments are key=value pairs:
+ * <ul>
+ * <li>groups (100), members (10): size of the data set</li>
+ * <li>ready (0.8): fraction of the groups already READY in the resource manager, only their members are synced</li>
+ * <li>profile.&lt;manager&gt;[:METHOD[:collection]]=median/p99[/errorRate]: latency in ms and error rate</li>
+ * <li>report: file receiving the run report</li>
+ * <li>replay: RECORD_FILE of a real run, served by {@link TrafficReplayServer} instead of the synthetic data</li>
+ * <li>timeScale (1.0): factor applied to the recorded timings when replaying</li>
+ * </ul>
+ * e.g. {@code java -cp benchmarks.jar org.kathra.LoadHarness groups=500 profile.source-manager=30/400/0.01}
+ * or {@code java -cp benchmarks.jar org.kathra.LoadHarness replay=traffic.jsonl.gz timeScale=0.5}
+ */
+public class LoadHarness {
+
+    static Logger log = LoggerFactory.getLogger("LoadHarness");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0)
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        int groups = Integer.parseInt(options.getOrDefault("groups", "100"));
+        int members = Integer.parseInt(options.getOrDefault("members", "10"));
+        double ready = Double.parseDouble(options.getOrDefault("ready", "0.8"));
+
+        if (options.containsKey("replay")) {
+            double timeScale = Double.parseDouble(options.getOrDefault("timeScale", "1.0"));
+            try (TrafficReplayServer server = new TrafficReplayServer(options.get("replay"), timeScale)) {
+                for (String line : run(server, options.get("report")))
+                    System.out.println(line);
+            }
+            return;
+        }
+        try (StubManagerServer server = new StubManagerServer()) {
+            options.forEach((key, value) -> {
+                if (key.startsWith("profile."))
+                    server.profile(key.substring("profile.".length()), StubManagerServer.Profile.parse(value));
+            });
+            seed(server, groups, members, ready);
+            for (String line : run(server, options.get("report")))
+                System.out.println(line);
+        }
+    }
+
+    /**
+     * Groups and members in the user manager, the READY fraction of them with key pairs in the resource manager.
+     */
+    public static void seed(StubManagerServer server, int groups, int members, double ready) {
+        for (int i = 0; i < groups; i++) {
+            String path = "kathra-projects/group" + i;
+            List<Map<String, Object>> assignations = new ArrayList<>();
+            for (int m = 0; m < members; m++) {
+                String name = "user" + ((i * members / 2 + m) % (groups * members));
+                assignations.add(Collections.singletonMap("name", name));
+                server.seed("user-manager", "users", item("id", name, "name", name));
+            }
+            server.seed("user-manager", "groups", item("id", "um" + i, "name", "group" + i, "path", path, "members", assignations));
+            if (i < groups * ready) {
+                String id = "group" + i;
+                server.seed("resource-manager", "groups", item("id", id, "name", "group" + i, "path", path,
+                        "status", "READY", "pipelineFolderStatus", "READY", "binaryRepositoryStatus", "READY",
+                        "sourceRepositoryStatus", "READY"));
+                server.seed("resource-manager", "keypairs", item("id", "key" + i, "group", item("id", id),
+                        "publicKey", "ssh-rsa AAAA" + i, "privateKey", "private" + i));
+            }
+        }
+    }
+
+    /**
+     * Synchronizes once and describes throughput, wall time and calls per backend.
+     */
+    public static List<String> run(ManagerStubs server, String reportFile) throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("SOURCE_MANAGER_URL", server.url("source-manager"));
+        properties.put("PIPELINE_MANAGER_URL", server.url("pipeline-manager"));
+        properties.put("USER_MANAGER_URL", server.url("user-manager"));
+        properties.put("RESOURCE_MANAGER_URL", server.url("resource-manager"));
+        properties.put("BINARY_REPOSITORY_MANAGER_URL_NEXUS", server.url("binary-repository-nexus"));
+        properties.put("BINARY_REPOSITORY_MANAGER_URL_HARBOR", server.url("binary-repository-harbor"));
+        properties.put("USERNAME", "load-harness");
+        properties.put("PASSWORD", "load-harness");
+        Config config = new Config(properties);
+
+        SyncContext context = new SyncContext();
+        RunReporter reporter = new RunReporter(reportFile, 10);
+        context.runReporter(reporter);
+        KeycloackSession session = new KeycloackSession(new User().name(config.getUsername()), "load-harness");
+        UserSynchronizerManager manager = UserSynchronizer.createManager(config, session, context);
+
+        long start = System.nanoTime();
+        try {
+            manager.synchronizeGroups();
+        } catch (Exception e) {
+            log.warn("Synchronization ended with an error: " + e.toString());
+        }
+        long wallTimeMs = (System.nanoTime() - start) / 1_000_000;
+
+        RunReport report = reporter.build();
+        int groups = report.getGroups().size();
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("groups=%d wallTimeMs=%d throughput=%.2f groups/s", groups, wallTimeMs,
+                wallTimeMs == 0 ? 0 : groups * 1000.0 / wallTimeMs));
+        lines.add("outcomes " + report.getOutcomes());
+        lines.add("calls by backend " + report.getCallsByBackend());
+        lines.add("call time ms by backend " + report.getCallTimeMsByBackend());
+        lines.add("errors by backend " + report.getErrorsByBackend());
+        lines.add("http requests by manager " + server.getRequests());
+        lines.add("stub errors by manager " + server.getErrors());
+        return lines;
+    }
+
+    private static Map<String, Object> item(Object... keyValues) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2)
+            item.put((String) keyValues[i], keyValues[i + 1]);
+        return item;
+    }
+}
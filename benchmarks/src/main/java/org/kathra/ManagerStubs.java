@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import java.util.Map;
+
+/**
+ * Local HTTP stand-in for the Kathra managers.
+ */
+public interface ManagerStubs extends AutoCloseable {
+
+    /**
+     * Base URL of a manager, one of {@link StubManagerServer#MANAGERS}.
+     */
+    String url(String manager);
+
+    Map<String, Long> getRequests();
+
+    Map<String, Long> getErrors();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Assignation;
+import org.kathra.core.model.Membership;
+import org.openjdk.jmh.annotations.*;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Membership diff and member lookup on object lists against interned bitmaps, 10% of the members being added
+ * and removed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemberBitmapBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int members;
+
+    List<Assignation> desiredList;
+    List<Membership> desiredMemberships;
+    List<Membership> observedList;
+    MemberSets memberSets;
+    RoaringBitmap desired;
+    RoaringBitmap observed;
+    String lastMember;
+
+    @Setup
+    public void setUp() {
+        desiredList = BenchmarkFixtures.assignations(members, 0);
+        desiredMemberships = BenchmarkFixtures.memberships(members, 0);
+        observedList = BenchmarkFixtures.memberships(members, Math.max(1, members / 10));
+        memberSets = new MemberSets(new MemberDictionary());
+        desired = memberSets.ofAssignations(desiredList);
+        observed = memberSets.ofMemberships(observedList);
+        lastMember = BenchmarkFixtures.memberName(members - 1);
+    }
+
+    @Benchmark
+    public MembershipDiff listDiff() {
+        return MembershipDiff.between(desiredMemberships, observedList);
+    }
+
+    @Benchmark
+    public int bitmapDiff() {
+        return RoaringBitmap.andNot(desired, observed).getCardinality()
+                + RoaringBitmap.andNot(observed, desired).getCardinality();
+    }
+
+    @Benchmark
+    public int bitmapDiffFromLists() {
+        RoaringBitmap wanted = memberSets.ofAssignations(desiredList);
+        RoaringBitmap existing = memberSets.ofMemberships(observedList);
+        return RoaringBitmap.andNot(wanted, existing).getCardinality()
+                + RoaringBitmap.andNot(existing, wanted).getCardinality();
+    }
+
+    @Benchmark
+    public boolean listIsMember() {
+        return desiredList.stream().anyMatch(a -> a.getName().equals(lastMember));
+    }
+
+    @Benchmark
+    public boolean bitmapIsMember() {
+        return memberSets.isMember(desired, lastMember);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Assignation;
+import org.kathra.core.model.Group;
+import org.kathra.core.model.Membership;
+import org.kathra.utils.ApiException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Membership diff of UserSynchronizerManager.synchronizeUsers, 10% of the members being added and removed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MembershipDiffBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    int members;
+
+    UserSynchronizerManager manager;
+    Group group;
+    List<Assignation> desired;
+    List<Membership> observed;
+
+    @Setup
+    public void setUp() throws ApiException {
+        manager = BenchmarkFixtures.manager(Collections.emptyList());
+        group = BenchmarkFixtures.group(0, 0);
+        desired = BenchmarkFixtures.assignations(members, 0);
+        observed = BenchmarkFixtures.memberships(members, Math.max(1, members / 10));
+    }
+
+    @Benchmark
+    public void synchronizeUsers() throws ApiException {
+        manager.synchronizeUsers(group, desired, observed, "components");
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Assignation;
+import org.kathra.core.model.Membership;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heap retained by the members of many groups, held as Assignation and Membership lists or as interned bitmaps.
+ * Usage: MembershipFootprint [groups] [members per group] [distinct users]
+ */
+public class MembershipFootprint {
+
+    public static void main(String[] args) {
+        int groups = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int members = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+
+        long before = usedHeap();
+        List<Object> lists = new ArrayList<>(groups * 2);
+        for (int g = 0; g < groups; g++) {
+            lists.add(BenchmarkFixtures.assignations(members, offset(g, members, users)));
+            lists.add(BenchmarkFixtures.memberships(members, offset(g, members, users)));
+        }
+        long listBytes = usedHeap() - before;
+        System.out.println(String.format("object lists: %d groups x %d members, %,d bytes", groups, members, listBytes));
+        lists = null;
+
+        before = usedHeap();
+        MemberSets memberSets = new MemberSets(new MemberDictionary());
+        List<RoaringBitmap> bitmaps = new ArrayList<>(groups * 2);
+        for (int g = 0; g < groups; g++) {
+            List<Assignation> assignations = BenchmarkFixtures.assignations(members, offset(g, members, users));
+            List<Membership> memberships = BenchmarkFixtures.memberships(members, offset(g, members, users));
+            bitmaps.add(memberSets.ofAssignations(assignations));
+            bitmaps.add(memberSets.ofMemberships(memberships));
+        }
+        long bitmapBytes = usedHeap() - before;
+        System.out.println(String.format("bitmaps: %,d names, %,d bytes (%,d in bitmaps)",
+                memberSets.getDictionary().size(), bitmapBytes,
+                bitmaps.stream().mapToLong(RoaringBitmap::getLongSizeInBytes).sum()));
+        System.out.println(String.format("ratio: %.1fx", (double) listBytes / Math.max(1, bitmapBytes)));
+    }
+
+    private static int offset(int group, int members, int users) {
+        return (int) ((long) group * members % Math.max(1, users - members));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.*;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP server standing in for the Kathra managers. Every manager is served under its own context
+ * ("/source-manager", "/resource-manager", ...) by a generic in-memory REST store: the first path segment after
+ * the api prefix is the collection, GET answers the collection or an item found by id, path or name, POST stores
+ * the body and echoes it, PUT/PATCH merge into the stored item.
+ * Latency and error rate are configured per manager, optionally narrowed to a method and a collection.
+ */
+public class StubManagerServer implements ManagerStubs {
+
+    public static final String[] MANAGERS = {"source-manager", "pipeline-manager", "user-manager",
+            "resource-manager", "binary-repository-nexus", "binary-repository-harbor"};
+
+    /**
+     * Log-normal latency given by its median and 99th percentile, plus an error rate.
+     */
+    public static class Profile {
+        final private double medianMs;
+        final private double sigma;
+        final private double errorRate;
+
+        public Profile(double medianMs, double p99Ms, double errorRate) {
+            this.medianMs = medianMs;
+            this.sigma = medianMs > 0 && p99Ms > medianMs ? Math.log(p99Ms / medianMs) / 2.326 : 0;
+            this.errorRate = errorRate;
+        }
+
+        /**
+         * Parses "median/p99[/errorRate]", e.g. "20/250/0.01".
+         */
+        public static Profile parse(String value) {
+            String[] parts = value.split("/");
+            double median = Double.parseDouble(parts[0]);
+            double p99 = parts.length > 1 ? Double.parseDouble(parts[1]) : median;
+            double errorRate = parts.length > 2 ? Double.parseDouble(parts[2]) : 0;
+            return new Profile(median, p99, errorRate);
+        }
+
+        long sampleMs() {
+            if (medianMs <= 0)
+                return 0;
+            return Math.round(medianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+
+        boolean fails() {
+            return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+        }
+    }
+
+    final private HttpServer server;
+    final private ExecutorService executor = Executors.newCachedThreadPool();
+    final private Gson gson = new Gson();
+    final private Map<String, Map<String, Map<String, JsonObject>>> stores = new ConcurrentHashMap<>();
+    final private Map<String, Profile> profiles = new ConcurrentHashMap<>();
+    final private Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    final private Map<String, AtomicLong> errors = new ConcurrentHashMap<>();
+    final private AtomicLong ids = new AtomicLong();
+
+    public StubManagerServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        for (String manager : MANAGERS) {
+            stores.put(manager, new ConcurrentHashMap<>());
+            requests.put(manager, new AtomicLong());
+            errors.put(manager, new AtomicLong());
+            server.createContext("/" + manager, exchange -> handle(manager, exchange));
+        }
+        server.start();
+    }
+
+    @Override
+    public String url(String manager) {
+        return "http://localhost:" + server.getAddress().getPort() + "/" + manager;
+    }
+
+    /**
+     * @param key manager, "manager:METHOD" or "manager:METHOD:collection", the most specific one applies
+     */
+    public StubManagerServer profile(String key, Profile profile) {
+        profiles.put(key, profile);
+        return this;
+    }
+
+    /**
+     * Stores an item in a collection of a manager, it is given an id when it has none.
+     */
+    public StubManagerServer seed(String manager, String collection, Object item) {
+        store(manager, collection, gson.toJsonTree(item).getAsJsonObject());
+        return this;
+    }
+
+    @Override
+    public Map<String, Long> getRequests() {
+        return snapshot(requests);
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        return snapshot(errors);
+    }
+
+    private Map<String, Long> snapshot(Map<String, AtomicLong> counters) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((manager, counter) -> snapshot.put(manager, counter.get()));
+        return snapshot;
+    }
+
+    private void handle(String manager, HttpExchange exchange) throws IOException {
+        try {
+            requests.get(manager).incrementAndGet();
+            String method = exchange.getRequestMethod();
+            List<String> segments = segments(manager, exchange.getRequestURI().getRawPath());
+            String collection = segments.isEmpty() ? "" : segments.get(0);
+            Profile profile = profile(manager, method, collection);
+            if (profile != null) {
+                long latency = profile.sampleMs();
+                if (latency > 0)
+                    Thread.sleep(latency);
+                if (profile.fails()) {
+                    errors.get(manager).incrementAndGet();
+                    respond(exchange, 503, "{\"message\":\"injected failure\"}");
+                    return;
+                }
+            }
+            String body = read(exchange.getRequestBody());
+            respond(exchange, method, collection, segments.size() > 1 ? segments.get(1) : null,
+                    query(exchange.getRequestURI().getRawQuery()), body, manager);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{}");
+        } catch (RuntimeException e) {
+            errors.get(manager).incrementAndGet();
+            respond(exchange, 500, gson.toJson(Collections.singletonMap("message", e.toString())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, String method, String collection, String id, Map<String, String> query,
+                         String body, String manager) throws IOException {
+        Map<String, JsonObject> items = stores.get(manager).computeIfAbsent(collection, c -> new ConcurrentHashMap<>());
+        JsonElement request = body.isEmpty() ? null : parse(body);
+        switch (method) {
+            case "GET":
+                if (id == null) {
+                    JsonArray list = new JsonArray();
+                    items.values().stream().filter(item -> matches(item, query)).forEach(list::add);
+                    respond(exchange, 200, list.toString());
+                    return;
+                }
+                JsonObject item = find(items, id);
+                respond(exchange, item == null ? 404 : 200, item == null ? "{\"message\":\"not found\"}" : item.toString());
+                return;
+            case "POST":
+                if (request != null && request.isJsonObject()) {
+                    respond(exchange, 200, store(manager, collection, request.getAsJsonObject()).toString());
+                } else if (request != null && request.isJsonArray()) {
+                    for (JsonElement element : request.getAsJsonArray())
+                        if (element.isJsonObject())
+                            store(manager, collection, element.getAsJsonObject());
+                    respond(exchange, 200, request.toString());
+                } else {
+                    respond(exchange, 200, "{}");
+                }
+                return;
+            case "PUT":
+            case "PATCH":
+                JsonObject existing = id == null ? null : find(items, id);
+                if (existing == null) {
+                    respond(exchange, 200, request == null ? "{}" : request.toString());
+                    return;
+                }
+                if (request != null && request.isJsonObject())
+                    request.getAsJsonObject().entrySet().forEach(e -> existing.add(e.getKey(), e.getValue()));
+                respond(exchange, 200, existing.toString());
+                return;
+            case "DELETE":
+                JsonObject removed = id == null ? null : find(items, id);
+                if (removed != null)
+                    items.values().remove(removed);
+                respond(exchange, 200, request == null ? "{}" : request.toString());
+                return;
+            default:
+                respond(exchange, 405, "{}");
+        }
+    }
+
+    private JsonObject store(String manager, String collection, JsonObject item) {
+        if (!item.has("id"))
+            item.addProperty("id", Long.toString(ids.incrementAndGet()));
+        stores.get(manager).computeIfAbsent(collection, c -> new ConcurrentHashMap<>())
+                .put(item.get("id").getAsString(), item);
+        return item;
+    }
+
+    private JsonObject find(Map<String, JsonObject> items, String key) {
+        JsonObject item = items.get(key);
+        if (item != null)
+            return item;
+        for (JsonObject candidate : items.values())
+            if (hasValue(candidate, "path", key) || hasValue(candidate, "name", key))
+                return candidate;
+        return null;
+    }
+
+    private boolean matches(JsonObject item, Map<String, String> query) {
+        for (Map.Entry<String, String> criterion : query.entrySet())
+            if (item.has(criterion.getKey()) && !hasValue(item, criterion.getKey(), criterion.getValue()))
+                return false;
+        return true;
+    }
+
+    private boolean hasValue(JsonObject item, String field, String value) {
+        JsonElement element = item.get(field);
+        return element != null && element.isJsonPrimitive() && element.getAsString().equals(value);
+    }
+
+    private Profile profile(String manager, String method, String collection) {
+        Profile profile = profiles.get(manager + ":" + method + ":" + collection);
+        if (profile == null)
+            profile = profiles.get(manager + ":" + method);
+        if (profile == null)
+            profile = profiles.get(manager);
+        return profile;
+    }
+
+    /**
+     * Path segments after the manager context and the "api"/"v*" prefix, decoded.
+     */
+    private List<String> segments(String manager, String rawPath) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : rawPath.substring(manager.length() + 1).split("/")) {
+            if (segment.isEmpty())
+                continue;
+            if (segments.isEmpty() && (segment.equals("api") || segment.matches("v[0-9]+")))
+                continue;
+            segments.add(decode(segment));
+        }
+        return segments;
+    }
+
+    private Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null)
+            return query;
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0)
+                query.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static JsonElement parse(String body) {
+        try {
+            return JsonParser.parseString(body);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private static String read(InputStream input) throws IOException {
+        return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
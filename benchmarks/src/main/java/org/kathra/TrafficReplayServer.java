@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves a {@link TrafficRecorder} recording back. Requests are matched by manager, method and path (query
+ * included); repeated requests get the recorded responses in order, the last one being served again once they
+ * are exhausted. Each response is delayed by its recorded duration times the speed factor.
+ */
+public class TrafficReplayServer implements ManagerStubs {
+
+    final private HttpServer server;
+    final private ExecutorService executor = Executors.newCachedThreadPool();
+    final private double timeScale;
+    final private Map<String, List<TrafficRecorder.Exchange>> exchanges = new HashMap<>();
+    final private Map<String, AtomicLong> positions = new ConcurrentHashMap<>();
+    final private Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    final private Map<String, AtomicLong> misses = new ConcurrentHashMap<>();
+
+    /**
+     * @param timeScale factor applied to the recorded durations, 0 answers immediately
+     */
+    public TrafficReplayServer(String file, double timeScale) throws IOException {
+        this.timeScale = timeScale;
+        for (TrafficRecorder.Exchange exchange : TrafficRecorder.read(file))
+            exchanges.computeIfAbsent(key(exchange.getManager(), exchange.getMethod(), exchange.getPath()),
+                    k -> new ArrayList<>()).add(exchange);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        for (String manager : StubManagerServer.MANAGERS) {
+            requests.put(manager, new AtomicLong());
+            misses.put(manager, new AtomicLong());
+            server.createContext("/" + manager, exchange -> handle(manager, exchange));
+        }
+        server.start();
+    }
+
+    @Override
+    public String url(String manager) {
+        return "http://localhost:" + server.getAddress().getPort() + "/" + manager;
+    }
+
+    @Override
+    public Map<String, Long> getRequests() {
+        return snapshot(requests);
+    }
+
+    /**
+     * Requests absent from the recording, by manager.
+     */
+    @Override
+    public Map<String, Long> getErrors() {
+        return snapshot(misses);
+    }
+
+    private Map<String, Long> snapshot(Map<String, AtomicLong> counters) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((manager, counter) -> snapshot.put(manager, counter.get()));
+        return snapshot;
+    }
+
+    private void handle(String manager, HttpExchange exchange) throws IOException {
+        try {
+            requests.get(manager).incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            String path = exchange.getRequestURI().getRawPath().substring(manager.length() + 1);
+            if (exchange.getRequestURI().getRawQuery() != null)
+                path += "?" + exchange.getRequestURI().getRawQuery();
+            String key = key(manager, exchange.getRequestMethod(), path);
+            List<TrafficRecorder.Exchange> recorded = exchanges.get(key);
+            if (recorded == null) {
+                misses.get(manager).incrementAndGet();
+                respond(exchange, 404, "{\"message\":\"not recorded\"}");
+                return;
+            }
+            int position = (int) positions.computeIfAbsent(key, k -> new AtomicLong()).getAndIncrement();
+            TrafficRecorder.Exchange replayed = recorded.get(Math.min(position, recorded.size() - 1));
+            long delay = Math.round(replayed.getDurationMs() * timeScale);
+            if (delay > 0)
+                Thread.sleep(delay);
+            respond(exchange, replayed.getStatus(), replayed.getResponseBody());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "{}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String key(String manager, String method, String path) {
+        return manager + " " + method + " " + path;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
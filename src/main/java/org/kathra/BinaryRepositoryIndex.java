@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.reflect.TypeToken;
+import org.kathra.core.model.BinaryRepository;
+import org.kathra.core.model.Group;
+import org.kathra.resourcemanager.client.BinaryRepositoriesClient;
+import org.kathra.utils.ApiException;
+
+import java.lang.reflect.Type;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binary repositories of the resource manager, loaded in one call on the first lookup and indexed by id and by
+ * group id and type. Repositories created during the run are added, patched ones are updated in place.
+ */
+public class BinaryRepositoryIndex {
+
+    private static final Type REPOSITORIES = new TypeToken<List<BinaryRepository>>() {}.getType();
+
+    final private BinaryRepositoriesClient binaryRepositoriesClient;
+    final private SingleFlight singleFlight;
+    final private Instrumentation instrumentation;
+    final private SyncContext context;
+    final private ConcurrentHashMap<String, BinaryRepository> repositoriesById = new ConcurrentHashMap<>();
+    final private ConcurrentHashMap<String, Map<BinaryRepository.TypeEnum, BinaryRepository>> repositoriesByGroupId = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public BinaryRepositoryIndex(BinaryRepositoriesClient binaryRepositoriesClient, SyncContext context) {
+        this.binaryRepositoriesClient = binaryRepositoriesClient;
+        this.singleFlight = context.getSingleFlight();
+        this.instrumentation = context.getInstrumentation();
+        this.context = context;
+    }
+
+    /**
+     * Repositories of a group by type: the ones indexed under its id and the ones it references, those missing
+     * from the index being read one by one.
+     */
+    public Map<BinaryRepository.TypeEnum, BinaryRepository> ofGroup(Group group) throws ApiException {
+        load();
+        Map<BinaryRepository.TypeEnum, BinaryRepository> repositories = new EnumMap<>(BinaryRepository.TypeEnum.class);
+        Map<BinaryRepository.TypeEnum, BinaryRepository> indexed = repositoriesByGroupId.get(group.getId());
+        if (indexed != null)
+            repositories.putAll(indexed);
+        if (group.getBinaryRepositories() != null) {
+            for (BinaryRepository reference : group.getBinaryRepositories()) {
+                BinaryRepository repository = repositoriesById.get(reference.getId());
+                if (repository == null) {
+                    repository = instrumentation.call(Backend.RESOURCE_MANAGER, "getBinaryRepository",
+                            () -> binaryRepositoriesClient.getBinaryRepository(reference.getId()));
+                    if (repository == null)
+                        continue;
+                    put(repository);
+                }
+                if (repository.getType() != null)
+                    repositories.put(repository.getType(), repository);
+            }
+        }
+        return repositories;
+    }
+
+    /**
+     * Indexes a repository just added to the resource manager.
+     */
+    public void added(BinaryRepository repository) {
+        context.invalidateShared("binaryRepositories");
+        put(repository);
+    }
+
+    public void put(BinaryRepository repository) {
+        if (repository.getId() != null)
+            repositoriesById.put(repository.getId(), repository);
+        if (repository.getGroup() != null && repository.getGroup().getId() != null && repository.getType() != null)
+            repositoriesByGroupId.computeIfAbsent(repository.getGroup().getId(), id -> new ConcurrentHashMap<>())
+                    .putIfAbsent(repository.getType(), repository);
+    }
+
+    public int size() {
+        return repositoriesById.size();
+    }
+
+    private void load() throws ApiException {
+        if (loaded)
+            return;
+        synchronized (this) {
+            if (loaded)
+                return;
+            List<BinaryRepository> repositories = context.sharedRead("binaryRepositories", REPOSITORIES,
+                    () -> singleFlight.execute("binaryRepositories", () -> instrumentation.call(Backend.RESOURCE_MANAGER,
+                            "getBinaryRepositories", () -> binaryRepositoriesClient.getBinaryRepositories())));
+            if (repositories != null)
+                for (BinaryRepository repository : repositories)
+                    if (repository.getGroup() == null || context.isInShard(repository.getGroup().getId()))
+                        put(repository);
+            loaded = true;
+        }
+    }
+}
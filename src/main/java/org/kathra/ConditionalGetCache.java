@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.squareup.okhttp.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Revalidates the list endpoints of the managers (groups, binary repositories) with the validators of their last
+ * response, kept in a directory between runs: the body of a list answered 304 Not Modified is read back from the
+ * gzipped copy instead of being downloaded again. Responses without ETag nor Last-Modified are not kept, their
+ * endpoint is then downloaded at each run as before.
+ * <p>
+ * The users and key pairs lists carry passwords and private keys, they are never written to the directory.
+ */
+public class ConditionalGetCache implements Interceptor, Closeable {
+
+    private static Logger log = LoggerFactory.getLogger("ConditionalGetCache");
+    private static final Gson GSON = new Gson();
+    private static final Type ENTRIES = new TypeToken<HashMap<String, Entry>>() {}.getType();
+    private static final String INDEX = "index.json";
+    static final Set<String> LIST_ENDPOINTS = new HashSet<>(Arrays.asList("groups", "binaryrepositories"));
+
+    final private Path directory;
+    final private ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    final private LongAdder notModified = new LongAdder();
+    final private LongAdder downloaded = new LongAdder();
+    final private LongAdder withoutValidators = new LongAdder();
+
+    static class Entry {
+        String etag;
+        String lastModified;
+        String contentType;
+        String file;
+    }
+
+    private ConditionalGetCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads the index of the cache directory, created if missing, an unreadable index giving an empty cache. The
+     * responses of the endpoints no longer cached are deleted.
+     */
+    public static ConditionalGetCache open(String directory) throws IOException {
+        ConditionalGetCache cache = new ConditionalGetCache(Paths.get(directory));
+        Files.createDirectories(cache.directory);
+        Path index = cache.directory.resolve(INDEX);
+        if (Files.exists(index)) {
+            try (Reader reader = Files.newBufferedReader(index, StandardCharsets.UTF_8)) {
+                Map<String, Entry> entries = GSON.fromJson(reader, ENTRIES);
+                if (entries != null)
+                    cache.entries.putAll(entries);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Cannot read conditional GET cache " + index + ", starting without it. Error: " + e.toString());
+            }
+        }
+        for (String url : new ArrayList<>(cache.entries.keySet())) {
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            if (httpUrl == null || !isListEndpoint(httpUrl))
+                cache.forget(url);
+        }
+        return cache;
+    }
+
+    static boolean isListEndpoint(Request request) {
+        return "GET".equals(request.method()) && isListEndpoint(request.httpUrl());
+    }
+
+    private static boolean isListEndpoint(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        return !segments.isEmpty() && LIST_ENDPOINTS.contains(segments.get(segments.size() - 1).toLowerCase());
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!isListEndpoint(request))
+            return chain.proceed(request);
+        String url = request.urlString();
+        Entry cached = entries.get(url);
+        Request conditional = request;
+        if (cached != null) {
+            Request.Builder builder = request.newBuilder();
+            if (cached.etag != null)
+                builder.header("If-None-Match", cached.etag);
+            if (cached.lastModified != null)
+                builder.header("If-Modified-Since", cached.lastModified);
+            conditional = builder.build();
+        }
+        Response response = chain.proceed(conditional);
+
+        if (response.code() == 304 && cached != null) {
+            byte[] body = read(cached);
+            if (body != null) {
+                response.body().close();
+                notModified.increment();
+                log.debug("Not modified: " + url);
+                return response.newBuilder().code(200).message("OK")
+                        .body(ResponseBody.create(cached.contentType == null ? null : MediaType.parse(cached.contentType), body))
+                        .build();
+            }
+            // the copy is gone, download the list without validators
+            response.body().close();
+            forget(url);
+            return chain.proceed(request);
+        }
+        if (response.code() != 200)
+            return response;
+
+        downloaded.increment();
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        if (etag == null && lastModified == null) {
+            withoutValidators.increment();
+            forget(url);
+            return response;
+        }
+        MediaType contentType = response.body().contentType();
+        byte[] body = response.body().bytes();
+        Entry entry = new Entry();
+        entry.etag = etag;
+        entry.lastModified = lastModified;
+        entry.contentType = contentType == null ? null : contentType.toString();
+        entry.file = UUID.nameUUIDFromBytes(url.getBytes(StandardCharsets.UTF_8)) + ".gz";
+        if (write(entry, body))
+            entries.put(url, entry);
+        else
+            forget(url);
+        return response.newBuilder().body(ResponseBody.create(contentType, body)).build();
+    }
+
+    private void forget(String url) {
+        Entry entry = entries.remove(url);
+        if (entry == null)
+            return;
+        try {
+            Files.deleteIfExists(directory.resolve(entry.file));
+        } catch (IOException e) {
+            log.warn("Cannot delete cached response " + entry.file + ". Error: " + e.toString());
+        }
+    }
+
+    private byte[] read(Entry entry) {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(directory.resolve(entry.file)))) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                body.write(buffer, 0, read);
+            return body.toByteArray();
+        } catch (IOException e) {
+            log.warn("Cannot read cached response " + entry.file + ". Error: " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the response to a temporary file of its own, concurrent writes of the same list never sharing one.
+     */
+    private boolean write(Entry entry, byte[] body) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(directory, entry.file, ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+                out.write(body);
+            }
+            Files.move(tmp, directory.resolve(entry.file), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            log.warn("Cannot cache response " + entry.file + ". Error: " + e.toString());
+            deleteQuietly(tmp);
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp == null)
+            return;
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("Cannot delete " + tmp + ". Error: " + e.toString());
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Saves the index, the responses being already written.
+     */
+    @Override
+    public void close() throws IOException {
+        Path tmp = Files.createTempFile(directory, INDEX, ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                GSON.toJson(new HashMap<>(entries), ENTRIES, writer);
+            }
+            Files.move(tmp, directory.resolve(INDEX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteQuietly(tmp);
+        }
+        log.info("Conditional GETs: " + this);
+    }
+
+    @Override
+    public String toString() {
+        return "notModified=" + notModified.sum() + " downloaded=" + downloaded.sum()
+                + " withoutValidators=" + withoutValidators.sum();
+    }
+}
@@ -22,6 +22,10 @@ package org.kathra;
 
 import org.kathra.utils.ConfigManager;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
 public class Config extends ConfigManager {
 
     private String SOURCE_MANAGER_URL;
@@ -32,35 +36,125 @@ public class Config extends ConfigManager {
     private String BINARY_REPOSITORY_MANAGER_URL_HARBOR;
     private String USERNAME;
     private String PASSWORD;
+    private String METRICS_PORT;
+    private String METRICS_FILE;
+    private String REPORT_FILE;
+    private int REPORT_TOP_GROUPS;
+    private String TRACING_EXPORTER;
+    private String TRACING_OTLP_ENDPOINT;
+    private String TRACING_FILE;
+    private String RECORD_FILE;
+    private int SHARD_INDEX;
+    private int SHARD_COUNT;
+    private String LEASE_DIR;
+    private long LEASE_TTL_SECONDS;
+    private String LEASE_HOLDER;
+    private String HISTORY_FILE;
+    private int WORKERS;
+    private long RUN_BUDGET_SECONDS;
+    private long RUN_BUDGET_MARGIN_SECONDS;
+    private long GROUP_BUDGET_SECONDS;
+    private String JOURNAL_FILE;
+    private String EXISTENCE_CACHE_FILE;
+    private String CONDITIONAL_GET_DIR;
+    private String SHARED_CACHE_URL;
+    private String SHARED_CACHE_PREFIX;
+    private long SHARED_CACHE_TTL_SECONDS;
+    private int SHARED_CACHE_TIMEOUT_MS;
+    private long EXISTENCE_POSITIVE_TTL_SECONDS;
+    private long EXISTENCE_NEGATIVE_TTL_SECONDS;
+    private int JOURNAL_COMPACT_RECORDS;
+    private long JOURNAL_MAX_AGE_HOURS;
+    private String CURSOR_FILE;
+    private long TERMINATION_GRACE_SECONDS;
+
 
+    final private Map<String, String> properties;
 
     public Config() {
-        SOURCE_MANAGER_URL = getProperty("SOURCE_MANAGER_URL");
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * @param properties values taking precedence over the environment
+     */
+    public Config(Map<String, String> properties) {
+        this.properties = properties;
+        SOURCE_MANAGER_URL = property("SOURCE_MANAGER_URL", null);
         if (!SOURCE_MANAGER_URL.startsWith("http"))
             SOURCE_MANAGER_URL = "http://" + SOURCE_MANAGER_URL;
 
-        PIPELINE_MANAGER_URL = getProperty("PIPELINE_MANAGER_URL");
+        PIPELINE_MANAGER_URL = property("PIPELINE_MANAGER_URL", null);
         if (!PIPELINE_MANAGER_URL.startsWith("http"))
             PIPELINE_MANAGER_URL = "http://" + PIPELINE_MANAGER_URL;
 
-        USER_MANAGER_URL = getProperty("USER_MANAGER_URL");
+        USER_MANAGER_URL = property("USER_MANAGER_URL", null);
         if (!USER_MANAGER_URL.startsWith("http"))
             USER_MANAGER_URL = "http://" + USER_MANAGER_URL;
 
-        RESOURCE_MANAGER_URL = getProperty("RESOURCE_MANAGER_URL");
+        RESOURCE_MANAGER_URL = property("RESOURCE_MANAGER_URL", null);
         if (!RESOURCE_MANAGER_URL.startsWith("http"))
             RESOURCE_MANAGER_URL = "http://" + RESOURCE_MANAGER_URL;
 
-        BINARY_REPOSITORY_MANAGER_URL_NEXUS = getProperty("BINARY_REPOSITORY_MANAGER_URL_NEXUS");
+        BINARY_REPOSITORY_MANAGER_URL_NEXUS = property("BINARY_REPOSITORY_MANAGER_URL_NEXUS", null);
         if (!BINARY_REPOSITORY_MANAGER_URL_NEXUS.startsWith("http"))
             BINARY_REPOSITORY_MANAGER_URL_NEXUS = "http://" + BINARY_REPOSITORY_MANAGER_URL_NEXUS;
 
-        BINARY_REPOSITORY_MANAGER_URL_HARBOR = getProperty("BINARY_REPOSITORY_MANAGER_URL_HARBOR");
+        BINARY_REPOSITORY_MANAGER_URL_HARBOR = property("BINARY_REPOSITORY_MANAGER_URL_HARBOR", null);
         if (!BINARY_REPOSITORY_MANAGER_URL_HARBOR.startsWith("http"))
             BINARY_REPOSITORY_MANAGER_URL_HARBOR = "http://" + BINARY_REPOSITORY_MANAGER_URL_HARBOR;
 
-        USERNAME = getProperty("USERNAME");
-        PASSWORD = getProperty("PASSWORD");
+        USERNAME = property("USERNAME", null);
+        PASSWORD = property("PASSWORD", null);
+
+        METRICS_PORT = property("METRICS_PORT", "");
+        METRICS_FILE = property("METRICS_FILE", "");
+
+        REPORT_FILE = property("REPORT_FILE", "");
+        REPORT_TOP_GROUPS = Integer.parseInt(property("REPORT_TOP_GROUPS", "10"));
+
+        TRACING_EXPORTER = property("TRACING_EXPORTER", "none");
+        TRACING_OTLP_ENDPOINT = property("TRACING_OTLP_ENDPOINT", "http://localhost:4318/v1/traces");
+        TRACING_FILE = property("TRACING_FILE", "spans.jsonl");
+
+        RECORD_FILE = property("RECORD_FILE", "");
+
+        // set by Kubernetes on the pods of an Indexed Job
+        SHARD_INDEX = Integer.parseInt(property("SHARD_INDEX", property("JOB_COMPLETION_INDEX", "0")));
+        SHARD_COUNT = Integer.parseInt(property("SHARD_COUNT", "1"));
+
+        LEASE_DIR = property("LEASE_DIR", "");
+        LEASE_TTL_SECONDS = Long.parseLong(property("LEASE_TTL_SECONDS", "600"));
+        LEASE_HOLDER = property("LEASE_HOLDER", property("HOSTNAME", UUID.randomUUID().toString()));
+
+        HISTORY_FILE = property("HISTORY_FILE", "");
+        WORKERS = Integer.parseInt(property("WORKERS", "1"));
+
+        RUN_BUDGET_SECONDS = Long.parseLong(property("RUN_BUDGET_SECONDS", "0"));
+        RUN_BUDGET_MARGIN_SECONDS = Long.parseLong(property("RUN_BUDGET_MARGIN_SECONDS",
+                Long.toString(Math.max(1, RUN_BUDGET_SECONDS / 10))));
+        GROUP_BUDGET_SECONDS = Long.parseLong(property("GROUP_BUDGET_SECONDS", "0"));
+        JOURNAL_FILE = property("JOURNAL_FILE", "");
+        JOURNAL_COMPACT_RECORDS = Integer.parseInt(property("JOURNAL_COMPACT_RECORDS", "10000"));
+        JOURNAL_MAX_AGE_HOURS = Long.parseLong(property("JOURNAL_MAX_AGE_HOURS", "168"));
+        EXISTENCE_CACHE_FILE = property("EXISTENCE_CACHE_FILE", "");
+        CONDITIONAL_GET_DIR = property("CONDITIONAL_GET_DIR", "");
+        SHARED_CACHE_URL = property("SHARED_CACHE_URL", "");
+        SHARED_CACHE_PREFIX = property("SHARED_CACHE_PREFIX", "kathra-sync:");
+        SHARED_CACHE_TTL_SECONDS = Long.parseLong(property("SHARED_CACHE_TTL_SECONDS", "300"));
+        SHARED_CACHE_TIMEOUT_MS = Integer.parseInt(property("SHARED_CACHE_TIMEOUT_MS", "2000"));
+        EXISTENCE_POSITIVE_TTL_SECONDS = Long.parseLong(property("EXISTENCE_POSITIVE_TTL_SECONDS",
+                Long.toString(ExistenceCache.DEFAULT_POSITIVE_TTL_MS / 1000)));
+        EXISTENCE_NEGATIVE_TTL_SECONDS = Long.parseLong(property("EXISTENCE_NEGATIVE_TTL_SECONDS",
+                Long.toString(ExistenceCache.DEFAULT_NEGATIVE_TTL_MS / 1000)));
+        CURSOR_FILE = property("CURSOR_FILE", "");
+        TERMINATION_GRACE_SECONDS = Long.parseLong(property("TERMINATION_GRACE_SECONDS", "25"));
+    }
+
+    private String property(String name, String defaultValue) {
+        if (properties.containsKey(name))
+            return properties.get(name);
+        return defaultValue == null ? getProperty(name) : getProperty(name, defaultValue);
     }
 
     public String getSourceManagerUrl() {
@@ -93,4 +187,127 @@ public class Config extends ConfigManager {
     public String getPassword() {
         return PASSWORD;
     }
+
+    public String getMetricsPort() {
+        return METRICS_PORT;
+    }
+
+    public String getMetricsFile() {
+        return METRICS_FILE;
+    }
+
+    public String getReportFile() {
+        return REPORT_FILE;
+    }
+
+    public int getReportTopGroups() {
+        return REPORT_TOP_GROUPS;
+    }
+
+    public String getTracingExporter() {
+        return TRACING_EXPORTER;
+    }
+
+    public String getTracingOtlpEndpoint() {
+        return TRACING_OTLP_ENDPOINT;
+    }
+
+    public String getTracingFile() {
+        return TRACING_FILE;
+    }
+
+    public String getRecordFile() {
+        return RECORD_FILE;
+    }
+
+    public String getLeaseDir() {
+        return LEASE_DIR;
+    }
+
+    public long getLeaseTtlSeconds() {
+        return LEASE_TTL_SECONDS;
+    }
+
+    public String getLeaseHolder() {
+        return LEASE_HOLDER;
+    }
+
+    public String getHistoryFile() {
+        return HISTORY_FILE;
+    }
+
+    public int getWorkers() {
+        return WORKERS;
+    }
+
+    public long getRunBudgetSeconds() {
+        return RUN_BUDGET_SECONDS;
+    }
+
+    public long getRunBudgetMarginSeconds() {
+        return RUN_BUDGET_MARGIN_SECONDS;
+    }
+
+    public long getGroupBudgetSeconds() {
+        return GROUP_BUDGET_SECONDS;
+    }
+
+    public String getJournalFile() {
+        return JOURNAL_FILE;
+    }
+
+    public int getJournalCompactRecords() {
+        return JOURNAL_COMPACT_RECORDS;
+    }
+
+    public long getJournalMaxAgeHours() {
+        return JOURNAL_MAX_AGE_HOURS;
+    }
+
+    public String getConditionalGetDir() {
+        return CONDITIONAL_GET_DIR;
+    }
+
+    /**
+     * redis:// URL of the cache sharing the lists of the managers between replicas, empty to disable it.
+     */
+    public String getSharedCacheUrl() {
+        return SHARED_CACHE_URL;
+    }
+
+    public String getSharedCachePrefix() {
+        return SHARED_CACHE_PREFIX;
+    }
+
+    public long getSharedCacheTtlSeconds() {
+        return SHARED_CACHE_TTL_SECONDS;
+    }
+
+    public int getSharedCacheTimeoutMs() {
+        return SHARED_CACHE_TIMEOUT_MS;
+    }
+
+    public String getExistenceCacheFile() {
+        return EXISTENCE_CACHE_FILE;
+    }
+
+    public long getExistencePositiveTtlSeconds() {
+        return EXISTENCE_POSITIVE_TTL_SECONDS;
+    }
+
+    public long getExistenceNegativeTtlSeconds() {
+        return EXISTENCE_NEGATIVE_TTL_SECONDS;
+    }
+
+    public String getCursorFile() {
+        return CURSOR_FILE;
+    }
+
+    public long getTerminationGraceSeconds() {
+        return TERMINATION_GRACE_SECONDS;
+    }
+
+    public Shard getShard() {
+        return new Shard(SHARD_INDEX, SHARD_COUNT);
+    }
 }
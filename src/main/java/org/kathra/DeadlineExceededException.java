@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import org.kathra.utils.ApiException;
+
+/**
+ * Raised instead of a downstream call when the group being synchronized has no time left, or when the call
+ * outlives it.
+ */
+public class DeadlineExceededException extends ApiException {
+
+    public DeadlineExceededException(String message) {
+        super(504, message);
+    }
+
+    /**
+     * @return the deadline exceeded in the causes of the exception, null if it wasn't raised by a deadline
+     */
+    public static DeadlineExceededException find(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+            if (cause instanceof DeadlineExceededException)
+                return (DeadlineExceededException) cause;
+        return null;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.kathra.utils.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gives each group synchronization a deadline and bounds every downstream call made for the group by the time left.
+ *
+ * Calls run on the thread of the group. Registered as an OkHttp network interceptor of the clients, the deadlines
+ * bound the reads of each HTTP/1 request: the response headers are read with the read timeout lowered to the time
+ * left, and the time left is checked again before every read of the body, so that a slow body cannot outlive the
+ * deadline. The connection is opened before the interceptor runs, its timeout is capped by the longest deadline of
+ * a group (see {@link #getLongestDeadlineMs()}), not by the time left. A call failing once the deadline passed is
+ * reported as exceeding it. A step started without time left, or whose call outlives the deadline, fails with a
+ * {@link DeadlineExceededException} and is counted as deferred.
+ */
+public class Deadlines implements SyncInterceptor, Interceptor {
+
+    private Logger log = LoggerFactory.getLogger("Deadlines");
+
+    final private Clock clock;
+    final private long groupBudgetMs;
+    final private RunBudget runBudget;
+    final private ThreadLocal<GroupDeadline> currentGroup = new ThreadLocal<>();
+    final private ConcurrentHashMap<String, LongAdder> deferredSteps = new ConcurrentHashMap<>();
+    final private Set<String> deferredGroups = ConcurrentHashMap.newKeySet();
+
+    private static class GroupDeadline {
+        final String path;
+        final long deadlineMs;
+        volatile boolean deferred;
+
+        GroupDeadline(String path, long deadlineMs) {
+            this.path = path;
+            this.deadlineMs = deadlineMs;
+        }
+    }
+
+    /**
+     * @param groupBudgetMs time a group synchronization may take, 0 for no limit other than the run budget
+     * @param runBudget     budget of the run, bounding the group deadlines, null for no limit
+     */
+    public Deadlines(Clock clock, long groupBudgetMs, RunBudget runBudget) {
+        this.clock = clock;
+        this.groupBudgetMs = groupBudgetMs;
+        this.runBudget = runBudget;
+    }
+
+    /**
+     * @return the time left to the group synchronized by the current thread, Long.MAX_VALUE outside of a group
+     */
+    public long remainingMs() {
+        GroupDeadline group = currentGroup.get();
+        if (group == null || group.deadlineMs == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        return group.deadlineMs - clock.millis();
+    }
+
+    /**
+     * @return the time left to a group started now, bounding the connect timeout of the clients, Long.MAX_VALUE
+     * without limit
+     */
+    public long getLongestDeadlineMs() {
+        long deadlineMs = deadline();
+        return deadlineMs == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1, deadlineMs - clock.millis());
+    }
+
+    @Override
+    public <T> T aroundCall(Backend backend, String operation, ApiCall<T> call) throws ApiException {
+        long remainingMs = remainingMs();
+        if (remainingMs == Long.MAX_VALUE)
+            return call.call();
+        if (remainingMs <= 0)
+            throw new DeadlineExceededException("No time left for " + backend.tag() + " " + operation);
+        try {
+            return call.call();
+        } catch (ApiException e) {
+            if (e instanceof DeadlineExceededException || remainingMs() > 0)
+                throw e;
+            DeadlineExceededException exceeded = new DeadlineExceededException("Call " + backend.tag() + " " + operation
+                    + " outlived the deadline of the group");
+            exceeded.initCause(e);
+            throw exceeded;
+        }
+    }
+
+    /**
+     * Lowers the read timeout of an HTTP/1 request made for a group to the time left, and checks it again before
+     * every read of the response body. Multiplexed connections are shared by the requests, their timeout is left
+     * as is.
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Connection connection = chain.connection();
+        if (remainingMs() == Long.MAX_VALUE || connection == null || !isHttp1(connection))
+            return chain.proceed(chain.request());
+        Socket socket = connection.getSocket();
+        lowerReadTimeout(socket);
+        Response response = chain.proceed(chain.request());
+        if (response.body() == null)
+            return response;
+        return response.newBuilder().body(new BoundedBody(response.body(), socket)).build();
+    }
+
+    private void lowerReadTimeout(Socket socket) throws IOException {
+        long remainingMs = remainingMs();
+        if (remainingMs == Long.MAX_VALUE)
+            return;
+        if (remainingMs <= 0)
+            throw new SocketTimeoutException("Deadline of the group exceeded");
+        int timeoutMs = (int) Math.min(Integer.MAX_VALUE, remainingMs);
+        if (socket.getSoTimeout() == 0 || timeoutMs < socket.getSoTimeout())
+            socket.setSoTimeout(timeoutMs);
+    }
+
+    /**
+     * Response body whose reads are bounded by the time left to the group reading it.
+     */
+    private class BoundedBody extends ResponseBody {
+
+        final private ResponseBody body;
+        final private BufferedSource source;
+
+        BoundedBody(ResponseBody body, Socket socket) throws IOException {
+            this.body = body;
+            this.source = Okio.buffer(new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    lowerReadTimeout(socket);
+                    return super.read(sink, byteCount);
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return body.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+    private static boolean isHttp1(Connection connection) {
+        return connection.getProtocol() == Protocol.HTTP_1_1 || connection.getProtocol() == Protocol.HTTP_1_0;
+    }
+
+    @Override
+    public <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        if (step == SyncStep.GROUP)
+            return aroundGroup(groupPath, call);
+        GroupDeadline group = currentGroup.get();
+        if (group == null)
+            return call.call();
+        try {
+            if (remainingMs() <= 0)
+                throw new DeadlineExceededException("No time left for step " + step.tag() + " of " + groupPath);
+            return call.call();
+        } catch (Exception e) {
+            if (DeadlineExceededException.find(e) != null)
+                defer(group, step);
+            throw e;
+        }
+    }
+
+    private <T> T aroundGroup(String groupPath, StepCall<T> call) throws Exception {
+        GroupDeadline previous = currentGroup.get();
+        GroupDeadline group = new GroupDeadline(groupPath, deadline());
+        currentGroup.set(group);
+        try {
+            return call.call();
+        } catch (Exception e) {
+            // a deferred step of the group is already counted
+            if (DeadlineExceededException.find(e) != null && !group.deferred)
+                defer(group, SyncStep.GROUP);
+            throw e;
+        } finally {
+            currentGroup.set(previous);
+        }
+    }
+
+    private long deadline() {
+        long now = clock.millis();
+        long deadlineMs = groupBudgetMs <= 0 ? Long.MAX_VALUE : now + groupBudgetMs;
+        if (runBudget != null)
+            deadlineMs = Math.min(deadlineMs, runBudget.getEndMs());
+        return deadlineMs;
+    }
+
+    private void defer(GroupDeadline group, SyncStep step) {
+        group.deferred = true;
+        deferredGroups.add(group.path);
+        deferredSteps.computeIfAbsent(step.tag(), k -> new LongAdder()).increment();
+        log.info("Step " + step.tag() + " of group " + group.path + " deferred: deadline exceeded");
+    }
+
+    /**
+     * @return whether a step of the group was deferred during the run
+     */
+    public boolean isDeferred(String groupPath) {
+        return deferredGroups.contains(groupPath);
+    }
+
+    /**
+     * @return the number of groups with a deferred step
+     */
+    public int getDeferredGroups() {
+        return deferredGroups.size();
+    }
+
+    /**
+     * @return the number of deferred steps, by step
+     */
+    public Map<String, Long> getDeferredSteps() {
+        Map<String, Long> counts = new TreeMap<>();
+        deferredSteps.forEach((k, v) -> counts.put(k, v.sum()));
+        return counts;
+    }
+}
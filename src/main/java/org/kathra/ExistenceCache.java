@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Whether resources of the managers exist, learned from probes, creations and listings, so that the synchronizer
+ * doesn't probe again a resource it just saw or created. Resources seen are remembered for the positive TTL,
+ * resources found missing for the shorter negative TTL. A resource removed behind the synchronizer's back is
+ * recreated once its entry expires.
+ */
+public class ExistenceCache {
+
+    private static Logger log = LoggerFactory.getLogger("ExistenceCache");
+    private static final Gson GSON = new Gson();
+    private static final Type ENTRIES = new TypeToken<HashMap<String, Entry>>() {}.getType();
+    public static final long DEFAULT_POSITIVE_TTL_MS = 3_600_000;
+    public static final long DEFAULT_NEGATIVE_TTL_MS = 60_000;
+
+    public enum Kind {
+        USER,
+        FOLDER,
+        REPOSITORY;
+
+        public String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    final private String file;
+    final private Clock clock;
+    final private long positiveTtlMs;
+    final private long negativeTtlMs;
+    final private ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    final private LongAdder hits = new LongAdder();
+    final private LongAdder misses = new LongAdder();
+
+    static class Entry {
+        boolean exists;
+        long expiresAt;
+
+        Entry(boolean exists, long expiresAt) {
+            this.exists = exists;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * @param file JSON file keeping the entries between runs, null to keep them in memory only
+     */
+    public ExistenceCache(String file, Clock clock, long positiveTtlMs, long negativeTtlMs) {
+        this.file = file;
+        this.clock = clock;
+        this.positiveTtlMs = positiveTtlMs;
+        this.negativeTtlMs = negativeTtlMs;
+    }
+
+    /**
+     * Reads the entries still valid from the file, an unreadable or missing file giving an empty cache.
+     *
+     * @param file JSON file keeping the entries between runs, null to keep them in memory only
+     */
+    public static ExistenceCache load(String file, Clock clock, long positiveTtlMs, long negativeTtlMs) {
+        ExistenceCache cache = new ExistenceCache(file, clock, positiveTtlMs, negativeTtlMs);
+        if (file == null || !Files.exists(Paths.get(file)))
+            return cache;
+        Path path = Paths.get(file);
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Map<String, Entry> entries = GSON.fromJson(reader, ENTRIES);
+            long now = clock.millis();
+            if (entries != null)
+                entries.forEach((key, entry) -> {
+                    if (entry.expiresAt > now)
+                        cache.entries.put(key, entry);
+                });
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot read existence cache " + file + ", starting without it. Error: " + e.toString());
+        }
+        return cache;
+    }
+
+    public void save() throws IOException {
+        if (file == null)
+            return;
+        long now = clock.millis();
+        Map<String, Entry> valid = new HashMap<>();
+        entries.forEach((key, entry) -> {
+            if (entry.expiresAt > now)
+                valid.put(key, entry);
+        });
+        Path tmp = Paths.get(file + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            GSON.toJson(valid, ENTRIES, writer);
+        }
+        Files.move(tmp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return whether the resource exists, empty if unknown or expired
+     */
+    public Optional<Boolean> exists(Backend backend, Kind kind, String id) {
+        Entry entry = entries.get(key(backend, kind, id));
+        if (entry == null || entry.expiresAt <= clock.millis()) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.exists);
+    }
+
+    /**
+     * Records a resource seen or created.
+     */
+    public void present(Backend backend, Kind kind, String id) {
+        if (id != null)
+            entries.put(key(backend, kind, id), new Entry(true, clock.millis() + positiveTtlMs));
+    }
+
+    /**
+     * Records the resources of a listing.
+     */
+    public void presentAll(Backend backend, Kind kind, Iterable<String> ids) {
+        long expiresAt = clock.millis() + positiveTtlMs;
+        for (String id : ids)
+            if (id != null)
+                entries.put(key(backend, kind, id), new Entry(true, expiresAt));
+    }
+
+    /**
+     * Records a resource found missing.
+     */
+    public void absent(Backend backend, Kind kind, String id) {
+        if (id != null)
+            entries.put(key(backend, kind, id), new Entry(false, clock.millis() + negativeTtlMs));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String key(Backend backend, Kind kind, String id) {
+        return backend.tag() + " " + kind.tag() + " " + id;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits.sum() + " misses=" + misses.sum() + " entries=" + entries.size();
+    }
+}
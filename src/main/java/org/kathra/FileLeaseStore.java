@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Leases kept as one file per key in a directory shared by the runs, e.g. a volume mounted by every Job pod.
+ * Each file holds the holder and the expiry time, separated by the last space, and is read and written under an exclusive file lock.
+ */
+public class FileLeaseStore implements LeaseStore {
+
+    final private Path directory;
+
+    public FileLeaseStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public boolean acquire(String key, String holder, long nowMs, long expiresAtMs) throws IOException {
+        try (FileChannel channel = open(key); FileLock lock = channel.lock()) {
+            String[] lease = read(channel);
+            if (lease != null && !lease[0].equals(holder) && Long.parseLong(lease[1]) > nowMs)
+                return false;
+            write(channel, holder + " " + expiresAtMs);
+            return true;
+        }
+    }
+
+    @Override
+    public void release(String key, String holder) throws IOException {
+        try (FileChannel channel = open(key); FileLock lock = channel.lock()) {
+            String[] lease = read(channel);
+            if (lease != null && lease[0].equals(holder))
+                write(channel, "");
+        }
+    }
+
+    private FileChannel open(String key) throws IOException {
+        Path file = directory.resolve(URLEncoder.encode(key, "UTF-8"));
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static String[] read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        channel.read(buffer, 0);
+        String lease = new String(buffer.array(), StandardCharsets.UTF_8).trim();
+        int separator = lease.lastIndexOf(' ');
+        return separator <= 0 ? null : new String[]{lease.substring(0, separator), lease.substring(separator + 1)};
+    }
+
+    private static void write(FileChannel channel, String lease) throws IOException {
+        channel.truncate(0);
+        channel.write(ByteBuffer.wrap(lease.getBytes(StandardCharsets.UTF_8)), 0);
+        channel.force(false);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.Gson;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes finished spans to a file, one JSON object per line.
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    final private Gson gson = new Gson();
+    final private BufferedWriter writer;
+
+    public FileSpanExporter(String file) throws IOException {
+        this.writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        try {
+            for (SpanData span : spans) {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("traceId", span.getTraceId());
+                line.put("spanId", span.getSpanId());
+                line.put("parentSpanId", span.getParentSpanId());
+                line.put("name", span.getName());
+                line.put("kind", span.getKind().name());
+                line.put("startEpochNanos", span.getStartEpochNanos());
+                line.put("endEpochNanos", span.getEndEpochNanos());
+                line.put("status", span.getStatus().getStatusCode().name());
+                Map<String, Object> attributes = new LinkedHashMap<>();
+                span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+                line.put("attributes", attributes);
+                writer.write(gson.toJson(line));
+                writer.newLine();
+            }
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public synchronized CompletableResultCode flush() {
+        try {
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        try {
+            writer.close();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+}
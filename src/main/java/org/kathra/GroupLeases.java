@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Leases on the groups being synchronized, so that overlapping runs don't work on the same group. A lease is
+ * taken before a group is synchronized, renewed by its steps once half of it has elapsed and released after.
+ *
+ * When the store cannot be reached the group is synchronized anyway, as it was without leases.
+ */
+public class GroupLeases implements SyncInterceptor {
+
+    private Logger log = LoggerFactory.getLogger("GroupLeases");
+
+    final private LeaseStore store;
+    final private String holder;
+    final private long ttlMs;
+    final private Clock clock;
+    final private ConcurrentHashMap<String, Long> expiries = new ConcurrentHashMap<>();
+    final private AtomicLong skipped = new AtomicLong();
+
+    public GroupLeases(LeaseStore store, String holder, long ttlMs, Clock clock) {
+        this.store = store;
+        this.holder = holder;
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+    }
+
+    /**
+     * @return false if another run holds the lease of the group
+     */
+    public boolean acquire(String groupPath) {
+        long now = clock.millis();
+        try {
+            if (!store.acquire(groupPath, holder, now, now + ttlMs)) {
+                skipped.incrementAndGet();
+                return false;
+            }
+        } catch (IOException e) {
+            log.warn("Cannot take lease of group " + groupPath + ". Error: " + e.toString());
+        }
+        expiries.put(groupPath, now + ttlMs);
+        return true;
+    }
+
+    /**
+     * Extends the lease of the group once half of it has elapsed.
+     *
+     * @throws IllegalStateException if the lease expired and was taken by another run
+     */
+    public void renew(String groupPath) {
+        Long expiresAt = expiries.get(groupPath);
+        long now = clock.millis();
+        if (expiresAt == null || expiresAt - now > ttlMs / 2)
+            return;
+        try {
+            if (!store.acquire(groupPath, holder, now, now + ttlMs))
+                throw new IllegalStateException("Lease of group " + groupPath + " was taken by another run");
+        } catch (IOException e) {
+            log.warn("Cannot renew lease of group " + groupPath + ". Error: " + e.toString());
+        }
+        expiries.put(groupPath, now + ttlMs);
+    }
+
+    public void release(String groupPath) {
+        if (expiries.remove(groupPath) == null)
+            return;
+        try {
+            store.release(groupPath, holder);
+        } catch (IOException e) {
+            log.warn("Cannot release lease of group " + groupPath + ". Error: " + e.toString());
+        }
+    }
+
+    /**
+     * @return the number of groups skipped because another run held their lease
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    @Override
+    public <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        if (step != SyncStep.GROUP)
+            renew(groupPath);
+        return call.call();
+    }
+}
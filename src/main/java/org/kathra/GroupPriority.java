@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+/**
+ * Order in which the groups are synchronized, from the first to the last.
+ */
+public enum GroupPriority {
+    /** Missing from the resource manager or not READY yet: needs full provisioning. */
+    PROVISION,
+    /** READY, with members that changed since the previous run. */
+    MEMBERS_CHANGED,
+    /** READY, nothing known to have changed. */
+    REFRESH;
+
+    public String tag() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
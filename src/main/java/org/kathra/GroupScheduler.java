@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders the groups of a run by {@link GroupPriority}, so that new projects are provisioned before the membership
+ * refreshes. Within a priority the groups that took the longest in the previous runs start first (LPT), which
+ * keeps a few heavy groups from running alone at the end of a run with several workers. Groups without history
+ * are expected to take the average time and the listing order is kept between equal durations.
+ */
+public class GroupScheduler {
+
+    final private Map<String, GroupSnapshot> resourceManagerGroups;
+    final private MemberSets memberSets;
+    final private SyncHistory history;
+
+    public static class Task {
+        final private GroupSnapshot group;
+        final private GroupPriority priority;
+        final private long membersFingerprint;
+        private long expectedDurationMs = -1;
+
+        Task(GroupSnapshot group, GroupPriority priority, long membersFingerprint) {
+            this.group = group;
+            this.priority = priority;
+            this.membersFingerprint = membersFingerprint;
+        }
+
+        /**
+         * @return the duration expected from the previous runs, -1 if unknown
+         */
+        public long getExpectedDurationMs() {
+            return expectedDurationMs;
+        }
+
+        public GroupSnapshot getGroup() {
+            return group;
+        }
+
+        public GroupPriority getPriority() {
+            return priority;
+        }
+
+        public long getMembersFingerprint() {
+            return membersFingerprint;
+        }
+    }
+
+    /**
+     * @param history previous runs, null to only tell the groups to provision from the others
+     */
+    public GroupScheduler(Map<String, GroupSnapshot> resourceManagerGroups, MemberSets memberSets, SyncHistory history) {
+        this.resourceManagerGroups = resourceManagerGroups;
+        this.memberSets = memberSets;
+        this.history = history;
+    }
+
+    public List<Task> order(List<GroupSnapshot> userManagerGroups) {
+        Map<GroupPriority, List<Task>> byPriority = new EnumMap<>(GroupPriority.class);
+        for (GroupPriority priority : GroupPriority.values())
+            byPriority.put(priority, new ArrayList<>());
+        long knownDurations = 0;
+        long totalDurationMs = 0;
+        for (GroupSnapshot group : userManagerGroups) {
+            Task task = task(group);
+            if (history != null)
+                task.expectedDurationMs = history.expectedDurationMs(group.getPath());
+            if (task.expectedDurationMs >= 0) {
+                knownDurations++;
+                totalDurationMs += task.expectedDurationMs;
+            }
+            byPriority.get(task.priority).add(task);
+        }
+        List<Task> tasks = new ArrayList<>(userManagerGroups.size());
+        long averageMs = knownDurations == 0 ? 0 : totalDurationMs / knownDurations;
+        Comparator<Task> longestFirst = Comparator.comparingLong(t -> -(t.expectedDurationMs >= 0 ? t.expectedDurationMs : averageMs));
+        for (List<Task> sameTasks : byPriority.values()) {
+            if (knownDurations > 0)
+                sameTasks.sort(longestFirst);
+            tasks.addAll(sameTasks);
+        }
+        return tasks;
+    }
+
+    Task task(GroupSnapshot userManagerGroup) {
+        long fingerprint = memberSets.fingerprint(userManagerGroup.getMembers());
+        GroupSnapshot existing = resourceManagerGroups.get(userManagerGroup.getPath());
+        if (existing == null || !existing.isReady())
+            return new Task(userManagerGroup, GroupPriority.PROVISION, fingerprint);
+        if (history != null && history.membersChanged(userManagerGroup.getPath(), fingerprint))
+            return new Task(userManagerGroup, GroupPriority.MEMBERS_CHANGED, fingerprint);
+        return new Task(userManagerGroup, GroupPriority.REFRESH, fingerprint);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Assignation;
+import org.kathra.core.model.Group;
+import org.kathra.core.model.Resource;
+import org.kathra.core.model.User;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable view of a group holding only what the synchronizer reads, built as soon as the groups are listed so
+ * that the generated models can be collected. Paths are interned, members are ids of a {@link MemberDictionary}.
+ */
+public final class GroupSnapshot {
+
+    final private String id;
+    final private String name;
+    final private String path;
+    final private Resource.StatusEnum status;
+    final private Group.SourceRepositoryStatusEnum sourceRepositoryStatus;
+    final private Group.PipelineFolderStatusEnum pipelineFolderStatus;
+    final private Group.BinaryRepositoryStatusEnum binaryRepositoryStatus;
+    final private String technicalUserId;
+    final private RoaringBitmap members;
+
+    private GroupSnapshot(Group group, RoaringBitmap members) {
+        this.id = group.getId();
+        this.name = group.getName() == null ? null : group.getName().intern();
+        this.path = group.getPath() == null ? null : group.getPath().intern();
+        this.status = group.getStatus();
+        this.sourceRepositoryStatus = group.getSourceRepositoryStatus();
+        this.pipelineFolderStatus = group.getPipelineFolderStatus();
+        this.binaryRepositoryStatus = group.getBinaryRepositoryStatus();
+        this.technicalUserId = group.getTechnicalUser() == null ? null : group.getTechnicalUser().getId();
+        this.members = members;
+    }
+
+    /**
+     * Snapshot without members, as needed for the groups of the resource manager.
+     */
+    public static GroupSnapshot of(Group group) {
+        return new GroupSnapshot(group, null);
+    }
+
+    /**
+     * Snapshot with its members interned in the member sets, as needed for the groups of the user manager.
+     */
+    public static GroupSnapshot of(Group group, MemberSets memberSets) {
+        List<Assignation> members = group.getMembers();
+        return new GroupSnapshot(group, members == null ? null : memberSets.ofAssignations(members));
+    }
+
+    public static List<GroupSnapshot> of(List<Group> groups, MemberSets memberSets) {
+        List<GroupSnapshot> snapshots = new ArrayList<>(groups == null ? 0 : groups.size());
+        if (groups != null)
+            for (Group group : groups)
+                snapshots.add(memberSets == null ? of(group) : of(group, memberSets));
+        return snapshots;
+    }
+
+    /**
+     * @return the members of any of the groups
+     */
+    public static RoaringBitmap membersOf(List<GroupSnapshot> groups) {
+        RoaringBitmap members = new RoaringBitmap();
+        for (GroupSnapshot group : groups)
+            if (group.members != null)
+                members.or(group.members);
+        return members;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Resource.StatusEnum getStatus() {
+        return status;
+    }
+
+    public Group.SourceRepositoryStatusEnum getSourceRepositoryStatus() {
+        return sourceRepositoryStatus;
+    }
+
+    public Group.PipelineFolderStatusEnum getPipelineFolderStatus() {
+        return pipelineFolderStatus;
+    }
+
+    public Group.BinaryRepositoryStatusEnum getBinaryRepositoryStatus() {
+        return binaryRepositoryStatus;
+    }
+
+    public String getTechnicalUserId() {
+        return technicalUserId;
+    }
+
+    public boolean isReady() {
+        return Resource.StatusEnum.READY.equals(status);
+    }
+
+    /**
+     * @return a copy of the member ids, empty if the group was listed without members
+     */
+    public RoaringBitmap getMembers() {
+        return members == null ? new RoaringBitmap() : members.clone();
+    }
+
+    /**
+     * Group model carrying the snapshot fields, for the steps and clients expecting one.
+     */
+    public Group toGroup(MemberDictionary dictionary) {
+        Group group = new Group().path(path).sourceRepositoryStatus(sourceRepositoryStatus)
+                .pipelineFolderStatus(pipelineFolderStatus).binaryRepositoryStatus(binaryRepositoryStatus);
+        group.setId(id);
+        group.setName(name);
+        group.setStatus(status);
+        if (technicalUserId != null)
+            group.technicalUser(new User().id(technicalUserId));
+        if (members != null) {
+            List<Assignation> assignations = new ArrayList<>(members.getCardinality());
+            members.forEach((int member) -> assignations.add(new Assignation().name(dictionary.name(member))));
+            group.setMembers(assignations);
+        }
+        return group;
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + id + ", " + status + ")";
+    }
+}
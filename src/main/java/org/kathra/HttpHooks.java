@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access to the HTTP layer of the generated Kathra clients.
+ */
+public class HttpHooks {
+
+    private static Logger log = LoggerFactory.getLogger("HttpHooks");
+
+    /**
+     * Adds an OkHttp interceptor to the HTTP client behind a Kathra client (its getApiClient().getHttpClient()).
+     *
+     * @return false if the client doesn't expose an OkHttp client
+     */
+    public static boolean addInterceptor(Object kathraClient, Interceptor interceptor) {
+        OkHttpClient httpClient = httpClient(kathraClient);
+        if (httpClient == null)
+            return false;
+        httpClient.interceptors().add(interceptor);
+        return true;
+    }
+
+    /**
+     * Adds an OkHttp network interceptor, seeing the connection of each request, to the HTTP client behind a Kathra
+     * client.
+     *
+     * @return false if the client doesn't expose an OkHttp client
+     */
+    public static boolean addNetworkInterceptor(Object kathraClient, Interceptor interceptor) {
+        OkHttpClient httpClient = httpClient(kathraClient);
+        if (httpClient == null)
+            return false;
+        httpClient.networkInterceptors().add(interceptor);
+        return true;
+    }
+
+    /**
+     * Lowers the connect timeout of the HTTP client behind a Kathra client to the given one when it is longer.
+     *
+     * @return false if the client doesn't expose an OkHttp client
+     */
+    public static boolean capConnectTimeout(Object kathraClient, long timeoutMs) {
+        OkHttpClient httpClient = httpClient(kathraClient);
+        if (httpClient == null)
+            return false;
+        if (httpClient.getConnectTimeout() == 0 || timeoutMs < httpClient.getConnectTimeout())
+            httpClient.setConnectTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private static OkHttpClient httpClient(Object kathraClient) {
+        try {
+            Object apiClient = kathraClient.getClass().getMethod("getApiClient").invoke(kathraClient);
+            return (OkHttpClient) apiClient.getClass().getMethod("getHttpClient").invoke(apiClient);
+        } catch (ReflectiveOperationException | ClassCastException | NullPointerException e) {
+            log.warn("Cannot add HTTP interceptor to " + kathraClient.getClass().getSimpleName() + ". Error: " + e.toString());
+            return null;
+        }
+    }
+}
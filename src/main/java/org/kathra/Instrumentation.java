@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.utils.ApiException;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Single entry point for downstream calls and synchronization steps, passing them through the registered
+ * interceptors in registration order.
+ */
+public class Instrumentation {
+
+    final private CopyOnWriteArrayList<SyncInterceptor> interceptors = new CopyOnWriteArrayList<>();
+
+    public Instrumentation addInterceptor(SyncInterceptor interceptor) {
+        interceptors.add(interceptor);
+        return this;
+    }
+
+    public <T> T call(Backend backend, String operation, ApiCall<T> call) throws ApiException {
+        return call(interceptors.toArray(new SyncInterceptor[0]), 0, backend, operation, call);
+    }
+
+    public void run(Backend backend, String operation, ApiAction action) throws ApiException {
+        call(backend, operation, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public <T> T step(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        return step(interceptors.toArray(new SyncInterceptor[0]), 0, groupPath, step, call);
+    }
+
+    private <T> T call(SyncInterceptor[] chain, int index, Backend backend, String operation, ApiCall<T> call)
+            throws ApiException {
+        if (index == chain.length)
+            return call.call();
+        return chain[index].aroundCall(backend, operation, () -> call(chain, index + 1, backend, operation, call));
+    }
+
+    private <T> T step(SyncInterceptor[] chain, int index, String groupPath, SyncStep step, StepCall<T> call)
+            throws Exception {
+        if (index == chain.length)
+            return call.call();
+        return chain[index].aroundStep(groupPath, step, () -> step(chain, index + 1, groupPath, step, call));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.reflect.TypeToken;
+import org.kathra.core.model.Group;
+import org.kathra.core.model.KeyPair;
+import org.kathra.resourcemanager.client.KeyPairsClient;
+import org.kathra.utils.ApiException;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Key pairs of the resource manager indexed by group id. They are loaded on the first lookup and kept without
+ * their private key, which is fetched again only when a credential needs it.
+ */
+public class KeyPairIndex {
+
+    private static final Type KEY_PAIRS = new TypeToken<List<KeyPair>>() {}.getType();
+
+    final private KeyPairsClient keyPairsClient;
+    final private SingleFlight singleFlight;
+    final private Instrumentation instrumentation;
+    final private SyncContext context;
+    final private ConcurrentHashMap<String, KeyPair> keyPairsByGroupId = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public KeyPairIndex(KeyPairsClient keyPairsClient, SyncContext context) {
+        this.keyPairsClient = keyPairsClient;
+        this.singleFlight = context.getSingleFlight();
+        this.instrumentation = context.getInstrumentation();
+        this.context = context;
+    }
+
+    public Optional<KeyPair> get(String groupId) throws ApiException {
+        load();
+        return groupId == null ? Optional.empty() : Optional.ofNullable(keyPairsByGroupId.get(groupId));
+    }
+
+    /**
+     * Indexes a key pair just added to the resource manager.
+     */
+    public void put(KeyPair keyPair) {
+        context.invalidateShared("keyPairs");
+        String groupId = groupId(keyPair);
+        if (groupId != null)
+            keyPairsByGroupId.put(groupId, withoutPrivateKey(keyPair));
+    }
+
+    /**
+     * @return the key pair itself if it has its private key, else the one read from the resource manager
+     * @throws IllegalStateException if the private key can't be found
+     */
+    public KeyPair withPrivateKey(KeyPair keyPair) throws ApiException {
+        if (keyPair.getPrivateKey() != null)
+            return keyPair;
+        if (keyPair.getId() == null)
+            throw new IllegalStateException("Key pair of group " + groupId(keyPair) + " has neither private key nor id");
+        KeyPair read = instrumentation.call(Backend.RESOURCE_MANAGER, "getKeyPair", () -> keyPairsClient.getKeyPair(keyPair.getId()));
+        if (read == null || read.getPrivateKey() == null)
+            throw new IllegalStateException("Key pair " + keyPair.getId() + " has no private key");
+        return read;
+    }
+
+    public int size() {
+        return keyPairsByGroupId.size();
+    }
+
+    private void load() throws ApiException {
+        if (loaded)
+            return;
+        synchronized (this) {
+            if (loaded)
+                return;
+            // private keys are not shared
+            List<KeyPair> keyPairs = context.sharedRead("keyPairs", KEY_PAIRS, () -> singleFlight.execute("keyPairs",
+                    () -> instrumentation.call(Backend.RESOURCE_MANAGER, "getKeyPairs", () -> keyPairsClient.getKeyPairs()))
+                    .stream().map(KeyPairIndex::withoutPrivateKey).collect(Collectors.toList()));
+            for (KeyPair keyPair : keyPairs) {
+                String groupId = groupId(keyPair);
+                if (groupId != null && context.isInShard(groupId))
+                    keyPairsByGroupId.putIfAbsent(groupId, withoutPrivateKey(keyPair));
+            }
+            loaded = true;
+        }
+    }
+
+    private static String groupId(KeyPair keyPair) {
+        return keyPair.getGroup() == null ? null : keyPair.getGroup().getId();
+    }
+
+    private static KeyPair withoutPrivateKey(KeyPair keyPair) {
+        if (keyPair.getPrivateKey() == null)
+            return keyPair;
+        return new KeyPair().id(keyPair.getId()).name(keyPair.getName()).status(keyPair.getStatus())
+                .group(new Group().id(groupId(keyPair))).publicKey(keyPair.getPublicKey());
+    }
+}
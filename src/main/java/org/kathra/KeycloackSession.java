@@ -39,6 +39,17 @@ public class KeycloackSession extends Session implements KathraSessionManager {
         log.debug("Session created for" + user.getName());
     }
 
+    /**
+     * Session with an access token obtained elsewhere, no login is performed.
+     */
+    public KeycloackSession(User user, String accessToken) {
+        this.callerName(user.getName());
+        this.setUserObject(user);
+        token.setToken(accessToken);
+        this.setAccessToken(accessToken);
+        authenticated(true);
+    }
+
     // TODO: remove *AccessToken from org.kathra.utils.Session
     private void performLogin() {
         User sessionUser = getUserObject();
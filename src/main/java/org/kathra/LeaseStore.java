@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import java.io.IOException;
+
+/**
+ * Storage of the leases taken on groups by concurrent synchronizer runs.
+ */
+public interface LeaseStore {
+
+    /**
+     * Takes or renews the lease of a key, possible when it is free, expired or already held by the holder.
+     *
+     * @return false if the lease is held by another holder
+     */
+    boolean acquire(String key, String holder, long nowMs, long expiresAtMs) throws IOException;
+
+    /**
+     * Frees the lease of a key if it is held by the holder.
+     */
+    void release(String key, String holder) throws IOException;
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Member names interned as dense ints, each name being held once whatever the number of groups it belongs to.
+ */
+public class MemberDictionary {
+
+    final private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    final private List<String> names = new ArrayList<>();
+
+    /**
+     * @return the id of the name, assigned on first use
+     */
+    public int id(String name) {
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+        synchronized (names) {
+            return ids.computeIfAbsent(name, n -> {
+                names.add(n);
+                return names.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * @return the id of the name, -1 if it was never seen
+     */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public String name(int id) {
+        synchronized (names) {
+            return names.get(id);
+        }
+    }
+
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Assignation;
+import org.kathra.core.model.Membership;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Collection;
+
+/**
+ * Members of a group as compressed bitmaps of {@link MemberDictionary} ids. The sets are built for the synchronization
+ * of one group and dropped with it, only the dictionary lives for the whole run.
+ */
+public class MemberSets {
+
+    final private MemberDictionary dictionary;
+
+    public MemberSets(MemberDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public MemberDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public RoaringBitmap ofAssignations(Collection<Assignation> assignations) {
+        RoaringBitmap members = new RoaringBitmap();
+        for (Assignation assignation : assignations)
+            if (assignation.getName() != null)
+                members.add(dictionary.id(assignation.getName()));
+        members.runOptimize();
+        return members;
+    }
+
+    public RoaringBitmap ofMemberships(Collection<Membership> memberships) {
+        RoaringBitmap members = new RoaringBitmap();
+        for (Membership membership : memberships)
+            if (membership.getMemberName() != null)
+                members.add(dictionary.id(membership.getMemberName()));
+        members.runOptimize();
+        return members;
+    }
+
+    /**
+     * @return a hash of the member names, independent of their ids and order so that runs can compare it
+     */
+    public long fingerprint(RoaringBitmap members) {
+        long fingerprint = members.getCardinality();
+        for (int member : members)
+            fingerprint += Hashes.mix(Hashes.fnv1a(dictionary.name(member)));
+        return fingerprint;
+    }
+
+    /**
+     * @return whether the name is in the members, without interning it
+     */
+    public boolean isMember(RoaringBitmap members, String name) {
+        int id = dictionary.find(name);
+        return id >= 0 && members.contains(id);
+    }
+}
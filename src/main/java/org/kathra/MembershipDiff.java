@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.core.model.Membership;
+
+import java.util.*;
+
+/**
+ * Operations turning the observed members of a group, repository or folder into the desired ones, computed in
+ * one pass over each side. Members are identified by type and name, a member without type being a user.
+ * Duplicates are tolerated: the highest desired role wins, the first observed membership is kept.
+ * An observed membership without role is considered up to date, some providers don't report roles.
+ */
+public class MembershipDiff {
+
+    final private List<Membership> additions = new ArrayList<>();
+    final private List<Membership> updates = new ArrayList<>();
+    final private List<Membership> removals = new ArrayList<>();
+
+    public static MembershipDiff between(Collection<Membership> desired, Collection<Membership> observed) {
+        Map<String, Membership> desiredByKey = new LinkedHashMap<>(desired.size() * 2);
+        for (Membership membership : desired)
+            desiredByKey.merge(key(membership), membership, MembershipDiff::highestRole);
+        Map<String, Membership> observedByKey = new HashMap<>(observed.size() * 2);
+        for (Membership membership : observed)
+            observedByKey.putIfAbsent(key(membership), membership);
+
+        MembershipDiff diff = new MembershipDiff();
+        for (Map.Entry<String, Membership> wanted : desiredByKey.entrySet()) {
+            Membership existing = observedByKey.remove(wanted.getKey());
+            if (existing == null)
+                diff.additions.add(wanted.getValue());
+            else if (existing.getRole() != null && wanted.getValue().getRole() != null
+                    && existing.getRole() != wanted.getValue().getRole())
+                diff.updates.add(wanted.getValue());
+        }
+        diff.removals.addAll(observedByKey.values());
+        return diff;
+    }
+
+    private static String key(Membership membership) {
+        Membership.MemberTypeEnum type = membership.getMemberType() == null ? Membership.MemberTypeEnum.USER
+                : membership.getMemberType();
+        return type + ":" + membership.getMemberName();
+    }
+
+    private static Membership highestRole(Membership first, Membership second) {
+        if (first.getRole() == null)
+            return second;
+        if (second.getRole() == null)
+            return first;
+        return rank(second.getRole()) > rank(first.getRole()) ? second : first;
+    }
+
+    private static int rank(Membership.RoleEnum role) {
+        if (role == Membership.RoleEnum.MANAGER)
+            return 2;
+        return role == Membership.RoleEnum.CONTRIBUTOR ? 1 : 0;
+    }
+
+    /**
+     * Desired members not observed.
+     */
+    public List<Membership> getAdditions() {
+        return additions;
+    }
+
+    /**
+     * Desired members observed with another role, with the desired role.
+     */
+    public List<Membership> getUpdates() {
+        return updates;
+    }
+
+    /**
+     * Observed members not desired.
+     */
+    public List<Membership> getRemovals() {
+        return removals;
+    }
+
+    public boolean isEmpty() {
+        return additions.isEmpty() && updates.isEmpty() && removals.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "additions=" + additions.size() + ", updates=" + updates.size() + ", removals=" + removals.size();
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import com.google.gson.JsonParseException;
+import org.kathra.utils.ApiException;
+import org.kathra.utils.serialization.GsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only journal of the side-effecting calls of the steps in progress, so that a step interrupted by a crash
+ * resumes after its last completed call instead of redoing it, e.g. creating a second repository in a provider.
+ *
+ * The intent of a call is forced to disk before the call, and its completion, with its result, before the call
+ * returns, concurrent writes sharing one fsync. The records of a step are dropped once the step succeeds, and the
+ * file is rewritten with the records left every compactEvery records. Steps that don't succeed within the maximum
+ * age, e.g. of a removed group, are dropped when the journal is opened.
+ */
+public class OperationJournal implements SyncInterceptor, Closeable {
+
+    private static Logger log = LoggerFactory.getLogger("OperationJournal");
+    private static final String INTENT = "intent";
+    private static final String DONE = "done";
+    private static final String STEP_DONE = "step-done";
+    private static final String NULL = "null";
+
+    final private Path file;
+    final private int compactEvery;
+    final private long maxAgeMs;
+    final private Clock clock;
+    final private ThreadLocal<String> currentStep = new ThreadLocal<>();
+    final private Map<String, Map<String, String>> completed = new ConcurrentHashMap<>();
+    final private Map<String, Set<String>> inDoubt = new ConcurrentHashMap<>();
+    final private Map<String, Long> since = new ConcurrentHashMap<>();
+    final private Object syncLock = new Object();
+    private FileChannel channel;
+    private long appended;
+    private volatile long written;
+    private volatile long synced;
+    private boolean failed;
+
+    static class Record {
+        String type;
+        String step;
+        String operation;
+        String result;
+        long at;
+
+        Record(String type, String step, String operation, String result, long at) {
+            this.type = type;
+            this.step = step;
+            this.operation = operation;
+            this.result = result;
+            this.at = at;
+        }
+    }
+
+    private OperationJournal(Path file, int compactEvery, long maxAgeMs, Clock clock) {
+        this.file = file;
+        this.compactEvery = compactEvery;
+        this.maxAgeMs = maxAgeMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Opens a journal keeping the records of the steps until they succeed.
+     */
+    public static OperationJournal open(String file, int compactEvery) throws IOException {
+        return open(file, compactEvery, 0, Clock.systemUTC());
+    }
+
+    /**
+     * Replays the journal file, ignoring a record torn by a crash, drops the steps recorded for longer than the
+     * maximum age, then compacts it and opens it for appending.
+     *
+     * @param maxAgeMs age of the first record of a step after which the step is dropped, 0 to keep it
+     */
+    public static OperationJournal open(String file, int compactEvery, long maxAgeMs, Clock clock) throws IOException {
+        OperationJournal journal = new OperationJournal(Paths.get(file), compactEvery, maxAgeMs, clock);
+        if (Files.exists(journal.file)) {
+            try (BufferedReader reader = Files.newBufferedReader(journal.file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        Record record = GsonUtils.gson.fromJson(line, Record.class);
+                        if (record != null && record.type != null && record.step != null)
+                            journal.apply(record);
+                    } catch (JsonParseException e) {
+                        log.warn("Ignoring unreadable journal record: " + line);
+                    }
+                }
+            }
+        }
+        journal.prune();
+        if (!journal.completed.isEmpty() || !journal.inDoubt.isEmpty())
+            log.info("Resuming " + journal.steps() + " interrupted steps from journal " + file);
+        journal.compact();
+        return journal;
+    }
+
+    /**
+     * Makes a side-effecting call at most once for the step in progress on the current thread: a call completed by
+     * an interrupted run returns its recorded result instead of being made again. Calls outside of a step are made
+     * directly.
+     *
+     * @param operation identifies the call within the step, e.g. backend, operation and target
+     * @param type      type of the result, to read it back from the journal
+     */
+    public <T> T once(String operation, Type type, ApiCall<T> call) throws ApiException {
+        String step = currentStep.get();
+        if (step == null)
+            return call.call();
+        Map<String, String> done = completed.get(step);
+        if (done != null && done.containsKey(operation)) {
+            log.info("Step " + step + ": " + operation + " already done, skipping");
+            String recorded = done.get(operation);
+            return NULL.equals(recorded) ? null : GsonUtils.gson.fromJson(recorded, type);
+        }
+        Set<String> intents = inDoubt.get(step);
+        if (intents != null && intents.contains(operation))
+            log.warn("Step " + step + ": " + operation + " was interrupted, it may have been applied already");
+        // an intent lost by a crash would leave an applied call without a trace
+        sync(append(new Record(INTENT, step, operation, null, clock.millis())));
+        T result = call.call();
+        long position = append(new Record(DONE, step, operation, result == null ? NULL : GsonUtils.gson.toJson(result, type),
+                clock.millis()));
+        sync(position);
+        return result;
+    }
+
+    @Override
+    public <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        if (step == SyncStep.GROUP)
+            return call.call();
+        String key = groupPath + " " + step.tag();
+        String previous = currentStep.get();
+        currentStep.set(key);
+        try {
+            T result = call.call();
+            if (completed.containsKey(key) || inDoubt.containsKey(key))
+                append(new Record(STEP_DONE, key, null, null, clock.millis()));
+            return result;
+        } finally {
+            currentStep.set(previous);
+        }
+    }
+
+    private void apply(Record record) {
+        // records written before the dates were journaled count from now
+        if (!STEP_DONE.equals(record.type))
+            since.merge(record.step, record.at > 0 ? record.at : clock.millis(), Math::min);
+        switch (record.type) {
+            case INTENT:
+                inDoubt.computeIfAbsent(record.step, s -> ConcurrentHashMap.newKeySet()).add(record.operation);
+                break;
+            case DONE:
+                Set<String> intents = inDoubt.get(record.step);
+                if (intents != null && intents.remove(record.operation) && intents.isEmpty())
+                    inDoubt.remove(record.step);
+                completed.computeIfAbsent(record.step, s -> new ConcurrentHashMap<>())
+                        .put(record.operation, record.result == null ? NULL : record.result);
+                break;
+            case STEP_DONE:
+                inDoubt.remove(record.step);
+                completed.remove(record.step);
+                since.remove(record.step);
+                break;
+            default:
+                log.warn("Ignoring journal record of unknown type " + record.type);
+        }
+    }
+
+    /**
+     * @return the position in the file after the record, to sync up to
+     */
+    private synchronized long append(Record record) {
+        apply(record);
+        if (failed)
+            return written;
+        try {
+            ByteBuffer line = ByteBuffer.wrap((GsonUtils.gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining())
+                channel.write(line);
+            written = channel.position();
+            if (++appended >= compactEvery)
+                compact();
+        } catch (IOException e) {
+            fail(e);
+        }
+        return written;
+    }
+
+    /**
+     * Forces the file up to the position, or returns when a concurrent fsync already did.
+     */
+    private void sync(long position) {
+        synchronized (syncLock) {
+            if (synced >= position || failed)
+                return;
+            long target = written;
+            try {
+                channel.force(false);
+                synced = target;
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the file with the records of the steps in progress.
+     */
+    private synchronized void compact() throws IOException {
+        synchronized (syncLock) {
+            if (channel != null)
+                channel.close();
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                StringBuilder records = new StringBuilder();
+                completed.forEach((step, done) -> done.forEach((operation, result) ->
+                        records.append(GsonUtils.gson.toJson(new Record(DONE, step, operation, result, since(step)))).append('\n')));
+                inDoubt.forEach((step, intents) -> intents.forEach(operation ->
+                        records.append(GsonUtils.gson.toJson(new Record(INTENT, step, operation, null, since(step)))).append('\n')));
+                ByteBuffer buffer = ByteBuffer.wrap(records.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining())
+                    out.write(buffer);
+                out.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            written = channel.position();
+            synced = written;
+            appended = 0;
+        }
+    }
+
+    private long since(String step) {
+        return since.getOrDefault(step, clock.millis());
+    }
+
+    /**
+     * Drops the steps recorded for longer than the maximum age, their calls are listed for a manual cleanup.
+     */
+    private void prune() {
+        if (maxAgeMs <= 0)
+            return;
+        long oldest = clock.millis() - maxAgeMs;
+        for (Map.Entry<String, Long> step : since.entrySet()) {
+            if (step.getValue() >= oldest)
+                continue;
+            Map<String, String> done = completed.remove(step.getKey());
+            Set<String> intents = inDoubt.remove(step.getKey());
+            since.remove(step.getKey());
+            log.warn("Dropping step " + step.getKey() + " of the journal, not succeeded since " + step.getValue()
+                    + ". Completed calls: " + (done == null ? "[]" : done.keySet()) + ", interrupted calls: "
+                    + (intents == null ? "[]" : intents));
+        }
+    }
+
+    private void fail(IOException e) {
+        if (!failed)
+            log.error("Cannot write journal " + file + ", interrupted steps will be redone. Error: " + e.toString());
+        failed = true;
+    }
+
+    /**
+     * @return the number of steps with records, interrupted or in progress
+     */
+    public int steps() {
+        Set<String> steps = ConcurrentHashMap.newKeySet();
+        steps.addAll(completed.keySet());
+        steps.addAll(inDoubt.keySet());
+        return steps.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!failed)
+            compact();
+        channel.close();
+    }
+}
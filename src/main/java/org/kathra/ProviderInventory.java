@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.reflect.TypeToken;
+import org.kathra.binaryrepositorymanager.client.BinaryRepositoryManagerClient;
+import org.kathra.core.model.BinaryRepository;
+import org.kathra.utils.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Repositories existing in each binary repository manager (Nexus, Harbor), listed once per provider on first use,
+ * and otherwise known from the existence cache, fed by the listings and probes of the previous runs.
+ *
+ * Only presence is answered: a listing may be paged, truncated or stale, so a repository missing from it is probed
+ * by the callers before being created.
+ */
+public class ProviderInventory {
+
+    private static final Type REPOSITORIES = new TypeToken<List<BinaryRepository>>() {}.getType();
+
+    private Logger log = LoggerFactory.getLogger("ProviderInventory");
+
+    final private SingleFlight singleFlight;
+    final private Instrumentation instrumentation;
+    final private ExistenceCache existence;
+    final private SyncContext context;
+    final private Map<Backend, Optional<Set<String>>> providerIds = new ConcurrentHashMap<>();
+
+    public ProviderInventory(SyncContext context) {
+        this.singleFlight = context.getSingleFlight();
+        this.instrumentation = context.getInstrumentation();
+        this.existence = context.getExistence();
+        this.context = context;
+    }
+
+    /**
+     * @return whether the provider is known to have the repository, false if it must be probed
+     */
+    public boolean knownToExist(Backend backend, BinaryRepositoryManagerClient provider, String providerId) {
+        if (inventory(backend, provider).map(ids -> ids.contains(providerId)).orElse(false))
+            return true;
+        return existence.exists(backend, ExistenceCache.Kind.REPOSITORY, providerId).orElse(false);
+    }
+
+    /**
+     * Records a repository created in the provider during the run.
+     */
+    public void added(Backend backend, String providerId) {
+        Optional<Set<String>> ids = providerIds.get(backend);
+        if (ids != null && ids.isPresent())
+            ids.get().add(providerId);
+        context.invalidateShared("providerRepositories:" + backend.tag());
+        existence.present(backend, ExistenceCache.Kind.REPOSITORY, providerId);
+    }
+
+    /**
+     * Records whether a repository probed in the provider exists.
+     */
+    public void probed(Backend backend, String providerId, boolean exists) {
+        if (exists) {
+            Optional<Set<String>> ids = providerIds.get(backend);
+            if (ids != null && ids.isPresent())
+                ids.get().add(providerId);
+            existence.present(backend, ExistenceCache.Kind.REPOSITORY, providerId);
+        } else {
+            existence.absent(backend, ExistenceCache.Kind.REPOSITORY, providerId);
+        }
+    }
+
+    private Optional<Set<String>> inventory(Backend backend, BinaryRepositoryManagerClient provider) {
+        Optional<Set<String>> ids = providerIds.get(backend);
+        if (ids != null)
+            return ids;
+        synchronized (this) {
+            return providerIds.computeIfAbsent(backend, b -> load(b, provider));
+        }
+    }
+
+    private Optional<Set<String>> load(Backend backend, BinaryRepositoryManagerClient provider) {
+        try {
+            String key = "providerRepositories:" + backend.tag();
+            List<BinaryRepository> repositories = context.sharedRead(key, REPOSITORIES, () -> singleFlight.execute(key,
+                    () -> instrumentation.call(backend, "getBinaryRepositories", () -> provider.getBinaryRepositories())));
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            if (repositories != null) {
+                for (BinaryRepository repository : repositories) {
+                    String id = repository.getProviderId() != null ? repository.getProviderId() : repository.getId();
+                    if (id != null)
+                        ids.add(id);
+                }
+            }
+            existence.presentAll(backend, ExistenceCache.Kind.REPOSITORY, ids);
+            log.debug("Inventory of " + backend.tag() + ": " + ids.size() + " repositories");
+            return Optional.of(ids);
+        } catch (ApiException e) {
+            log.warn("Cannot list repositories of " + backend.tag() + ", probing them one by one. Error: " + e.toString());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link SharedCache} in a Redis server, spoken to with the Redis protocol (RESP) over one connection for the
+ * commands and one for the invalidation broadcasts.
+ *
+ * A key is stored as a version counter and a value prefixed by the version it was stored at; the value is only
+ * stored while the counter still has that version, checked by a script run atomically by the server. The value is
+ * read with the version and its time to live by another script.
+ */
+public class RedisSharedCache implements SharedCache {
+
+    private static Logger log = LoggerFactory.getLogger("RedisSharedCache");
+
+    private static final String PUT_IF_VERSION =
+            "local v = redis.call('GET', KEYS[1]) or '0' "
+                    + "if v ~= ARGV[1] then return 0 end "
+                    + "redis.call('SET', KEYS[2], ARGV[1] .. '\\n' .. ARGV[2], 'PX', ARGV[3]) "
+                    + "return 1";
+    private static final String GET_WITH_TTL =
+            "local v = redis.call('GET', KEYS[1]) or '0' "
+                    + "local s = redis.call('GET', KEYS[2]) "
+                    + "if not s then return {v} end "
+                    + "return {v, s, redis.call('PTTL', KEYS[2])}";
+
+    final private URI uri;
+    final private String prefix;
+    final private int timeoutMs;
+    final private Connection commands;
+    final private List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private Connection subscription;
+    private volatile boolean closed;
+
+    /**
+     * Connection speaking RESP: commands are arrays of bulk strings, replies are read as String, Long, List or null.
+     */
+    static class Connection implements Closeable {
+        final private Socket socket;
+        final private InputStream in;
+        final private OutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        Connection(InputStream in, OutputStream out) {
+            this.socket = null;
+            this.in = in;
+            this.out = out;
+        }
+
+        synchronized Object command(String... arguments) throws IOException {
+            send(arguments);
+            return read();
+        }
+
+        void send(String... arguments) throws IOException {
+            out.write(("*" + arguments.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+            for (String argument : arguments) {
+                byte[] bytes = argument.getBytes(StandardCharsets.UTF_8);
+                out.write(("$" + bytes.length + "\r\n").getBytes(StandardCharsets.UTF_8));
+                out.write(bytes);
+                out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+        }
+
+        Object read() throws IOException {
+            int type = in.read();
+            if (type == -1)
+                throw new EOFException("Connection closed by the server");
+            String line = line();
+            switch (type) {
+                case '+':
+                    return line;
+                case '-':
+                    throw new IOException("Redis error: " + line);
+                case ':':
+                    return Long.parseLong(line);
+                case '$':
+                    int length = Integer.parseInt(line);
+                    if (length < 0)
+                        return null;
+                    byte[] bytes = new byte[length];
+                    int read = 0;
+                    while (read < length) {
+                        int n = in.read(bytes, read, length - read);
+                        if (n == -1)
+                            throw new EOFException("Connection closed by the server");
+                        read += n;
+                    }
+                    line();
+                    return new String(bytes, StandardCharsets.UTF_8);
+                case '*':
+                    int count = Integer.parseInt(line);
+                    if (count < 0)
+                        return null;
+                    List<Object> items = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++)
+                        items.add(read());
+                    return items;
+                default:
+                    throw new IOException("Unexpected Redis reply type " + (char) type);
+            }
+        }
+
+        private String line() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) != '\r') {
+                if (c == -1)
+                    throw new EOFException("Connection closed by the server");
+                line.write(c);
+            }
+            in.read();
+            return new String(line.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (socket != null)
+                socket.close();
+        }
+    }
+
+    private RedisSharedCache(URI uri, String prefix, int timeoutMs) throws IOException {
+        this.uri = uri;
+        this.prefix = prefix;
+        this.timeoutMs = timeoutMs;
+        this.commands = connect(timeoutMs);
+    }
+
+    /**
+     * @param url    redis://[[user]:password@]host[:port][/database]
+     * @param prefix prefix of the keys and of the invalidation channel
+     */
+    public static RedisSharedCache connect(String url, String prefix, int timeoutMs) throws IOException {
+        return new RedisSharedCache(URI.create(url), prefix, timeoutMs);
+    }
+
+    /**
+     * @param readTimeoutMs timeout of the replies, 0 for the subscription waiting for broadcasts
+     */
+    private Connection connect(int readTimeoutMs) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? 6379 : uri.getPort()), timeoutMs);
+        socket.setSoTimeout(timeoutMs);
+        Connection connection = new Connection(socket);
+        String userInfo = uri.getUserInfo();
+        if (userInfo != null && !userInfo.isEmpty()) {
+            int colon = userInfo.indexOf(':');
+            if (colon <= 0)
+                connection.command("AUTH", colon < 0 ? userInfo : userInfo.substring(1));
+            else
+                connection.command("AUTH", userInfo.substring(0, colon), userInfo.substring(colon + 1));
+        }
+        String database = uri.getPath() == null ? "" : uri.getPath().replace("/", "");
+        if (!database.isEmpty())
+            connection.command("SELECT", database);
+        socket.setSoTimeout(readTimeoutMs);
+        return connection;
+    }
+
+    private String versionKey(String key) {
+        return prefix + "version:" + key;
+    }
+
+    private String valueKey(String key) {
+        return prefix + "value:" + key;
+    }
+
+    private String channel() {
+        return prefix + "invalidations";
+    }
+
+    @Override
+    public Entry get(String key) throws IOException {
+        List<?> values = (List<?>) commands.command("EVAL", GET_WITH_TTL, "2", versionKey(key), valueKey(key));
+        long version = Long.parseLong((String) values.get(0));
+        if (values.size() < 3)
+            return new Entry(version, null);
+        String stored = (String) values.get(1);
+        long ttlMs = (Long) values.get(2);
+        int newline = stored.indexOf('\n');
+        boolean current = newline > 0 && stored.substring(0, newline).equals(Long.toString(version));
+        return new Entry(version, current ? stored.substring(newline + 1) : null, ttlMs < 0 ? -1 : ttlMs);
+    }
+
+    @Override
+    public boolean put(String key, long version, String value, long ttlMs) throws IOException {
+        Object stored = commands.command("EVAL", PUT_IF_VERSION, "2", versionKey(key), valueKey(key),
+                Long.toString(version), value, Long.toString(ttlMs));
+        return Long.valueOf(1).equals(stored);
+    }
+
+    @Override
+    public void invalidate(String key) throws IOException {
+        commands.command("INCR", versionKey(key));
+        commands.command("PUBLISH", channel(), key);
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<String> listener) throws IOException {
+        listeners.add(listener);
+        if (subscription != null)
+            return;
+        subscription = connect(0);
+        subscription.command("SUBSCRIBE", channel());
+        Thread thread = new Thread(this::listen, "shared-cache-invalidations");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void listen() {
+        try {
+            while (!closed) {
+                Object message = subscription.read();
+                if (message instanceof List && ((List<?>) message).size() == 3 && "message".equals(((List<?>) message).get(0))) {
+                    String key = (String) ((List<?>) message).get(2);
+                    for (Consumer<String> listener : listeners)
+                        listener.accept(key);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed)
+                log.warn("Invalidations of the shared cache lost, local copies expire with their TTL. Error: " + e.toString());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        commands.close();
+        if (subscription != null)
+            subscription.close();
+    }
+}
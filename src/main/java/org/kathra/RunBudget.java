@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time a run may take, e.g. the activeDeadlineSeconds of its Job. No new group is started once the expected end of
+ * the group would pass the budget minus a safety margin, or once a stop was requested; groups in flight finish.
+ */
+public class RunBudget {
+
+    private Logger log = LoggerFactory.getLogger("RunBudget");
+
+    final private Clock clock;
+    final private long deadlineMs;
+    final private long endMs;
+    final private AtomicLong deferred = new AtomicLong();
+    private volatile String stopReason;
+
+    /**
+     * @param budgetMs time the run may take from now, 0 for no limit
+     * @param marginMs time kept to finish the groups in flight and save the state
+     */
+    public RunBudget(Clock clock, long budgetMs, long marginMs) {
+        this.clock = clock;
+        this.endMs = budgetMs <= 0 ? Long.MAX_VALUE : clock.millis() + budgetMs;
+        this.deadlineMs = budgetMs <= 0 ? Long.MAX_VALUE : endMs - marginMs;
+    }
+
+    /**
+     * @return the end of the budget, margin included, Long.MAX_VALUE for no limit
+     */
+    public long getEndMs() {
+        return endMs;
+    }
+
+    /**
+     * @param expectedDurationMs expected duration of the group, negative if unknown
+     * @return whether the group can be started, counting it as deferred if not
+     */
+    public boolean canStart(long expectedDurationMs) {
+        if (stopReason == null && clock.millis() + Math.max(0, expectedDurationMs) > deadlineMs)
+            requestStop("run budget used");
+        if (stopReason == null)
+            return true;
+        deferred.incrementAndGet();
+        return false;
+    }
+
+    public void requestStop(String reason) {
+        if (stopReason == null) {
+            stopReason = reason;
+            log.info("Stopping the run: " + reason + ". Groups in flight are finished, the others are deferred");
+        }
+    }
+
+    public boolean isStopped() {
+        return stopReason != null;
+    }
+
+    /**
+     * @return the number of groups not started because of the budget or a stop
+     */
+    public long getDeferred() {
+        return deferred.get();
+    }
+
+    /**
+     * Hook requesting a stop on SIGTERM, then waiting for the run to count down the latch so that the JVM doesn't
+     * exit before the state is saved.
+     */
+    public Thread shutdownHook(CountDownLatch finished, long graceMs) {
+        return new Thread(() -> {
+            if (finished.getCount() == 0)
+                return;
+            requestStop("termination requested");
+            try {
+                if (!finished.await(graceMs, TimeUnit.MILLISECONDS))
+                    log.warn("Run not finished after " + graceMs + "ms, exiting");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "run-budget-shutdown");
+    }
+}
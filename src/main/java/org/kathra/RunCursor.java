@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Groups already refreshed by the runs of the current pass over all the groups, kept in a JSON file so that a run
+ * stopped by its budget is resumed by the next one. The pass ends, and the cursor is emptied, with the first run
+ * that has no deferred group.
+ */
+public class RunCursor {
+
+    private static Logger log = LoggerFactory.getLogger("RunCursor");
+    private static final Gson GSON = new Gson();
+    private static final Type PATHS = new TypeToken<TreeSet<String>>() {}.getType();
+
+    final private String file;
+    final private Set<String> done = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param file JSON file of the cursor, null to keep it in memory only
+     */
+    public RunCursor(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the cursor file, an unreadable or missing file starting a new pass.
+     */
+    public static RunCursor load(String file) {
+        RunCursor cursor = new RunCursor(file);
+        Path path = Paths.get(file);
+        if (!Files.exists(path))
+            return cursor;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Set<String> done = GSON.fromJson(reader, PATHS);
+            if (done != null)
+                cursor.done.addAll(done);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot read run cursor " + file + ", starting a new pass. Error: " + e.toString());
+        }
+        return cursor;
+    }
+
+    public void save() throws IOException {
+        if (file == null)
+            return;
+        Path tmp = Paths.get(file + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            GSON.toJson(new TreeSet<>(done), PATHS, writer);
+        }
+        Files.move(tmp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public boolean isDone(String groupPath) {
+        return done.contains(groupPath);
+    }
+
+    public void done(String groupPath) {
+        done.add(groupPath);
+    }
+
+    /**
+     * Starts a new pass.
+     */
+    public void clear() {
+        done.clear();
+    }
+
+    public int size() {
+        return done.size();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Timing profile of a synchronization run, serialized as JSON.
+ */
+public class RunReport {
+
+    static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    long startedAt;
+    String shard;
+    long wallTimeMs;
+    Map<String, Integer> outcomes = new TreeMap<>();
+    Map<String, Long> stepTimeMs = new TreeMap<>();
+    Map<String, Long> callsByBackend = new TreeMap<>();
+    Map<String, Long> callTimeMsByBackend = new TreeMap<>();
+    Map<String, Long> errorsByBackend = new TreeMap<>();
+    Map<String, Long> deferredSteps = new TreeMap<>();
+    Map<String, Long> timeToReadyMs = new TreeMap<>();
+    List<GroupReport> slowestGroups = new ArrayList<>();
+    List<GroupReport> groups = new ArrayList<>();
+
+    public static class GroupReport {
+        String path;
+        String outcome;
+        String priority;
+        long wallTimeMs;
+        long finishedAtMs;
+        Map<String, Long> stepTimeMs = new TreeMap<>();
+        Map<String, Long> callsByBackend = new TreeMap<>();
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public String getPriority() {
+            return priority;
+        }
+
+        public long getWallTimeMs() {
+            return wallTimeMs;
+        }
+
+        /**
+         * Time from the start of the run to the end of the group synchronization.
+         */
+        public long getFinishedAtMs() {
+            return finishedAtMs;
+        }
+
+        public Map<String, Long> getStepTimeMs() {
+            return stepTimeMs;
+        }
+
+        public Map<String, Long> getCallsByBackend() {
+            return callsByBackend;
+        }
+    }
+
+    public long getWallTimeMs() {
+        return wallTimeMs;
+    }
+
+    /**
+     * Shard of the replica that ran the synchronization, as index/count.
+     */
+    public String getShard() {
+        return shard;
+    }
+
+    public Map<String, Integer> getOutcomes() {
+        return outcomes;
+    }
+
+    public Map<String, Long> getStepTimeMs() {
+        return stepTimeMs;
+    }
+
+    public Map<String, Long> getCallsByBackend() {
+        return callsByBackend;
+    }
+
+    public Map<String, Long> getCallTimeMsByBackend() {
+        return callTimeMsByBackend;
+    }
+
+    public Map<String, Long> getErrorsByBackend() {
+        return errorsByBackend;
+    }
+
+    /**
+     * Number of steps not finished within the deadline of their group, by step.
+     */
+    public Map<String, Long> getDeferredSteps() {
+        return deferredSteps;
+    }
+
+    /**
+     * Count and percentiles of the time from the start of the run until the new groups are ready.
+     */
+    public Map<String, Long> getTimeToReadyMs() {
+        return timeToReadyMs;
+    }
+
+    public List<GroupReport> getSlowestGroups() {
+        return slowestGroups;
+    }
+
+    public List<GroupReport> getGroups() {
+        return groups;
+    }
+
+    public void write(String file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            GSON.toJson(this, writer);
+        }
+    }
+
+    public static RunReport read(String file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            return GSON.fromJson(reader, RunReport.class);
+        }
+    }
+
+    /**
+     * Human readable differences between a baseline report and the current one.
+     */
+    public static List<String> compare(RunReport baseline, RunReport current, int top) {
+        List<String> lines = new ArrayList<>();
+        lines.add(line("wall time (ms)", baseline.wallTimeMs, current.wallTimeMs));
+        lines.add(line("groups", baseline.groups.size(), current.groups.size()));
+        for (String step : keys(baseline.stepTimeMs, current.stepTimeMs))
+            lines.add(line("step " + step + " (ms)", baseline.stepTimeMs.getOrDefault(step, 0L),
+                    current.stepTimeMs.getOrDefault(step, 0L)));
+        for (String backend : keys(baseline.callsByBackend, current.callsByBackend)) {
+            lines.add(line("calls " + backend, baseline.callsByBackend.getOrDefault(backend, 0L),
+                    current.callsByBackend.getOrDefault(backend, 0L)));
+            lines.add(line("call time " + backend + " (ms)", baseline.callTimeMsByBackend.getOrDefault(backend, 0L),
+                    current.callTimeMsByBackend.getOrDefault(backend, 0L)));
+        }
+        for (String step : keys(baseline.deferredSteps, current.deferredSteps))
+            lines.add(line("deferred " + step, baseline.deferredSteps.getOrDefault(step, 0L),
+                    current.deferredSteps.getOrDefault(step, 0L)));
+
+        for (String key : keys(baseline.timeToReadyMs, current.timeToReadyMs))
+            lines.add(line("time to ready " + key + (key.equals("count") ? "" : " (ms)"),
+                    baseline.timeToReadyMs.getOrDefault(key, 0L), current.timeToReadyMs.getOrDefault(key, 0L)));
+
+        Map<String, GroupReport> baselineGroups = baseline.groups.stream()
+                .collect(Collectors.toMap(GroupReport::getPath, g -> g, (a, b) -> b));
+        List<GroupReport> regressions = current.groups.stream()
+                .filter(g -> baselineGroups.containsKey(g.path))
+                .sorted(Comparator.comparingLong((GroupReport g) -> baselineGroups.get(g.path).wallTimeMs - g.wallTimeMs))
+                .limit(top)
+                .filter(g -> g.wallTimeMs > baselineGroups.get(g.path).wallTimeMs)
+                .collect(Collectors.toList());
+        for (GroupReport group : regressions)
+            lines.add(line("group " + group.path + " (ms)", baselineGroups.get(group.path).wallTimeMs, group.wallTimeMs));
+        for (GroupReport group : current.groups)
+            if (baselineGroups.containsKey(group.path) && !Objects.equals(baselineGroups.get(group.path).outcome, group.outcome))
+                lines.add("group " + group.path + " outcome: " + baselineGroups.get(group.path).outcome + " -> " + group.outcome);
+        return lines;
+    }
+
+    private static Set<String> keys(Map<String, ?> a, Map<String, ?> b) {
+        Set<String> keys = new TreeSet<>(a.keySet());
+        keys.addAll(b.keySet());
+        return keys;
+    }
+
+    private static String line(String label, long baseline, long current) {
+        String change = baseline == 0 ? "" : String.format(" (%+.1f%%)", 100.0 * (current - baseline) / baseline);
+        return label + ": " + baseline + " -> " + current + change;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.utils.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Collects a {@link RunReport} from the steps and calls going through the instrumentation.
+ *
+ * Steps and calls are attributed to the group being synchronized by the current thread. Durations are measured on
+ * the clock of the {@link SyncContext}, virtual in simulations.
+ */
+public class RunReporter implements SyncInterceptor {
+
+    private Logger log = LoggerFactory.getLogger("RunReporter");
+
+    final private String file;
+    final private int top;
+    final private ThreadLocal<GroupProfile> currentGroup = new ThreadLocal<>();
+    final private ConcurrentLinkedQueue<GroupProfile> groups = new ConcurrentLinkedQueue<>();
+    final private ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<>();
+    final private ConcurrentHashMap<String, LongAdder> callMs = new ConcurrentHashMap<>();
+    final private ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    final private ConcurrentHashMap<String, LongAdder> deferredSteps = new ConcurrentHashMap<>();
+    final private ConcurrentHashMap<String, GroupPriority> priorities = new ConcurrentHashMap<>();
+    private volatile Shard shard = Shard.ALL;
+    private volatile Clock clock = Clock.systemUTC();
+    private volatile long startedAt = clock.millis();
+
+    private static class GroupProfile {
+        final String path;
+        final ConcurrentHashMap<String, LongAdder> stepMs = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<>();
+        volatile boolean stepFailed;
+        volatile boolean stepDeferred;
+        volatile boolean membersOnly;
+        volatile String outcome;
+        volatile long wallTimeMs;
+        volatile long finishedAt;
+
+        GroupProfile(String path) {
+            this.path = path;
+        }
+    }
+
+    public RunReporter(String file, int top) {
+        this.file = file;
+        this.top = top;
+    }
+
+    public RunReporter shard(Shard shard) {
+        this.shard = shard;
+        return this;
+    }
+
+    public RunReporter clock(Clock clock) {
+        this.clock = clock;
+        return this;
+    }
+
+    /**
+     * Records the priority the group is synchronized with, before its synchronization.
+     */
+    public void priority(String groupPath, GroupPriority priority) {
+        priorities.put(groupPath, priority);
+    }
+
+    /**
+     * Records that the group synchronized by the current thread is ready, only its members being refreshed.
+     */
+    public void membersOnly() {
+        GroupProfile group = currentGroup.get();
+        if (group != null)
+            group.membersOnly = true;
+    }
+
+    public void start() {
+        priorities.clear();
+        groups.clear();
+        calls.clear();
+        callMs.clear();
+        errors.clear();
+        deferredSteps.clear();
+        startedAt = clock.millis();
+    }
+
+    @Override
+    public <T> T aroundCall(Backend backend, String operation, ApiCall<T> call) throws ApiException {
+        long start = clock.millis();
+        try {
+            return call.call();
+        } catch (Throwable e) {
+            add(errors, backend.tag(), 1);
+            throw e;
+        } finally {
+            add(calls, backend.tag(), 1);
+            add(callMs, backend.tag(), clock.millis() - start);
+            GroupProfile group = currentGroup.get();
+            if (group != null)
+                add(group.calls, backend.tag(), 1);
+        }
+    }
+
+    @Override
+    public <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        if (step == SyncStep.GROUP)
+            return aroundGroup(groupPath, call);
+        long start = clock.millis();
+        GroupProfile group = currentGroup.get();
+        try {
+            return call.call();
+        } catch (Exception e) {
+            if (group != null)
+                group.stepFailed = true;
+            if (DeadlineExceededException.find(e) != null) {
+                add(deferredSteps, step.tag(), 1);
+                if (group != null)
+                    group.stepDeferred = true;
+            }
+            throw e;
+        } finally {
+            if (group != null)
+                add(group.stepMs, step.tag(), clock.millis() - start);
+        }
+    }
+
+    private <T> T aroundGroup(String groupPath, StepCall<T> call) throws Exception {
+        GroupProfile group = new GroupProfile(groupPath);
+        GroupProfile previous = currentGroup.get();
+        currentGroup.set(group);
+        long start = clock.millis();
+        group.outcome = "failed";
+        try {
+            T result = call.call();
+            if (group.stepDeferred)
+                group.outcome = "deferred";
+            else if (group.membersOnly)
+                // the refresh of the members is the only step of a ready group
+                group.outcome = group.stepFailed ? "failed" : "members-refreshed";
+            else
+                group.outcome = group.stepFailed ? "partially-synchronized" : "synchronized";
+            return result;
+        } catch (Exception e) {
+            // a deferred step of the group is already counted
+            if (DeadlineExceededException.find(e) != null) {
+                group.outcome = "deferred";
+                if (!group.stepDeferred)
+                    add(deferredSteps, SyncStep.GROUP.tag(), 1);
+            }
+            throw e;
+        } finally {
+            group.finishedAt = clock.millis();
+            group.wallTimeMs = group.finishedAt - start;
+            groups.add(group);
+            currentGroup.set(previous);
+        }
+    }
+
+    /**
+     * Time from the start of the run to the end of the provisioning of the new groups fully synchronized.
+     */
+    private static Map<String, Long> timeToReady(List<RunReport.GroupReport> groups) {
+        long[] finishedAt = groups.stream()
+                .filter(g -> GroupPriority.PROVISION.tag().equals(g.priority) && "synchronized".equals(g.outcome))
+                .mapToLong(RunReport.GroupReport::getFinishedAtMs).sorted().toArray();
+        Map<String, Long> timeToReady = new TreeMap<>();
+        timeToReady.put("count", (long) finishedAt.length);
+        if (finishedAt.length > 0) {
+            timeToReady.put("p50", finishedAt[(finishedAt.length - 1) / 2]);
+            timeToReady.put("p95", finishedAt[(int) Math.ceil(finishedAt.length * 0.95) - 1]);
+            timeToReady.put("max", finishedAt[finishedAt.length - 1]);
+        }
+        return timeToReady;
+    }
+
+    private static void add(ConcurrentHashMap<String, LongAdder> counters, String key, long value) {
+        counters.computeIfAbsent(key, k -> new LongAdder()).add(value);
+    }
+
+    private static Map<String, Long> toCounts(Map<String, LongAdder> counters) {
+        Map<String, Long> counts = new TreeMap<>();
+        counters.forEach((k, v) -> counts.put(k, v.sum()));
+        return counts;
+    }
+
+    public RunReport build() {
+        RunReport report = new RunReport();
+        report.startedAt = startedAt;
+        report.shard = shard.toString();
+        report.wallTimeMs = clock.millis() - startedAt;
+        report.callsByBackend = toCounts(calls);
+        report.callTimeMsByBackend = toCounts(callMs);
+        report.errorsByBackend = toCounts(errors);
+        report.deferredSteps = toCounts(deferredSteps);
+        for (GroupProfile profile : groups) {
+            RunReport.GroupReport group = new RunReport.GroupReport();
+            group.path = profile.path;
+            group.outcome = profile.outcome;
+            group.wallTimeMs = profile.wallTimeMs;
+            group.stepTimeMs = toCounts(profile.stepMs);
+            group.callsByBackend = toCounts(profile.calls);
+            group.finishedAtMs = profile.finishedAt - startedAt;
+            GroupPriority priority = priorities.get(profile.path);
+            group.priority = priority == null ? null : priority.tag();
+            report.groups.add(group);
+            report.outcomes.merge(group.outcome, 1, Integer::sum);
+            group.stepTimeMs.forEach((step, ms) -> report.stepTimeMs.merge(step, ms, Long::sum));
+        }
+        report.timeToReadyMs = timeToReady(report.groups);
+        report.slowestGroups = report.groups.stream()
+                .sorted(Comparator.comparingLong(RunReport.GroupReport::getWallTimeMs).reversed())
+                .limit(top)
+                .collect(Collectors.toList());
+        return report;
+    }
+
+    public RunReport finish() {
+        RunReport report = build();
+        if (file != null && !file.isEmpty()) {
+            try {
+                report.write(file);
+                log.info("Run report written to " + file);
+            } catch (IOException e) {
+                log.error("Cannot write run report " + file + ". Error: " + e.toString());
+            }
+        }
+        return report;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+/**
+ * Part of the groups synchronized by one replica when several replicas share the work, e.g. the pods of an
+ * Indexed Job or the ordinals of a StatefulSet.
+ *
+ * Groups are assigned by rendezvous hashing of their path: every replica computes the same owner without
+ * coordination, and changing the number of shards only moves the groups of the added or removed shards.
+ */
+public final class Shard {
+
+    public static final Shard ALL = new Shard(0, 1);
+
+    final private int index;
+    final private int count;
+
+    public Shard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count)
+            throw new IllegalArgumentException("Invalid shard " + index + " of " + count);
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isPartial() {
+        return count > 1;
+    }
+
+    public boolean owns(String path) {
+        if (path == null)
+            return index == 0;
+        return count == 1 || owner(path, count) == index;
+    }
+
+    /**
+     * @return the shard with the highest weight for the path
+     */
+    static int owner(String path, int count) {
+        long hash = Hashes.fnv1a(path);
+        int owner = 0;
+        long best = Long.MIN_VALUE;
+        for (int shard = 0; shard < count; shard++) {
+            long weight = Hashes.mix(hash + shard * 0x9E3779B97F4A7C15L);
+            if (weight > best) {
+                best = weight;
+                owner = shard;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * @return the file name with the shard inserted before the extension when the groups are sharded
+     */
+    public String file(String file) {
+        if (!isPartial() || file == null || file.isEmpty())
+            return file;
+        int dot = file.lastIndexOf('.');
+        if (dot <= file.lastIndexOf('/'))
+            dot = file.length();
+        return file.substring(0, dot) + ".shard-" + index + file.substring(dot);
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Cache shared by the replicas of the synchronizer. Each key has a version, bumped and broadcast to the replicas
+ * when one of them invalidates it; a value is only stored if the version it was read at is still current, so a
+ * replica can't overwrite an invalidation with the list it read before.
+ */
+public interface SharedCache extends Closeable {
+
+    class Entry {
+        final long version;
+        final String value;
+        final long ttlMs;
+
+        public Entry(long version, String value) {
+            this(version, value, -1);
+        }
+
+        public Entry(long version, String value, long ttlMs) {
+            this.version = version;
+            this.value = value;
+            this.ttlMs = ttlMs;
+        }
+
+        /**
+         * @return the current version of the key, 0 if it was never invalidated
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the value stored at the current version, null if none
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return the time left to the value, -1 if unknown
+         */
+        public long getTtlMs() {
+            return ttlMs;
+        }
+    }
+
+    Entry get(String key) throws IOException;
+
+    /**
+     * @return whether the value was stored, false if the key was invalidated since the version was read
+     */
+    boolean put(String key, long version, String value, long ttlMs) throws IOException;
+
+    /**
+     * Bumps the version of the key and broadcasts it to the subscribers.
+     */
+    void invalidate(String key) throws IOException;
+
+    /**
+     * Registers a listener of the keys invalidated by any replica.
+     */
+    void subscribe(Consumer<String> listener) throws IOException;
+}
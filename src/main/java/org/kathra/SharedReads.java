@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import com.google.gson.Gson;
+import org.kathra.utils.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lists of the managers read through a {@link SharedCache}, so that the replicas read each list from the managers
+ * once per TTL instead of once each. The lists read are also kept locally until they expire or any replica
+ * invalidates them after a creation. Lists read locally are shared by the callers and must be treated as read-only.
+ *
+ * A local copy made from the shared cache expires with the shared entry. An invalidation received while a list is
+ * read drops the copy stored afterwards, each key counting the invalidations it received.
+ *
+ * When the shared cache is unreachable, the lists are read from the managers for the rest of the run.
+ */
+public class SharedReads implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger("SharedReads");
+    private static final Gson GSON = new Gson();
+
+    final private SharedCache cache;
+    final private Clock clock;
+    final private long ttlMs;
+    final private ConcurrentHashMap<String, Local> local = new ConcurrentHashMap<>();
+    final private ConcurrentHashMap<String, Long> invalidations = new ConcurrentHashMap<>();
+    final private LongAdder localHits = new LongAdder();
+    final private LongAdder sharedHits = new LongAdder();
+    final private LongAdder reads = new LongAdder();
+    private volatile boolean unavailable;
+
+    private static class Local {
+        final Object value;
+        final long expiresAt;
+
+        Local(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public SharedReads(SharedCache cache, Clock clock, long ttlMs) {
+        this.cache = cache;
+        this.clock = clock;
+        this.ttlMs = ttlMs;
+        try {
+            cache.subscribe(this::dropLocal);
+        } catch (IOException e) {
+            unavailable(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T read(String key, Type type, ApiCall<T> call) throws ApiException {
+        Local copy = local.get(key);
+        if (copy != null && copy.expiresAt > clock.millis()) {
+            localHits.increment();
+            return (T) copy.value;
+        }
+        if (unavailable)
+            return call.call();
+        long invalidated = invalidations.getOrDefault(key, 0L);
+        SharedCache.Entry entry;
+        try {
+            entry = cache.get(key);
+        } catch (IOException e) {
+            unavailable(e);
+            return call.call();
+        }
+        T value;
+        long localTtlMs = ttlMs;
+        if (entry.getValue() != null) {
+            sharedHits.increment();
+            value = GSON.fromJson(entry.getValue(), type);
+            if (entry.getTtlMs() >= 0)
+                localTtlMs = Math.min(ttlMs, entry.getTtlMs());
+        } else {
+            reads.increment();
+            value = call.call();
+            try {
+                if (!cache.put(key, entry.getVersion(), GSON.toJson(value, type), ttlMs)) {
+                    log.debug("List " + key + " invalidated while read, not shared");
+                    return value;
+                }
+            } catch (IOException e) {
+                unavailable(e);
+            }
+        }
+        Local stored = new Local(value, clock.millis() + localTtlMs);
+        local.put(key, stored);
+        // an invalidation counted before the check is seen, one counted after it removes the copy itself
+        if (invalidations.getOrDefault(key, 0L) != invalidated)
+            local.remove(key, stored);
+        return value;
+    }
+
+    private void dropLocal(String key) {
+        invalidations.merge(key, 1L, Long::sum);
+        local.remove(key);
+    }
+
+    /**
+     * Drops a list after a creation in it, on this replica and on the others.
+     */
+    public void invalidate(String key) {
+        dropLocal(key);
+        if (unavailable)
+            return;
+        try {
+            cache.invalidate(key);
+        } catch (IOException e) {
+            unavailable(e);
+        }
+    }
+
+    private void unavailable(IOException e) {
+        if (!unavailable)
+            log.warn("Shared cache unavailable, reading the lists from the managers. Error: " + e.toString());
+        unavailable = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.info("Shared reads: " + this);
+        cache.close();
+    }
+
+    @Override
+    public String toString() {
+        return "localHits=" + localHits.sum() + " sharedHits=" + sharedHits.sum() + " managerReads=" + reads.sum();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.utils.ApiException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses concurrent identical reads into a single request.
+ *
+ * The first caller for a key performs the call, callers arriving while it is in flight wait for it and share
+ * its result (or its exception). Shared results must be treated as read-only.
+ *
+ * With deadlines, a caller waits no longer than the time left to its own group. A call failing on the deadline of
+ * the caller making it is not shared: the callers that joined it and still have time left call again.
+ */
+public class SingleFlight {
+
+    private static final Object LEADER_DEADLINE = new Object();
+
+    final private ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    final private AtomicLong executed = new AtomicLong();
+    final private AtomicLong saved = new AtomicLong();
+    private volatile Deadlines deadlines;
+
+    /**
+     * Bounds the waits of the callers by the deadlines of their groups.
+     */
+    public SingleFlight deadlines(Deadlines deadlines) {
+        this.deadlines = deadlines;
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, ApiCall<T> call) throws ApiException {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> current;
+        while ((current = inFlight.putIfAbsent(key, future)) != null) {
+            SyncFlightRecorder.cacheLookup("single-flight", key, true);
+            saved.incrementAndGet();
+            Object result = await(key, current);
+            if (result != LEADER_DEADLINE)
+                return (T) result;
+            saved.decrementAndGet();
+        }
+        SyncFlightRecorder.cacheLookup("single-flight", key, false);
+        executed.incrementAndGet();
+        try {
+            T result = call.call();
+            future.complete(result);
+            return result;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @return the result of the call, or LEADER_DEADLINE if it failed on the deadline of the caller making it
+     */
+    private Object await(String key, CompletableFuture<Object> future) throws ApiException {
+        long remainingMs = deadlines == null ? Long.MAX_VALUE : deadlines.remainingMs();
+        try {
+            if (remainingMs == Long.MAX_VALUE)
+                return future.get();
+            if (remainingMs <= 0)
+                throw new DeadlineExceededException("No time left to wait for " + key);
+            return future.get(remainingMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Wait for " + key + " outlived the deadline of the group");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException("Interrupted while waiting for " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (DeadlineExceededException.find(cause) != null)
+                return LEADER_DEADLINE;
+            if (cause instanceof ApiException)
+                throw (ApiException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return number of requests actually sent
+     */
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * @return number of requests avoided by joining an in-flight one
+     */
+    public long getSaved() {
+        return saved.get();
+    }
+
+    @Override
+    public String toString() {
+        return "executed=" + getExecuted() + ", saved=" + getSaved();
+    }
+}
@@ -28,14 +28,14 @@ import org.kathra.resourcemanager.client.GroupsClient;
 import org.kathra.resourcemanager.client.UsersClient;
 import org.kathra.utils.ApiException;
 import org.kathra.utils.KathraException;
+import org.kathra.utils.serialization.GsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public class SyncBinaryRepository {
 
@@ -46,76 +46,131 @@ public class SyncBinaryRepository {
     final private BinaryRepositoryManagerClient repositoryManagerHarbor;
     final private GroupsClient groupsClient;
     final private UsersClient usersClient;
+    final private SingleFlight singleFlight;
+    final private Instrumentation instrumentation;
+    final private BinaryRepositoryIndex binaryRepositories;
+    final private ProviderInventory providerInventory;
+    final private SyncContext context;
 
     public SyncBinaryRepository(
             BinaryRepositoryManagerClient repositoryManagerNexus, BinaryRepositoryManagerClient repositoryManagerHarbor,
             GroupsClient groupsClient, UsersClient usersClient, BinaryRepositoriesClient binaryRepositoriesClient) {
+        this(repositoryManagerNexus, repositoryManagerHarbor, groupsClient, usersClient, binaryRepositoriesClient,
+                new SyncContext());
+    }
+
+    public SyncBinaryRepository(
+            BinaryRepositoryManagerClient repositoryManagerNexus, BinaryRepositoryManagerClient repositoryManagerHarbor,
+            GroupsClient groupsClient, UsersClient usersClient, BinaryRepositoriesClient binaryRepositoriesClient,
+            SyncContext context) {
         this.repositoryManagerNexus = repositoryManagerNexus;
         this.repositoryManagerHarbor = repositoryManagerHarbor;
         this.binaryRepositoriesClient = binaryRepositoriesClient;
         this.groupsClient = groupsClient;
         this.usersClient = usersClient;
+        this.singleFlight = context.getSingleFlight();
+        this.instrumentation = context.getInstrumentation();
+        this.binaryRepositories = new BinaryRepositoryIndex(binaryRepositoriesClient, context);
+        this.providerInventory = new ProviderInventory(context);
+        this.context = context;
 
         log.debug("Getting keys ");
     }
 
-    public Group synchronize(Group group) throws Exception {
-        Group groupWithDetails = groupsClient.getGroup(group.getId());
+    /**
+     * Group being synchronized with its details, read once for all its repositories.
+     */
+    private class GroupDetails {
+        final Group group;
+        private User technicalUser;
 
-        AtomicReference<Exception> exception = new AtomicReference<>();
-        List<BinaryRepository> list = groupWithDetails.getBinaryRepositories().parallelStream().map(b -> {
-            try {
-                return binaryRepositoriesClient.getBinaryRepository(b.getId());
-            } catch (Exception e) {
-                log.error("Error during get repository "+b.getId()+" for group "+groupWithDetails.getPath());
-                exception.set(e);
-                return null;
+        GroupDetails(Group group) {
+            this.group = group;
+        }
+
+        User technicalUser() throws ApiException {
+            if (technicalUser == null) {
+                if (group.getTechnicalUser() == null || group.getTechnicalUser().getId() == null) {
+                    log.error("Group " + group.getPath() + " doesn't have technicalUser");
+                    throw new IllegalStateException("Not technicalUser existings");
+                }
+                String technicalUserId = group.getTechnicalUser().getId();
+                technicalUser = instrumentation.call(Backend.RESOURCE_MANAGER, "getUser", () -> usersClient.getUser(technicalUserId));
             }
-        }).filter(Objects::nonNull).collect(Collectors.toList());
+            return technicalUser;
+        }
+    }
+
+    public Group synchronize(Group group) throws Exception {
+        Group groupWithDetails = getGroup(group.getId());
+        GroupDetails details = new GroupDetails(groupWithDetails);
 
-        if (exception.get() != null) {
-            exception.get().printStackTrace();
-            throw exception.get();
+        Map<BinaryRepository.TypeEnum, BinaryRepository> repositories;
+        try {
+            repositories = binaryRepositories.ofGroup(groupWithDetails);
+        } catch (ApiException e) {
+            log.error("Error during get repositories for group "+groupWithDetails.getPath());
+            e.printStackTrace();
+            throw e;
         }
 
+        // a failed type doesn't stop the others, the step fails afterwards so that the journal keeps its calls
+        Exception failure = null;
         for (BinaryRepository.TypeEnum type : BinaryRepository.TypeEnum.values()) {
             try {
-                BinaryRepository repository = list.stream().filter(b -> b.getType().equals(type)).findFirst().orElse(null);
+                BinaryRepository repository = repositories.get(type);
                 if (repository == null) {
                     repository = createBinaryRepositoryInDb(groupWithDetails, type);
                 }
-                initBinaryRepositoryIntoManager(repository.group(groupWithDetails));
+                initBinaryRepositoryIntoManager(repository, details);
                 if (!Resource.StatusEnum.READY.equals(repository.getStatus())) {
-                    binaryRepositoriesClient.updateBinaryRepositoryAttributes(repository.getId(), new BinaryRepository().status(Resource.StatusEnum.READY));
+                    String repositoryId = repository.getId();
+                    instrumentation.run(Backend.RESOURCE_MANAGER, "updateBinaryRepositoryAttributes", () -> binaryRepositoriesClient.updateBinaryRepositoryAttributes(repositoryId, new BinaryRepository().status(Resource.StatusEnum.READY)));
+                    repository.setStatus(Resource.StatusEnum.READY);
                 }
             } catch (Exception e) {
+                // the group has no time left for the next types either, the step is deferred
+                if (DeadlineExceededException.find(e) != null)
+                    throw e;
                 log.error("Error during sync repository "+type.toString()+" for group "+groupWithDetails.getPath());
                 e.printStackTrace();
+                if (failure == null)
+                    failure = e;
             }
         }
+        if (failure != null)
+            throw failure;
         return groupWithDetails;
     }
 
-    private BinaryRepository initBinaryRepositoryIntoManager(BinaryRepository binaryRepository) throws Exception {
+    private BinaryRepository initBinaryRepositoryIntoManager(BinaryRepository binaryRepository, GroupDetails details) throws Exception {
         // if provider not defined, create new one
         if (StringUtils.isEmpty(binaryRepository.getProviderId())) {
-            binaryRepository = createBinaryRepositoryIntoProvider(binaryRepository);
-            defineTechnicalUserAsMembership(binaryRepository);
-            defineGroupAsMembership(binaryRepository);
+            binaryRepository = createBinaryRepositoryIntoProvider(binaryRepository, details);
+            defineMemberships(binaryRepository, details, false);
         } else {
             BinaryRepositoryManagerClient provider = getBinaryRepositoryManagerProvider(binaryRepository);
+            Backend backend = getBinaryRepositoryManagerBackend(binaryRepository);
+            String providerId = binaryRepository.getProviderId();
             BinaryRepository result = null;
-            try {
-                result = provider.getBinaryRepository(binaryRepository.getProviderId());
-            } catch (ApiException e) {
-                if (KathraException.ErrorCode.NOT_FOUND.getCode() == e.getCode()) {
-                    // Repository not found, create new one
-                    binaryRepository = createBinaryRepositoryIntoProvider(binaryRepository);
+            if (providerInventory.knownToExist(backend, provider, providerId)) {
+                result = binaryRepository;
+            } else {
+                // a repository missing from the listing is only created once the provider confirms it is absent
+                try {
+                    result = instrumentation.call(backend, "getBinaryRepository", () -> provider.getBinaryRepository(providerId));
+                    if (result != null)
+                        providerInventory.probed(backend, providerId, true);
+                } catch (ApiException e) {
+                    if (KathraException.ErrorCode.NOT_FOUND.getCode() == e.getCode()) {
+                        providerInventory.probed(backend, providerId, false);
+                        // Repository not found, create new one
+                        binaryRepository = createBinaryRepositoryIntoProvider(binaryRepository, details);
+                    }
                 }
             }
             if (result != null) {
-                defineTechnicalUserAsMembership(binaryRepository);
-                defineGroupAsMembership(binaryRepository);
+                defineMemberships(binaryRepository, details, true);
             }
         }
         return binaryRepository;
@@ -141,15 +196,26 @@ public class SyncBinaryRepository {
                 throw new IllegalArgumentException("Not managed");
         }
         BinaryRepository binaryRepository = new BinaryRepository().type(type).name(name).group(group);
-        return binaryRepositoriesClient.addBinaryRepository(binaryRepository);
+        BinaryRepository added = instrumentation.call(Backend.RESOURCE_MANAGER, "addBinaryRepository", () -> binaryRepositoriesClient.addBinaryRepository(binaryRepository));
+        if (added != null)
+            binaryRepositories.added(added.group(new Group().id(group.getId())));
+        return added;
     }
 
-    private BinaryRepository createBinaryRepositoryIntoProvider(BinaryRepository binaryRepository) throws Exception {
-        if (binaryRepository.getGroup() == null && StringUtils.isEmpty(binaryRepository.getGroup().getName())) {
+    private BinaryRepository createBinaryRepositoryIntoProvider(BinaryRepository binaryRepository, GroupDetails details) throws Exception {
+        if (StringUtils.isEmpty(details.group.getName())) {
             throw new IllegalArgumentException("Group's name undefined");
         }
         BinaryRepositoryManagerClient provider = getBinaryRepositoryManagerProvider(binaryRepository);
-        BinaryRepository binaryRepositoryWithUrl = provider.addBinaryRepository(binaryRepository);
+        Backend backend = getBinaryRepositoryManagerBackend(binaryRepository);
+        // the provider gets a copy with the group details, the indexed repository keeps its group reference
+        BinaryRepository request = GsonUtils.gson.fromJson(GsonUtils.gson.toJson(binaryRepository), BinaryRepository.class)
+                .group(details.group);
+        ApiCall<BinaryRepository> addBinaryRepository = () -> instrumentation.call(backend, "addBinaryRepository", () -> provider.addBinaryRepository(request));
+        // a repository created in the provider by an interrupted run is reused rather than created again
+        OperationJournal journal = context.getJournal();
+        BinaryRepository binaryRepositoryWithUrl = journal == null ? addBinaryRepository.call()
+                : journal.once(backend.tag() + " addBinaryRepository " + binaryRepository.getId(), BinaryRepository.class, addBinaryRepository);
         if (StringUtils.isAllEmpty(binaryRepositoryWithUrl.getUrl())) {
             throw new Exception("BinaryRepository's URL should be defined");
         }
@@ -159,8 +225,9 @@ public class SyncBinaryRepository {
         if (StringUtils.isAllEmpty(binaryRepositoryWithUrl.getProviderId())) {
             throw new Exception("BinaryRepository's ProviderId should be defined");
         }
+        providerInventory.added(backend, binaryRepositoryWithUrl.getProviderId());
         BinaryRepository patch = new BinaryRepository().providerId(binaryRepositoryWithUrl.getProviderId()).provider(binaryRepositoryWithUrl.getProvider()).url(binaryRepositoryWithUrl.getUrl());
-        binaryRepositoriesClient.updateBinaryRepositoryAttributes(binaryRepository.getId(), patch);
+        instrumentation.run(Backend.RESOURCE_MANAGER, "updateBinaryRepositoryAttributes", () -> binaryRepositoriesClient.updateBinaryRepositoryAttributes(binaryRepository.getId(), patch));
         binaryRepository.url(patch.getUrl()).providerId(patch.getProviderId()).provider(binaryRepository.getProvider());
         return binaryRepository;
     }
@@ -178,33 +245,56 @@ public class SyncBinaryRepository {
         }
     }
 
-    private void defineGroupAsMembership(BinaryRepository binaryRepository) throws ApiException {
+    private Backend getBinaryRepositoryManagerBackend(BinaryRepository binaryRepository) {
+        return getBinaryRepositoryManagerProvider(binaryRepository) == this.repositoryManagerHarbor ? Backend.HARBOR : Backend.NEXUS;
+    }
 
+    /**
+     * Adds the technical user and the group as managers of the repository, unless the provider reports them
+     * already. Other members are left untouched.
+     */
+    private void defineMemberships(BinaryRepository binaryRepository, GroupDetails details, boolean existing) throws ApiException {
+        List<Membership> desired = Arrays.asList(technicalUserMembership(binaryRepository, details), groupMembership(details));
         BinaryRepositoryManagerClient provider = getBinaryRepositoryManagerProvider(binaryRepository);
-        Group groupWithDetails = groupsClient.getGroup(binaryRepository.getGroup().getId());
-        Membership membership = new Membership().memberName(groupWithDetails.getPath())
+        Backend backend = getBinaryRepositoryManagerBackend(binaryRepository);
+        String providerId = binaryRepository.getProviderId();
+        List<Membership> observed = existing ? getMemberships(backend, provider, providerId) : new ArrayList<>();
+        MembershipDiff diff = MembershipDiff.between(desired, observed);
+        List<Membership> memberships = new ArrayList<>(diff.getAdditions());
+        memberships.addAll(diff.getUpdates());
+        for (Membership membership : memberships) {
+            instrumentation.run(backend, "addBinaryRepositoryMembership", () -> provider.addBinaryRepositoryMembership(providerId, membership));
+        }
+    }
+
+    private List<Membership> getMemberships(Backend backend, BinaryRepositoryManagerClient provider, String providerId) {
+        try {
+            List<Membership> memberships = instrumentation.call(backend, "getBinaryRepositoryMembership", () -> provider.getBinaryRepositoryMembership(providerId));
+            return memberships == null ? new ArrayList<>() : memberships;
+        } catch (ApiException e) {
+            log.warn("Cannot get memberships of repository " + providerId + ", adding them. Error: " + e.toString());
+            return new ArrayList<>();
+        }
+    }
+
+    private Membership groupMembership(GroupDetails details) {
+        return new Membership().memberName(details.group.getPath())
                 .memberType(Membership.MemberTypeEnum.GROUP)
                 .role(Membership.RoleEnum.MANAGER);
-
-        provider.addBinaryRepositoryMembership(binaryRepository.getProviderId(), membership);
     }
 
-    private void defineTechnicalUserAsMembership(BinaryRepository binaryRepository) throws ApiException {
+    private Membership technicalUserMembership(BinaryRepository binaryRepository, GroupDetails details) throws ApiException {
         if (binaryRepository.getProviderId() == null) {
             throw new IllegalStateException("ProviderId for binaryrepository '"+binaryRepository.getId()+"' undefined");
         }
-        BinaryRepositoryManagerClient provider = getBinaryRepositoryManagerProvider(binaryRepository);
-        Group groupWithDetails = groupsClient.getGroup(binaryRepository.getGroup().getId());
-        if (groupWithDetails.getTechnicalUser() == null || groupWithDetails.getTechnicalUser().getId() == null) {
-            log.error("Group " + groupWithDetails.getPath() + " doesn't have technicalUser");
-            throw new IllegalStateException("Not technicalUser existings");
-        }
-        User user = usersClient.getUser(groupWithDetails.getTechnicalUser().getId());
-        Membership membership = new Membership().memberName(user.getName())
+        return new Membership().memberName(details.technicalUser().getName())
                 .memberType(Membership.MemberTypeEnum.USER)
                 .role(Membership.RoleEnum.MANAGER);
+    }
 
-        provider.addBinaryRepositoryMembership(binaryRepository.getProviderId(), membership);
+    private Group getGroup(String groupId) throws ApiException {
+        return singleFlight.execute("group:" + groupId,
+                () -> instrumentation.call(Backend.RESOURCE_MANAGER, "getGroup", () -> groupsClient.getGroup(groupId)));
     }
 
     private List<Assignation> get_group_user_manager_members(Group user_manager_group) {
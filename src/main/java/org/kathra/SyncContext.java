@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.squareup.okhttp.Interceptor;
+import org.kathra.utils.ApiException;
+
+import java.lang.reflect.Type;
+import java.time.Clock;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Services shared by the synchronizers during a run.
+ */
+public class SyncContext {
+
+    final private SingleFlight singleFlight;
+    final private Instrumentation instrumentation;
+    final private MemberSets memberSets = new MemberSets(new MemberDictionary());
+    final private List<Interceptor> httpInterceptors = new CopyOnWriteArrayList<>();
+    private ExistenceCache existence = new ExistenceCache(null, Clock.systemUTC(),
+            ExistenceCache.DEFAULT_POSITIVE_TTL_MS, ExistenceCache.DEFAULT_NEGATIVE_TTL_MS);
+    private RunReporter runReporter;
+    private GroupLeases leases;
+    private SyncHistory history;
+    private int workers = 1;
+    private RunBudget budget;
+    private RunCursor cursor;
+    private Deadlines deadlines;
+    private OperationJournal journal;
+    private SharedReads sharedReads;
+    private Clock clock = Clock.systemUTC();
+    private Shard shard = Shard.ALL;
+    private volatile Set<String> shardGroupIds;
+
+    public SyncContext() {
+        this(new SingleFlight(), new Instrumentation());
+    }
+
+    public SyncContext(SingleFlight singleFlight, Instrumentation instrumentation) {
+        this.singleFlight = singleFlight;
+        this.instrumentation = instrumentation;
+    }
+
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * Members of the groups seen during the run, names interned once for all providers.
+     */
+    public MemberSets getMemberSets() {
+        return memberSets;
+    }
+
+    /**
+     * Resources of the managers known to exist or to be missing, in memory only unless replaced.
+     */
+    public ExistenceCache getExistence() {
+        return existence;
+    }
+
+    public SyncContext existence(ExistenceCache existence) {
+        this.existence = existence;
+        return this;
+    }
+
+    /**
+     * Lists shared with the other replicas, null when each replica reads its own.
+     */
+    public SharedReads getSharedReads() {
+        return sharedReads;
+    }
+
+    public SyncContext sharedReads(SharedReads sharedReads) {
+        this.sharedReads = sharedReads;
+        return this;
+    }
+
+    /**
+     * Reads a list of a manager through the shared cache, if any.
+     */
+    public <T> T sharedRead(String key, Type type, ApiCall<T> call) throws ApiException {
+        return sharedReads == null ? call.call() : sharedReads.read(key, type, call);
+    }
+
+    /**
+     * Drops a shared list after a creation in it.
+     */
+    public void invalidateShared(String key) {
+        if (sharedReads != null)
+            sharedReads.invalidate(key);
+    }
+
+    /**
+     * HTTP interceptors to install on the clients created for this context.
+     */
+    public List<Interceptor> getHttpInterceptors() {
+        return httpInterceptors;
+    }
+
+    public SyncContext addHttpInterceptor(Interceptor interceptor) {
+        httpInterceptors.add(interceptor);
+        return this;
+    }
+
+    /**
+     * Time source for budgets and deadlines, replaced by a virtual clock in simulations.
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    public SyncContext clock(Clock clock) {
+        this.clock = clock;
+        if (runReporter != null)
+            runReporter.clock(clock);
+        return this;
+    }
+
+    /**
+     * Groups synchronized by this replica.
+     */
+    public Shard getShard() {
+        return shard;
+    }
+
+    public SyncContext shard(Shard shard) {
+        this.shard = shard;
+        if (runReporter != null)
+            runReporter.shard(shard);
+        return this;
+    }
+
+    /**
+     * Restricts the per-run indexes to the ids of the groups of this shard, set before they are loaded.
+     */
+    public void shardGroupIds(Set<String> groupIds) {
+        this.shardGroupIds = groupIds;
+    }
+
+    /**
+     * @return whether the group is synchronized by this replica, true when the group ids are not restricted
+     */
+    public boolean isInShard(String groupId) {
+        Set<String> groupIds = shardGroupIds;
+        return groupIds == null || groupIds.contains(groupId);
+    }
+
+    /**
+     * Leases taken on the groups, null when overlapping runs are not guarded against.
+     */
+    public GroupLeases getLeases() {
+        return leases;
+    }
+
+    public SyncContext leases(GroupLeases leases) {
+        this.leases = leases;
+        instrumentation.addInterceptor(leases);
+        return this;
+    }
+
+    /**
+     * What the previous runs learned about the groups, null when no history is kept.
+     */
+    public SyncHistory getHistory() {
+        return history;
+    }
+
+    public SyncContext history(SyncHistory history) {
+        this.history = history;
+        return this;
+    }
+
+    /**
+     * Number of groups synchronized at the same time.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public SyncContext workers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * Time the run may take, null for no limit.
+     */
+    public RunBudget getBudget() {
+        return budget;
+    }
+
+    public SyncContext budget(RunBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Groups already refreshed in the current pass, null to refresh every group at each run.
+     */
+    public RunCursor getCursor() {
+        return cursor;
+    }
+
+    public SyncContext cursor(RunCursor cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    /**
+     * Journal of the calls of the steps in progress, null when interrupted steps are redone from their start.
+     */
+    public OperationJournal getJournal() {
+        return journal;
+    }
+
+    public SyncContext journal(OperationJournal journal) {
+        this.journal = journal;
+        instrumentation.addInterceptor(journal);
+        return this;
+    }
+
+    /**
+     * Deadlines of the group synchronizations, null when calls are not bounded.
+     */
+    public Deadlines getDeadlines() {
+        return deadlines;
+    }
+
+    /**
+     * Registers the deadlines, after the other interceptors so that they bound the bare client calls.
+     */
+    public SyncContext deadlines(Deadlines deadlines) {
+        this.deadlines = deadlines;
+        instrumentation.addInterceptor(deadlines);
+        singleFlight.deadlines(deadlines);
+        return this;
+    }
+
+    public RunReporter getRunReporter() {
+        return runReporter;
+    }
+
+    public SyncContext runReporter(RunReporter runReporter) {
+        this.runReporter = runReporter;
+        runReporter.shard(shard).clock(clock);
+        instrumentation.addInterceptor(runReporter);
+        return this;
+    }
+}
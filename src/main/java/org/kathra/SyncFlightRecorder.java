@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import jdk.jfr.*;
+import org.kathra.utils.ApiException;
+
+/**
+ * Java Flight Recorder events of the synchronizer.
+ *
+ * Events are only filled and committed when they are enabled in the running recording, so the cost is a
+ * single check when no recording is active.
+ */
+public class SyncFlightRecorder implements SyncInterceptor {
+
+    private static final String CATEGORY = "Kathra Synchronizer";
+
+    final private ThreadLocal<String> currentGroup = new ThreadLocal<>();
+
+    @Name("org.kathra.synchronizer.GroupSync")
+    @Label("Group Synchronization")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class GroupSyncEvent extends Event {
+        @Label("Group Path")
+        String groupPath;
+        @Label("Status")
+        String status;
+    }
+
+    @Name("org.kathra.synchronizer.SyncStep")
+    @Label("Synchronization Step")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class SyncStepEvent extends Event {
+        @Label("Group Path")
+        String groupPath;
+        @Label("Step")
+        String step;
+        @Label("Status")
+        String status;
+    }
+
+    @Name("org.kathra.synchronizer.DownstreamCall")
+    @Label("Downstream Call")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class DownstreamCallEvent extends Event {
+        @Label("Group Path")
+        String groupPath;
+        @Label("Backend")
+        String backend;
+        @Label("Operation")
+        String operation;
+        @Label("Status")
+        String status;
+    }
+
+    @Name("org.kathra.synchronizer.KeyGeneration")
+    @Label("Key Pair Generation")
+    @Category(CATEGORY)
+    public static class KeyGenerationEvent extends Event {
+        @Label("Group Path")
+        String groupPath;
+        @Label("Key Size")
+        int keySize;
+    }
+
+    @Name("org.kathra.synchronizer.CacheLookup")
+    @Label("Cache Lookup")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class CacheLookupEvent extends Event {
+        @Label("Cache")
+        String cache;
+        @Label("Key")
+        String key;
+        @Label("Hit")
+        boolean hit;
+    }
+
+    @Override
+    public <T> T aroundCall(Backend backend, String operation, ApiCall<T> call) throws ApiException {
+        DownstreamCallEvent event = new DownstreamCallEvent();
+        if (!event.isEnabled())
+            return call.call();
+        event.begin();
+        event.status = "error";
+        try {
+            T result = call.call();
+            event.status = "ok";
+            return result;
+        } catch (ApiException e) {
+            event.status = String.valueOf(e.getCode());
+            throw e;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.groupPath = currentGroup.get();
+                event.backend = backend.tag();
+                event.operation = operation;
+                event.commit();
+            }
+        }
+    }
+
+    @Override
+    public <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        if (step == SyncStep.GROUP) {
+            String previous = currentGroup.get();
+            currentGroup.set(groupPath);
+            try {
+                return recordStep(new GroupSyncEvent(), groupPath, step, call);
+            } finally {
+                currentGroup.set(previous);
+            }
+        }
+        return recordStep(new SyncStepEvent(), groupPath, step, call);
+    }
+
+    private <T> T recordStep(Event event, String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        if (!event.isEnabled())
+            return call.call();
+        event.begin();
+        String status = "error";
+        try {
+            T result = call.call();
+            status = "ok";
+            return result;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                if (event instanceof GroupSyncEvent) {
+                    ((GroupSyncEvent) event).groupPath = groupPath;
+                    ((GroupSyncEvent) event).status = status;
+                } else {
+                    ((SyncStepEvent) event).groupPath = groupPath;
+                    ((SyncStepEvent) event).step = step.tag();
+                    ((SyncStepEvent) event).status = status;
+                }
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Starts a key generation event, to be committed once the key is generated.
+     */
+    public static KeyGenerationEvent keyGeneration(String groupPath, int keySize) {
+        KeyGenerationEvent event = new KeyGenerationEvent();
+        if (event.isEnabled()) {
+            event.groupPath = groupPath;
+            event.keySize = keySize;
+            event.begin();
+        }
+        return event;
+    }
+
+    public static void cacheLookup(String cache, String key, boolean hit) {
+        CacheLookupEvent event = new CacheLookupEvent();
+        if (event.shouldCommit()) {
+            event.cache = cache;
+            event.key = key;
+            event.hit = hit;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * What the previous runs learned about each group, kept in a JSON file between runs.
+ */
+public class SyncHistory {
+
+    private static Logger log = LoggerFactory.getLogger("SyncHistory");
+    private static final Gson GSON = new Gson();
+    private static final Type ENTRIES = new TypeToken<HashMap<String, Entry>>() {}.getType();
+
+    final private String file;
+    final private ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public static class Entry {
+        long membersFingerprint;
+        long durationMs;
+
+        public long getMembersFingerprint() {
+            return membersFingerprint;
+        }
+
+        /**
+         * Duration of the synchronization of the group, averaged over the runs with more weight on the last ones.
+         */
+        public long getDurationMs() {
+            return durationMs;
+        }
+    }
+
+    /**
+     * @param file JSON file of the history, null to keep it in memory only
+     */
+    public SyncHistory(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the history file, an unreadable or missing file giving an empty history.
+     */
+    public static SyncHistory load(String file) {
+        SyncHistory history = new SyncHistory(file);
+        Path path = Paths.get(file);
+        if (!Files.exists(path))
+            return history;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Map<String, Entry> entries = GSON.fromJson(reader, ENTRIES);
+            if (entries != null)
+                history.entries.putAll(entries);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot read sync history " + file + ", starting without it. Error: " + e.toString());
+        }
+        return history;
+    }
+
+    public void save() throws IOException {
+        if (file == null)
+            return;
+        Path path = Paths.get(file);
+        Path tmp = Paths.get(file + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            GSON.toJson(new HashMap<>(entries), ENTRIES, writer);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the entry of a group, null if no run synchronized it
+     */
+    public Entry get(String groupPath) {
+        return entries.get(groupPath);
+    }
+
+    /**
+     * @return whether the members differ from the ones of the last synchronization, true for an unknown group
+     */
+    public boolean membersChanged(String groupPath, long membersFingerprint) {
+        Entry entry = entries.get(groupPath);
+        return entry == null || entry.membersFingerprint != membersFingerprint;
+    }
+
+    public void synchronizedMembers(String groupPath, long membersFingerprint) {
+        entries.compute(groupPath, (path, entry) -> {
+            Entry updated = entry == null ? new Entry() : entry;
+            updated.membersFingerprint = membersFingerprint;
+            return updated;
+        });
+    }
+
+    public void synchronizedIn(String groupPath, long durationMs) {
+        entries.compute(groupPath, (path, entry) -> {
+            Entry updated = entry == null ? new Entry() : entry;
+            long duration = Math.max(1, durationMs);
+            updated.durationMs = updated.durationMs == 0 ? duration : (updated.durationMs + duration) / 2;
+            return updated;
+        });
+    }
+
+    /**
+     * @return the expected duration of the synchronization of the group, -1 if unknown
+     */
+    public long expectedDurationMs(String groupPath) {
+        Entry entry = entries.get(groupPath);
+        return entry == null || entry.durationMs == 0 ? -1 : entry.durationMs;
+    }
+
+    /**
+     * Forgets the groups in scope that are no longer listed, the groups out of scope are left to the run owning them.
+     *
+     * @return the number of forgotten groups
+     */
+    public int retainGroups(Set<String> groupPaths, Predicate<String> scope) {
+        int forgotten = 0;
+        for (String groupPath : entries.keySet())
+            if (scope.test(groupPath) && !groupPaths.contains(groupPath) && entries.remove(groupPath) != null)
+                forgotten++;
+        return forgotten;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.kathra.utils.ApiException;
+
+/**
+ * Hook wrapped around every downstream call and every synchronization step.
+ * Implementations must invoke the given call exactly once and return (or throw) its outcome.
+ */
+public interface SyncInterceptor {
+
+    default <T> T aroundCall(Backend backend, String operation, ApiCall<T> call) throws ApiException {
+        return call.call();
+    }
+
+    default <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        return call.call();
+    }
+}
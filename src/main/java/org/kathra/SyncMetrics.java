@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.kathra.utils.ApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer metrics of downstream calls and synchronization steps.
+ *
+ * Calls are measured by backend and operation (latency histogram, errors, in-flight requests), steps by step
+ * and outcome. Metrics are exposed in Prometheus format, either scraped on /metrics or written to a file.
+ */
+public class SyncMetrics implements SyncInterceptor {
+
+    private Logger log = LoggerFactory.getLogger("SyncMetrics");
+
+    final private MeterRegistry registry;
+    final private ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private HttpServer server;
+
+    public SyncMetrics() {
+        this(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+    }
+
+    public SyncMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    @Override
+    public <T> T aroundCall(Backend backend, String operation, ApiCall<T> call) throws ApiException {
+        Tags tags = Tags.of("backend", backend.tag(), "operation", operation);
+        AtomicInteger current = inFlight.computeIfAbsent(backend.tag() + "/" + operation,
+                k -> registry.gauge("kathra.synchronizer.calls.inflight", tags, new AtomicInteger()));
+        current.incrementAndGet();
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            return result;
+        } catch (Throwable e) {
+            registry.counter("kathra.synchronizer.call.errors", tags.and("code", errorCode(e))).increment();
+            throw e;
+        } finally {
+            current.decrementAndGet();
+            sample.stop(Timer.builder("kathra.synchronizer.calls")
+                    .tags(tags.and("outcome", outcome))
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    @Override
+    public <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("kathra.synchronizer.steps")
+                    .tags("step", step.tag(), "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    private String errorCode(Throwable e) {
+        if (e instanceof ApiException)
+            return String.valueOf(((ApiException) e).getCode());
+        return e.getClass().getSimpleName();
+    }
+
+    public String scrape() {
+        if (registry instanceof PrometheusMeterRegistry)
+            return ((PrometheusMeterRegistry) registry).scrape();
+        return "";
+    }
+
+    public void startEndpoint(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+        log.info("Metrics exposed on port " + port + " at /metrics");
+    }
+
+    public void writeTo(String file) throws IOException {
+        Files.write(Paths.get(file), scrape().getBytes(StandardCharsets.UTF_8));
+        log.info("Metrics written to " + file);
+    }
+
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
@@ -20,6 +20,7 @@
 
 package org.kathra;
 
+import com.google.gson.reflect.TypeToken;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.kathra.core.model.*;
 import org.kathra.resourcemanager.client.GroupsClient;
@@ -30,11 +31,13 @@ import org.kathra.utils.KathraException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Type;
 import java.nio.charset.Charset;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -43,67 +46,127 @@ import java.util.stream.Stream;
 public class SyncTechnicalUser {
 
 
+    private static final Type USERS = new TypeToken<List<User>>() {}.getType();
+
     private Logger log = LoggerFactory.getLogger("SyncTechnicalUser");
 
     final private UserManagerClient userManager;
     final private GroupsClient groupsClient;
     final private UsersClient usersClient;
+    final private SingleFlight singleFlight;
+    final private Instrumentation instrumentation;
+    final private ExistenceCache existence;
+    final private SyncContext context;
 
 
     public SyncTechnicalUser(UserManagerClient userManager,
                              GroupsClient groupsClient, UsersClient usersClient) {
+        this(userManager, groupsClient, usersClient, new SyncContext());
+    }
+
+    public SyncTechnicalUser(UserManagerClient userManager,
+                             GroupsClient groupsClient, UsersClient usersClient, SyncContext context) {
 
         this.userManager = userManager;
         this.groupsClient = groupsClient;
         this.usersClient = usersClient;
+        this.singleFlight = context.getSingleFlight();
+        this.instrumentation = context.getInstrumentation();
+        this.existence = context.getExistence();
+        this.context = context;
     }
 
     public Group syncTechnicalUser(Group group) throws ApiException {
         String username=group.getName()+"_technicaluser";
-        User user = usersClient.getUsers().stream().filter(u -> u.getName().equals(username)).findFirst().orElse(null);
+        User existingUser = findUser(getUsers(), username);
 
         // CREATE IN DB IF DOESN'T EXIST
-        if (user == null ) {
+        if (existingUser == null ) {
             log.debug("User " + username + " not found in db.. create new ones");
-            user = new User().name(username).email(username+"@"+group.getName()+".kathra.org").password(generateSecureRandomPassword());
-            user = usersClient.addUser(user);
-            group.technicalUser(user);
-            groupsClient.updateGroupAttributes(group.getId(), new Group().technicalUser(user));
+            User newUser = new User().name(username).email(username+"@"+group.getName()+".kathra.org").password(generateSecureRandomPassword());
+            existingUser = instrumentation.call(Backend.RESOURCE_MANAGER, "addUser", () -> usersClient.addUser(newUser));
+            context.invalidateShared("users");
+            group.technicalUser(existingUser);
+            updateTechnicalUserOfGroup(group, existingUser);
         }
+        final User user = existingUser;
 
         if (group.getTechnicalUser() == null) {
-            groupsClient.updateGroupAttributes(group.getId(), new Group().technicalUser(user));
+            updateTechnicalUserOfGroup(group, user);
         }
 
-        // CHECK USER EXISTS IN USERMANAGER
-        User userFromUserManager = null;
-        try {
-            userFromUserManager = userManager.getUser(user.getName());
-        } catch(ApiException e) {
-            if (KathraException.ErrorCode.NOT_FOUND.getCode() != e.getCode()) {
-                throw e;
-            }
-        }
         // CREATE IN USERMANAGER IF DOESN'T EXIST
-        if (userFromUserManager == null) {
+        if (!existsInUserManager(user.getName())) {
             log.debug("User " + user.getName()+ " not found in usermanager.. create new ones");
-            if (user.getPassword() == null) {
+            User withPassword = user.getPassword() == null && user.getId() != null && context.getSharedReads() != null
+                    ? instrumentation.call(Backend.RESOURCE_MANAGER, "getUser", () -> usersClient.getUser(user.getId()))
+                    : user;
+            if (withPassword == null || withPassword.getPassword() == null) {
                 throw new IllegalStateException("Technical should contains password");
             }
-            userManager.createUser(user);
+            instrumentation.run(Backend.USER_MANAGER, "createUser", () -> userManager.createUser(withPassword));
+            existence.present(Backend.USER_MANAGER, ExistenceCache.Kind.USER, user.getName());
         }
 
         // JOIN TO GROUP IN USERMANAGER IF HE IS NOT A MEMBER
-        if (get_group_user_manager_members(userManager.getGroup(group.getPath())).stream().noneMatch(a -> a.getName().equals(username))) {
+        Group userManagerGroup = instrumentation.call(Backend.USER_MANAGER, "getGroup", () -> userManager.getGroup(group.getPath()));
+        List<Assignation> userManagerMembers = get_group_user_manager_members(userManagerGroup);
+        existence.presentAll(Backend.USER_MANAGER, ExistenceCache.Kind.USER,
+                userManagerMembers.stream().map(Assignation::getName).collect(Collectors.toList()));
+        if (userManagerMembers.stream().noneMatch(a -> username.equals(a.getName()))) {
             log.debug("User " + user.getName()+ " isn't member to group.");
-            userManager.assignUserToGroup(user.getName(), group.getPath());
+            instrumentation.run(Backend.USER_MANAGER, "assignUserToGroup", () -> userManager.assignUserToGroup(user.getName(), group.getPath()));
         }
 
         // USER IS SYNC
-        usersClient.updateUserAttributes(user.getId(), new User().status(Resource.StatusEnum.READY));
+        instrumentation.run(Backend.RESOURCE_MANAGER, "updateUserAttributes", () -> usersClient.updateUserAttributes(user.getId(), new User().status(Resource.StatusEnum.READY)));
         return group.technicalUser(user);
     }
 
+    /**
+     * Users of the resource manager, read through the cache shared with the other replicas if any, without their
+     * passwords which are then read with the single user when needed.
+     */
+    private List<User> getUsers() throws ApiException {
+        ApiCall<List<User>> getUsers = () -> singleFlight.execute("users",
+                () -> instrumentation.call(Backend.RESOURCE_MANAGER, "getUsers", usersClient::getUsers));
+        if (context.getSharedReads() == null)
+            return getUsers.call();
+        return context.sharedRead("users", USERS, () -> getUsers.call().stream()
+                .map(u -> new User().id(u.getId()).name(u.getName()).email(u.getEmail()).status(u.getStatus()))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * @return whether the user exists in the user manager, probing it only if the existence cache doesn't know
+     */
+    private boolean existsInUserManager(String username) throws ApiException {
+        Optional<Boolean> known = existence.exists(Backend.USER_MANAGER, ExistenceCache.Kind.USER, username);
+        if (known.isPresent())
+            return known.get();
+        try {
+            User user = instrumentation.call(Backend.USER_MANAGER, "getUser", () -> userManager.getUser(username));
+            if (user != null) {
+                existence.present(Backend.USER_MANAGER, ExistenceCache.Kind.USER, username);
+                return true;
+            }
+        } catch(ApiException e) {
+            if (KathraException.ErrorCode.NOT_FOUND.getCode() != e.getCode()) {
+                throw e;
+            }
+        }
+        existence.absent(Backend.USER_MANAGER, ExistenceCache.Kind.USER, username);
+        return false;
+    }
+
+    private void updateTechnicalUserOfGroup(Group group, User user) throws ApiException {
+        instrumentation.run(Backend.RESOURCE_MANAGER, "updateGroupAttributes", () -> groupsClient.updateGroupAttributes(group.getId(), new Group().technicalUser(user)));
+    }
+
+
+    static User findUser(List<User> users, String username) {
+        return users.stream().filter(u -> u.getName().equals(username)).findFirst().orElse(null);
+    }
 
     private List<Assignation> get_group_user_manager_members(Group user_manager_group) {
         List<Assignation> members = user_manager_group.getMembers();
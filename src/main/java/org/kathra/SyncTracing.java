@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanBuilder;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.kathra.utils.ApiException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenTelemetry spans of a group synchronization: one root span per group, a child span per step and per
+ * downstream call. The call span is current while the request is sent so {@link TracePropagation} can add
+ * its context to the HTTP headers.
+ */
+public class SyncTracing implements SyncInterceptor {
+
+    static final AttributeKey<String> GROUP_PATH = AttributeKey.stringKey("kathra.group.path");
+    static final AttributeKey<String> BACKEND = AttributeKey.stringKey("kathra.backend");
+    static final AttributeKey<String> OPERATION = AttributeKey.stringKey("kathra.operation");
+    static final AttributeKey<Long> ERROR_CODE = AttributeKey.longKey("kathra.error.code");
+
+    final private OpenTelemetry openTelemetry;
+    final private Tracer tracer;
+    final private SdkTracerProvider tracerProvider;
+
+    public SyncTracing(OpenTelemetry openTelemetry) {
+        this(openTelemetry, null);
+    }
+
+    private SyncTracing(OpenTelemetry openTelemetry, SdkTracerProvider tracerProvider) {
+        this.openTelemetry = openTelemetry;
+        this.tracer = openTelemetry.getTracer("org.kathra.synchronizer");
+        this.tracerProvider = tracerProvider;
+    }
+
+    /**
+     * @param exporter "otlp" to send spans to an OTLP/HTTP collector, "file" to write them as JSON lines
+     */
+    public static SyncTracing create(String exporter, String otlpEndpoint, String file) throws IOException {
+        SpanExporter spanExporter;
+        switch (exporter) {
+            case "otlp":
+                spanExporter = OtlpHttpSpanExporter.builder().setEndpoint(otlpEndpoint).build();
+                break;
+            case "file":
+                spanExporter = new FileSpanExporter(file);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown tracing exporter " + exporter);
+        }
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault().merge(Resource.create(
+                        Attributes.of(AttributeKey.stringKey("service.name"), "kathra-users-synchronizer"))))
+                .addSpanProcessor(BatchSpanProcessor.builder(spanExporter).build())
+                .build();
+        OpenTelemetry openTelemetry = OpenTelemetrySdk.builder()
+                .setTracerProvider(tracerProvider)
+                .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
+                .build();
+        return new SyncTracing(openTelemetry, tracerProvider);
+    }
+
+    public OpenTelemetry getOpenTelemetry() {
+        return openTelemetry;
+    }
+
+    static String spanName(SyncStep step) {
+        switch (step) {
+            case GROUP:
+                return "syncGroup";
+            case TECHNICAL_USER:
+                return "syncTechnicalUser";
+            case KEY_PAIR:
+                return "getKeyOrGenerateOne";
+            case PIPELINE:
+                return "tryToSynchronizeGroupPipeline";
+            case BINARY_REPOSITORY:
+                return "tryToSynchronizeGroupBinary";
+            case SOURCE_MANAGER:
+                return "tryToSynchronizeSourceManager";
+            case MEMBERSHIP:
+                return "synchronizeSourceManagerUsersOfGroup";
+            default:
+                return step.tag();
+        }
+    }
+
+    @Override
+    public <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+        SpanBuilder builder = tracer.spanBuilder(spanName(step))
+                .setAttribute(GROUP_PATH, groupPath);
+        if (step == SyncStep.GROUP)
+            builder.setNoParent();
+        Span span = builder.startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            return call.call();
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    @Override
+    public <T> T aroundCall(Backend backend, String operation, ApiCall<T> call) throws ApiException {
+        Span span = tracer.spanBuilder(backend.tag() + " " + operation)
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute(BACKEND, backend.tag())
+                .setAttribute(OPERATION, operation)
+                .startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            return call.call();
+        } catch (ApiException e) {
+            span.setAttribute(ERROR_CODE, (long) e.getCode());
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR);
+            throw e;
+        } catch (RuntimeException e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+    public void close() {
+        if (tracerProvider != null)
+            tracerProvider.shutdown().join(10, TimeUnit.SECONDS);
+    }
+}
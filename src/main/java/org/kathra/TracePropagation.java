@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.context.propagation.TextMapSetter;
+
+import java.io.IOException;
+
+/**
+ * Adds the current trace context (W3C traceparent) to outgoing requests, so the managers' spans are
+ * attached to the synchronizer's ones.
+ */
+public class TracePropagation implements Interceptor {
+
+    private static final TextMapSetter<Request.Builder> SETTER = (request, key, value) -> request.header(key, value);
+
+    final private TextMapPropagator propagator;
+
+    public TracePropagation(TextMapPropagator propagator) {
+        this.propagator = propagator;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request.Builder request = chain.request().newBuilder();
+        propagator.inject(Context.current(), request, SETTER);
+        return chain.proceed(request.build());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.*;
+import com.squareup.okhttp.*;
+import okio.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the downstream HTTP exchanges of a run into a gzipped JSON lines file, one {@link Exchange} per line.
+ * Headers are not recorded, secrets and private keys found in the bodies are redacted.
+ */
+public class TrafficRecorder implements Interceptor, Closeable {
+
+    private static Logger log = LoggerFactory.getLogger("TrafficRecorder");
+    static final Gson GSON = new Gson();
+    static final String REDACTED = "REDACTED";
+    private static final Set<String> SECRET_FIELDS = new HashSet<>(Arrays.asList(
+            "privatekey", "password", "token", "accesstoken", "refreshtoken", "secret", "apikey"));
+
+    public static class Exchange {
+        String manager;
+        String method;
+        String path;
+        int status;
+        long offsetMs;
+        long durationMs;
+        String requestBody;
+        String responseBody;
+
+        public String getManager() {
+            return manager;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getOffsetMs() {
+            return offsetMs;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        public String getRequestBody() {
+            return requestBody;
+        }
+
+        public String getResponseBody() {
+            return responseBody;
+        }
+    }
+
+    final private Map<String, String> managers;
+    final private Writer writer;
+    final private long startedNanos = System.nanoTime();
+    private long recorded;
+
+    /**
+     * @param managers manager name by base URL, the recorded paths are relative to it
+     */
+    public TrafficRecorder(String file, Map<String, String> managers) throws IOException {
+        this.managers = managers;
+        this.writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        long start = System.nanoTime();
+        Response response = chain.proceed(request);
+        long durationMs = (System.nanoTime() - start) / 1_000_000;
+
+        byte[] responseBytes = response.body().bytes();
+        Exchange exchange = new Exchange();
+        String url = request.urlString();
+        exchange.manager = "unknown";
+        exchange.path = url;
+        for (Map.Entry<String, String> manager : managers.entrySet()) {
+            if (url.startsWith(manager.getKey())) {
+                exchange.manager = manager.getValue();
+                exchange.path = url.substring(manager.getKey().length());
+                break;
+            }
+        }
+        exchange.method = request.method();
+        exchange.status = response.code();
+        exchange.offsetMs = (start - startedNanos) / 1_000_000;
+        exchange.durationMs = durationMs;
+        exchange.requestBody = redact(body(request));
+        exchange.responseBody = redact(new String(responseBytes, StandardCharsets.UTF_8));
+        write(exchange);
+
+        return response.newBuilder().body(ResponseBody.create(response.body().contentType(), responseBytes)).build();
+    }
+
+    private static String body(Request request) throws IOException {
+        if (request.body() == null)
+            return "";
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return buffer.readUtf8();
+    }
+
+    private synchronized void write(Exchange exchange) {
+        try {
+            writer.write(GSON.toJson(exchange));
+            writer.write('\n');
+            recorded++;
+        } catch (IOException e) {
+            log.error("Cannot record exchange " + exchange.method + " " + exchange.path + ". Error: " + e.toString());
+        }
+    }
+
+    /**
+     * Replaces the values of secret fields in a JSON body. Non JSON bodies containing a private key are dropped.
+     */
+    static String redact(String body) {
+        if (body.isEmpty())
+            return body;
+        try {
+            JsonElement json = JsonParser.parseString(body);
+            if (json.isJsonObject() || json.isJsonArray()) {
+                redact(json);
+                return json.toString();
+            }
+        } catch (JsonParseException e) {
+            // not JSON
+        }
+        return body.contains("PRIVATE KEY") ? REDACTED : body;
+    }
+
+    private static void redact(JsonElement json) {
+        if (json.isJsonArray()) {
+            json.getAsJsonArray().forEach(TrafficRecorder::redact);
+        } else if (json.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> field : json.getAsJsonObject().entrySet()) {
+                if (SECRET_FIELDS.contains(field.getKey().toLowerCase()) && !field.getValue().isJsonNull())
+                    field.setValue(new JsonPrimitive(REDACTED));
+                else
+                    redact(field.getValue());
+            }
+        }
+    }
+
+    public static List<Exchange> read(String file) throws IOException {
+        List<Exchange> exchanges = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty())
+                    exchanges.add(GSON.fromJson(line, Exchange.class));
+            }
+        }
+        return exchanges;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+        log.info("Recorded " + recorded + " exchanges");
+    }
+}
@@ -20,6 +20,7 @@
 
 package org.kathra;
 
+import com.squareup.okhttp.Interceptor;
 import org.kathra.binaryrepositorymanager.client.BinaryRepositoryManagerClient;
 import org.kathra.core.model.User;
 import org.kathra.pipelinemanager.client.PipelineManagerClient;
@@ -29,9 +30,18 @@ import org.kathra.resourcemanager.client.KeyPairsClient;
 import org.kathra.resourcemanager.client.UsersClient;
 import org.kathra.sourcemanager.client.SourceManagerClient;
 import org.kathra.usermanager.client.UserManagerClient;
+import org.kathra.utils.ApiException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Jeremy Guillemot <Jeremy.Guillemot@kathra.org>
  */
@@ -39,11 +49,131 @@ public class UserSynchronizer {
 
     public static void main(String[] args) throws Exception {
         Logger log = LoggerFactory.getLogger("UserSynchronizer");
+        if (args.length >= 3 && args[0].equals("compare-reports")) {
+            compareReports(args);
+            return;
+        }
         log.debug("Info init sync");
         Config config = new Config();
+        RunBudget budget = new RunBudget(Clock.systemUTC(), TimeUnit.SECONDS.toMillis(config.getRunBudgetSeconds()),
+                TimeUnit.SECONDS.toMillis(config.getRunBudgetMarginSeconds()));
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(budget.shutdownHook(finished,
+                TimeUnit.SECONDS.toMillis(config.getTerminationGraceSeconds())));
+        try {
+            synchronize(config, budget);
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private static void synchronize(Config config, RunBudget budget) throws Exception {
+        Logger log = LoggerFactory.getLogger("UserSynchronizer");
         User user = new User().name(config.getUsername()).password(config.getPassword());
         KeycloackSession session = new KeycloackSession(user);
         log.debug("Session received " + session.getAccessToken().toString());
+
+        Shard shard = config.getShard();
+        SyncContext context = new SyncContext().shard(shard).workers(config.getWorkers()).budget(budget);
+        SyncTracing tracing = null;
+        if (!config.getTracingExporter().equals("none")) {
+            tracing = SyncTracing.create(config.getTracingExporter(), config.getTracingOtlpEndpoint(), config.getTracingFile());
+            context.getInstrumentation().addInterceptor(tracing);
+            context.addHttpInterceptor(new TracePropagation(tracing.getOpenTelemetry().getPropagators().getTextMapPropagator()));
+            log.debug("Tracing initiated");
+        }
+        SyncMetrics metrics = new SyncMetrics();
+        context.getInstrumentation().addInterceptor(metrics).addInterceptor(new SyncFlightRecorder());
+        if (!config.getMetricsPort().isEmpty()) {
+            metrics.startEndpoint(Integer.parseInt(config.getMetricsPort()));
+        }
+        if (!config.getReportFile().isEmpty()) {
+            context.runReporter(new RunReporter(shard.file(config.getReportFile()), config.getReportTopGroups()));
+        }
+        if (!config.getHistoryFile().isEmpty()) {
+            context.history(SyncHistory.load(shard.file(config.getHistoryFile())));
+        }
+        context.existence(ExistenceCache.load(
+                config.getExistenceCacheFile().isEmpty() ? null : shard.file(config.getExistenceCacheFile()),
+                context.getClock(), TimeUnit.SECONDS.toMillis(config.getExistencePositiveTtlSeconds()),
+                TimeUnit.SECONDS.toMillis(config.getExistenceNegativeTtlSeconds())));
+        if (!config.getCursorFile().isEmpty()) {
+            context.cursor(RunCursor.load(shard.file(config.getCursorFile())));
+        }
+        if (!config.getLeaseDir().isEmpty()) {
+            context.leases(new GroupLeases(new FileLeaseStore(Paths.get(config.getLeaseDir())), config.getLeaseHolder(),
+                    TimeUnit.SECONDS.toMillis(config.getLeaseTtlSeconds()), context.getClock()));
+        }
+        OperationJournal journal = null;
+        if (!config.getJournalFile().isEmpty()) {
+            journal = OperationJournal.open(shard.file(config.getJournalFile()), config.getJournalCompactRecords(),
+                    TimeUnit.HOURS.toMillis(config.getJournalMaxAgeHours()), context.getClock());
+            context.journal(journal);
+        }
+        if (config.getGroupBudgetSeconds() > 0 || config.getRunBudgetSeconds() > 0) {
+            context.deadlines(new Deadlines(context.getClock(), TimeUnit.SECONDS.toMillis(config.getGroupBudgetSeconds()),
+                    budget));
+        }
+        ConditionalGetCache conditionalGets = null;
+        if (!config.getConditionalGetDir().isEmpty()) {
+            conditionalGets = ConditionalGetCache.open(shard.file(config.getConditionalGetDir()));
+            context.addHttpInterceptor(conditionalGets);
+        }
+        if (!config.getSharedCacheUrl().isEmpty()) {
+            try {
+                context.sharedReads(new SharedReads(RedisSharedCache.connect(config.getSharedCacheUrl(),
+                        config.getSharedCachePrefix(), config.getSharedCacheTimeoutMs()), context.getClock(),
+                        TimeUnit.SECONDS.toMillis(config.getSharedCacheTtlSeconds())));
+            } catch (IOException e) {
+                log.warn("Cannot connect to the shared cache, reading the lists from the managers. Error: " + e.toString());
+            }
+        }
+        TrafficRecorder recorder = null;
+        if (!config.getRecordFile().isEmpty()) {
+            recorder = new TrafficRecorder(shard.file(config.getRecordFile()), managerUrls(config));
+            context.addHttpInterceptor(recorder);
+        }
+
+        UserSynchronizerManager userSynchronizer = createManager(config, session, context);
+        log.debug("User synchronizer manager initiated");
+        // userSynchronizer.initKathra();
+        try {
+            userSynchronizer.synchronizeGroups();
+        } finally {
+            if (!config.getMetricsFile().isEmpty()) {
+                metrics.writeTo(shard.file(config.getMetricsFile()));
+            }
+            metrics.close();
+            if (tracing != null)
+                tracing.close();
+            if (recorder != null)
+                recorder.close();
+            if (journal != null)
+                journal.close();
+            if (conditionalGets != null)
+                conditionalGets.close();
+            if (context.getSharedReads() != null)
+                context.getSharedReads().close();
+        }
+    }
+
+    /**
+     * Manager name by base URL.
+     */
+    public static Map<String, String> managerUrls(Config config) {
+        Map<String, String> managers = new LinkedHashMap<>();
+        managers.put(config.getSourceManagerUrl(), "source-manager");
+        managers.put(config.getPipelineManagerUrl(), "pipeline-manager");
+        managers.put(config.getUserManagerUrl(), "user-manager");
+        managers.put(config.getResourceManagerUrl(), "resource-manager");
+        managers.put(config.getBinaryRepositoryManagerUrlNexus(), "binary-repository-nexus");
+        managers.put(config.getBinaryRepositoryManagerUrlHarbor(), "binary-repository-harbor");
+        return managers;
+    }
+
+    public static UserSynchronizerManager createManager(Config config, KeycloackSession session, SyncContext context)
+            throws ApiException {
+        Logger log = LoggerFactory.getLogger("UserSynchronizer");
         SourceManagerClient sourceManage = new SourceManagerClient(config.getSourceManagerUrl(), session);
         log.debug("Source manager client initiated");
         PipelineManagerClient pipelineManager = new PipelineManagerClient(config.getPipelineManagerUrl(), session);
@@ -65,13 +195,35 @@ public class UserSynchronizer {
         BinaryRepositoriesClient binaryRepositoriesClient = new BinaryRepositoriesClient(config.getResourceManagerUrl(), session);
         log.debug("Keys pair client initiated");
 
-        SyncTechnicalUser syncTechnicalUser = new SyncTechnicalUser(userManager, groupsClient, usersClient);
-        SyncBinaryRepository syncBinaryRepository = new SyncBinaryRepository(repositoryManagerNexus, repositoryManagerHarbor, groupsClient, usersClient, binaryRepositoriesClient);
+        for (Interceptor interceptor : context.getHttpInterceptors()) {
+            for (Object client : new Object[]{sourceManage, pipelineManager, userManager, repositoryManagerHarbor,
+                    repositoryManagerNexus, groupsClient, usersClient, keyPairsClient, binaryRepositoriesClient}) {
+                HttpHooks.addInterceptor(client, interceptor);
+            }
+        }
+        if (context.getDeadlines() != null) {
+            long connectTimeoutMs = context.getDeadlines().getLongestDeadlineMs();
+            for (Object client : new Object[]{sourceManage, pipelineManager, userManager, repositoryManagerHarbor,
+                    repositoryManagerNexus, groupsClient, usersClient, keyPairsClient, binaryRepositoriesClient}) {
+                HttpHooks.addNetworkInterceptor(client, context.getDeadlines());
+                if (connectTimeoutMs != Long.MAX_VALUE)
+                    HttpHooks.capConnectTimeout(client, connectTimeoutMs);
+            }
+        }
 
-        UserSynchronizerManager userSynchronizer = new UserSynchronizerManager(sourceManage, pipelineManager,
-                        userManager, groupsClient, keyPairsClient, syncBinaryRepository, syncTechnicalUser);
-        log.debug("User synchronizer manager initiated");
-        // userSynchronizer.initKathra();
-        userSynchronizer.synchronizeGroups();
+        SyncTechnicalUser syncTechnicalUser = new SyncTechnicalUser(userManager, groupsClient, usersClient, context);
+        SyncBinaryRepository syncBinaryRepository = new SyncBinaryRepository(repositoryManagerNexus, repositoryManagerHarbor, groupsClient, usersClient, binaryRepositoriesClient, context);
+
+        return new UserSynchronizerManager(sourceManage, pipelineManager,
+                        userManager, groupsClient, keyPairsClient, syncBinaryRepository, syncTechnicalUser, context);
+    }
+
+    /**
+     * compare-reports &lt;baseline.json&gt; &lt;current.json&gt; [top]
+     */
+    private static void compareReports(String[] args) throws IOException {
+        int top = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        for (String line : RunReport.compare(RunReport.read(args[1]), RunReport.read(args[2]), top))
+            System.out.println(line);
     }
 }
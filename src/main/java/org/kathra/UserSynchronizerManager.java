@@ -32,13 +32,21 @@ import org.kathra.utils.ApiException;
 import org.kathra.utils.KathraException;
 import org.kathra.utils.security.AuthentificationUtils;
 import org.kathra.utils.serialization.GsonUtils;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -53,9 +61,13 @@ public class UserSynchronizerManager {
     final private UserManagerClient userManager;
     final private GroupsClient groupsClient;
     final private KeyPairsClient keyPairsClient;
-    final private List<org.kathra.core.model.KeyPair> keyPairsExisting;
+    final private KeyPairIndex keyPairs;
     final private SyncBinaryRepository syncBinaryRepository;
     final private SyncTechnicalUser syncTechnicalUser;
+    final private SyncContext context;
+    final private MemberSets memberSets;
+    final private ExistenceCache existence;
+    final private Instrumentation instrumentation;
 
     final private String SOURCE_MANAGER_COMPONENT_PATH="components";
     final private String PIPELINE_MANAGER_COMPONENT_PATH="components";
@@ -65,11 +77,21 @@ public class UserSynchronizerManager {
 
 
     final private Membership.RoleEnum DEFAULT_ROLE = Membership.RoleEnum.CONTRIBUTOR;
+    final private int KEY_SIZE = 4096;
 
     public UserSynchronizerManager(SourceManagerClient sourceManager, PipelineManagerClient pipelineManager,
                                    UserManagerClient userManager,
                                    GroupsClient groupsClient,
                                    KeyPairsClient keyPairsClient, SyncBinaryRepository syncBinaryRepository, SyncTechnicalUser syncTechnicalUser) throws ApiException {
+        this(sourceManager, pipelineManager, userManager, groupsClient, keyPairsClient, syncBinaryRepository,
+                syncTechnicalUser, new SyncContext());
+    }
+
+    public UserSynchronizerManager(SourceManagerClient sourceManager, PipelineManagerClient pipelineManager,
+                                   UserManagerClient userManager,
+                                   GroupsClient groupsClient,
+                                   KeyPairsClient keyPairsClient, SyncBinaryRepository syncBinaryRepository, SyncTechnicalUser syncTechnicalUser,
+                                   SyncContext context) throws ApiException {
 
         this.sourceManager = sourceManager;
         this.pipelineManager = pipelineManager;
@@ -78,17 +100,18 @@ public class UserSynchronizerManager {
         this.keyPairsClient = keyPairsClient;
         this.syncBinaryRepository = syncBinaryRepository;
         this.syncTechnicalUser = syncTechnicalUser;
-
-        log.debug("Getting keys ");
-        keyPairsExisting = keyPairsClient.getKeyPairs();
-        log.debug("Keys gotten " + keyPairsExisting.toString());
+        this.context = context;
+        this.instrumentation = context.getInstrumentation();
+        this.keyPairs = new KeyPairIndex(keyPairsClient, context);
+        this.memberSets = context.getMemberSets();
+        this.existence = context.getExistence();
     }
 
     public void initKathra() throws ApiException {
         log.info("Init kathra");
         Folder kathraProjectsFolder = new Folder().path(BASE_PATH);
-        sourceManager.createFolder(kathraProjectsFolder);
-        pipelineManager.createFolder(kathraProjectsFolder.getPath());
+        instrumentation.run(Backend.SOURCE_MANAGER, "createFolder", () -> sourceManager.createFolder(kathraProjectsFolder));
+        instrumentation.run(Backend.PIPELINE_MANAGER, "createFolder", () -> pipelineManager.createFolder(kathraProjectsFolder.getPath()));
         log.info("Init kathra - OK");
     }
 
@@ -97,18 +120,49 @@ public class UserSynchronizerManager {
         Optional<org.kathra.core.model.KeyPair> keyPair = getKeyPairFromGroup(group);
         log.debug("getting key for  " + group.getId());
         log.debug(keyPair.toString());
+        SyncFlightRecorder.cacheLookup("key-pairs", group.getId(), keyPair.isPresent());
         if (keyPair.isPresent()) {
             log.debug("Returning existing key");
             return keyPair.get();
         }
         org.kathra.core.model.KeyPair kathraKeyPair = new org.kathra.core.model.KeyPair();
         kathraKeyPair.group(new Group().id(group.getId()));
+        SyncFlightRecorder.KeyGenerationEvent keyGeneration = SyncFlightRecorder.keyGeneration(group.getPath(), KEY_SIZE);
         KeyPair keyPairGenerated = generateKeyPair();
+        keyGeneration.commit();
         kathraKeyPair.setPrivateKey(AuthentificationUtils.formatPrivateKey(keyPairGenerated.getPrivate()));
         kathraKeyPair.setPublicKey(AuthentificationUtils.formatPublicKey(keyPairGenerated.getPublic()));
         log.debug("generated key ");
         log.debug(kathraKeyPair == null ? "NULL" : kathraKeyPair.toString());
-        return keyPairsClient.addKeyPair(kathraKeyPair);
+        org.kathra.core.model.KeyPair added = instrumentation.call(Backend.RESOURCE_MANAGER, "addKeyPair", () -> keyPairsClient.addKeyPair(kathraKeyPair));
+        if (added != null)
+            keyPairs.put(added);
+        return added;
+    }
+
+    /**
+     * Runs a side-effecting call once for the step in progress, also across runs when the journal is kept.
+     */
+    private void runOnce(Backend backend, String operation, String target, ApiAction action) throws ApiException {
+        OperationJournal journal = context.getJournal();
+        if (journal == null) {
+            instrumentation.run(backend, operation, action);
+            return;
+        }
+        journal.once(backend.tag() + " " + operation + " " + target, Void.class, () -> {
+            instrumentation.run(backend, operation, action);
+            return null;
+        });
+    }
+
+    /**
+     * Creates a folder unless it was seen or created recently.
+     */
+    private void createFolder(Backend backend, String folderPath, ApiAction action) throws ApiException {
+        if (existence.exists(backend, ExistenceCache.Kind.FOLDER, folderPath).orElse(false))
+            return;
+        runOnce(backend, "createFolder", folderPath, action);
+        existence.present(backend, ExistenceCache.Kind.FOLDER, folderPath);
     }
 
     private boolean groupPipelineShouldBeSync(Group group) {
@@ -129,16 +183,17 @@ public class UserSynchronizerManager {
 
     private void syncGroupPipelineManager(Group group, org.kathra.core.model.KeyPair keyPair)
             throws ApiException, NoSuchAlgorithmException {
-        syncGroupPipelineManagerPath(group, keyPair, PIPELINE_MANAGER_COMPONENT_PATH);
-        syncGroupPipelineManagerPath(group, keyPair, "packages");
+        org.kathra.core.model.KeyPair keyPairWithPrivateKey = keyPairs.withPrivateKey(keyPair);
+        syncGroupPipelineManagerPath(group, keyPairWithPrivateKey, PIPELINE_MANAGER_COMPONENT_PATH);
+        syncGroupPipelineManagerPath(group, keyPairWithPrivateKey, "packages");
     }
 
     private void syncGroupPipelineManagerPath(Group group, org.kathra.core.model.KeyPair keyPair, String path) throws ApiException {
-        pipelineManager.createFolder(group.getPath() + "/" + path);
+        createFolder(Backend.PIPELINE_MANAGER, group.getPath() + "/" + path, () -> pipelineManager.createFolder(group.getPath() + "/" + path));
         log.debug("Creating folder OK");
-        pipelineManager
-                .addMembership(new Membership().memberName(group.getPath()).memberType(Membership.MemberTypeEnum.GROUP)
-                        .path(group.getPath() + "/"+path).role(DEFAULT_ROLE));
+        Membership membership = new Membership().memberName(group.getPath()).memberType(Membership.MemberTypeEnum.GROUP)
+                .path(group.getPath() + "/"+path).role(DEFAULT_ROLE);
+        runOnce(Backend.PIPELINE_MANAGER, "addMembership", membership.getPath(), () -> pipelineManager.addMembership(membership));
         log.debug("Add membership OK");
         Credential credential = new Credential();
         credential.path(group.getPath() + "/"+path);
@@ -147,7 +202,7 @@ public class UserSynchronizerManager {
         log.debug("Username " + group.getPath() + " - " + group.getId());
         credential.description("SSH Pull Key");
         credential.privateKey(keyPair.getPrivateKey());
-        pipelineManager.addCredential(credential);
+        runOnce(Backend.PIPELINE_MANAGER, "addCredential", credential.getPath(), () -> pipelineManager.addCredential(credential));
         log.debug("Add credential OK");
 
     }
@@ -161,195 +216,377 @@ public class UserSynchronizerManager {
     private Group syncSourceManagerFolder(Group group, org.kathra.core.model.KeyPair keyPair, String path)
             throws ApiException {
         String group_path = group.getPath();
-        sourceManager.createFolder(new Folder().path(group_path + "/"+ path));
+        createFolder(Backend.SOURCE_MANAGER, group_path + "/" + path, () -> sourceManager.createFolder(new Folder().path(group_path + "/"+ path)));
         SourceRepository deployKeyRepository = new SourceRepository().path(group.getPath() + "/kathra-deploy-key");
-        try {
-            sourceManager.createSourceRepository(deployKeyRepository, null);
-        } catch(ApiException e) {
-            // IF REPOSITORY ALREADY EXISTS, NO THROW EXCEPTION
-            if (e.getCode() != KathraException.ErrorCode.CONFLICT.getCode()) {
-                throw e;
+        if (!existence.exists(Backend.SOURCE_MANAGER, ExistenceCache.Kind.REPOSITORY, deployKeyRepository.getPath()).orElse(false)) {
+            try {
+                runOnce(Backend.SOURCE_MANAGER, "createSourceRepository", deployKeyRepository.getPath(), () -> sourceManager.createSourceRepository(deployKeyRepository, null));
+            } catch(ApiException e) {
+                // IF REPOSITORY ALREADY EXISTS, NO THROW EXCEPTION
+                if (e.getCode() != KathraException.ErrorCode.CONFLICT.getCode()) {
+                    throw e;
+                }
             }
+            existence.present(Backend.SOURCE_MANAGER, ExistenceCache.Kind.REPOSITORY, deployKeyRepository.getPath());
         }
         log.debug("going to add membership 'kathra-sourcemanager' to source manager on deploy key repository path "
                 + deployKeyRepository.getPath());
-        sourceManager.addMemberships(Collections.singletonList(new Membership().memberName("kathra-sourcemanager")
-                .role(Membership.RoleEnum.MANAGER).path(deployKeyRepository.getPath())));
-        sourceManager.createDeployKey(group.getId(), keyPair.getPublicKey(), deployKeyRepository.getPath());
+        List<Membership> deployKeyMemberships = Collections.singletonList(new Membership().memberName("kathra-sourcemanager")
+                .role(Membership.RoleEnum.MANAGER).path(deployKeyRepository.getPath()));
+        runOnce(Backend.SOURCE_MANAGER, "addMemberships", deployKeyRepository.getPath(), () -> sourceManager.addMemberships(deployKeyMemberships));
+        runOnce(Backend.SOURCE_MANAGER, "createDeployKey", deployKeyRepository.getPath(), () -> sourceManager.createDeployKey(group.getId(), keyPair.getPublicKey(), deployKeyRepository.getPath()));
 
         return group;
 
     }
 
-    private void tryToSynchronizeGroupPipeline(Group group_to_sync, org.kathra.core.model.KeyPair keyPair) {
+    private boolean tryToSynchronizeGroupPipeline(Group group_to_sync, org.kathra.core.model.KeyPair keyPair) {
         if (!groupPipelineShouldBeSync(group_to_sync))
-            return;
+            return true;
         log.debug("--- Synchronizing PipelineManager groups and members --- [" + group_to_sync.getPath() + "]");
         try {
-            syncGroupPipelineManager(group_to_sync, keyPair);
-            groupsClient.updateGroupAttributes(group_to_sync.getId(),
-                    new Group().members(new ArrayList()).pipelineFolderStatus(Group.PipelineFolderStatusEnum.READY));
+            instrumentation.step(group_to_sync.getPath(), SyncStep.PIPELINE, () -> {
+                syncGroupPipelineManager(group_to_sync, keyPair);
+                instrumentation.run(Backend.RESOURCE_MANAGER, "updateGroupAttributes", () -> groupsClient.updateGroupAttributes(group_to_sync.getId(),
+                        new Group().members(new ArrayList()).pipelineFolderStatus(Group.PipelineFolderStatusEnum.READY)));
+                return null;
+            });
+            return true;
         } catch (Exception e) {
             log.error("Cannot sync group " + group_to_sync.getPath() + " with pipeline manger. Error: " + e.toString());
             e.printStackTrace();
+            return false;
         }
-
     }
 
-    private void tryToSynchronizeGroupBinary(Group group_to_sync) {
+    private boolean tryToSynchronizeGroupBinary(Group group_to_sync) {
         if (!groupBinaryRepoShouldBeSync(group_to_sync))
-            return;
+            return true;
         log.debug(
                 "--- Synchronizing BinaryRespositoryManager groups and members --- [" + group_to_sync.getPath() + "]");
         try {
-            syncBinaryRepository.synchronize(group_to_sync);
+            instrumentation.step(group_to_sync.getPath(), SyncStep.BINARY_REPOSITORY,
+                    () -> syncBinaryRepository.synchronize(group_to_sync));
+            return true;
         } catch (Exception e) {
             log.error("Cannot sync group " + group_to_sync.getPath() + " with binary repo manger. Error: "
                     + e.toString());
             e.printStackTrace();
+            return false;
         }
     }
 
-    private void tryToSynchronizeSourceManager(Group group_to_sync, org.kathra.core.model.KeyPair keyPair) {
+    private boolean tryToSynchronizeSourceManager(Group group_to_sync, org.kathra.core.model.KeyPair keyPair) {
         if (!groupSourceManagerShouldBeSync(group_to_sync))
-            return;
+            return true;
         log.debug("--- Synchronizing SourceManager groups --- [" + group_to_sync.getPath() + "]");
         try {
-            syncSourceManagerFolder(group_to_sync, keyPair);
-            groupsClient.updateGroupAttributes(group_to_sync.getId(), new Group().members(new ArrayList())
-                    .sourceRepositoryStatus(Group.SourceRepositoryStatusEnum.READY));
+            instrumentation.step(group_to_sync.getPath(), SyncStep.SOURCE_MANAGER, () -> {
+                syncSourceManagerFolder(group_to_sync, keyPair);
+                instrumentation.run(Backend.RESOURCE_MANAGER, "updateGroupAttributes", () -> groupsClient.updateGroupAttributes(group_to_sync.getId(), new Group().members(new ArrayList())
+                        .sourceRepositoryStatus(Group.SourceRepositoryStatusEnum.READY)));
+                return null;
+            });
+            return true;
         } catch (Exception e) {
             log.error("Cannot sync group " + group_to_sync.getPath() + " with source manager. Error: " + e.toString());
             e.printStackTrace();
+            return false;
         }
     }
 
     private List<Membership> get_source_manager_memberships_from_group_path(String path) throws ApiException {
         String user_type = String.valueOf(Membership.MemberTypeEnum.USER);
-        List<Membership> members = sourceManager.getMemberships(path, user_type);
+        List<Membership> members = instrumentation.call(Backend.SOURCE_MANAGER, "getMemberships", () -> sourceManager.getMemberships(path, user_type));
         if (members == null)
             return new ArrayList<Membership>();
         return members;
     }
 
-    private void synchronizeUsers(Group group_to_sync, List<Assignation> users_source, List<Membership> users_dest, String path)
+    void synchronizeUsers(Group group_to_sync, List<Assignation> users_source, List<Membership> users_dest, String path)
             throws ApiException {
+        synchronizeUsers(group_to_sync.getPath(), memberSets.ofAssignations(users_source), users_dest, path);
+    }
 
-        List<Membership> users_to_add = new ArrayList<Membership>();
-        Map<String, Membership> source_manager_members = users_dest.stream()
-                .collect(Collectors.toMap(Membership::getMemberName, g -> g));
-
-        for (Assignation member : users_source) {
-            if (!source_manager_members.containsKey(member.getName())) {
-                Membership newMember = new Membership();
-                newMember.setMemberName(member.getName());
-                newMember.setRole(Membership.RoleEnum.MANAGER);
-                newMember.setPath(group_to_sync.getPath() + "/" + path);
-                users_to_add.add(newMember);
-            }
-            source_manager_members.remove(member.getName());
-        }
+    void synchronizeUsers(String group_path, RoaringBitmap desired, List<Membership> users_dest, String path)
+            throws ApiException {
 
+        String membership_path = group_path + "/" + path;
+        MemberDictionary dictionary = memberSets.getDictionary();
+        List<Membership> users_source = new ArrayList<Membership>(desired.getCardinality());
+        desired.forEach((int id) -> users_source.add(new Membership().memberName(dictionary.name(id))
+                .role(Membership.RoleEnum.MANAGER).path(membership_path)));
+        MembershipDiff diff = MembershipDiff.between(users_source, users_dest);
+
+        List<Membership> users_to_add = diff.getAdditions();
         if (!users_to_add.isEmpty()) {
             log.debug("Adding users: " + GsonUtils.toJson(users_to_add));
-            sourceManager.addMemberships(users_to_add);
+            instrumentation.run(Backend.SOURCE_MANAGER, "addMemberships", () -> sourceManager.addMemberships(users_to_add));
+        }
+
+        // members with another role are added again with the desired role in their own call, so that a source
+        // manager refusing to add an existing member doesn't fail the additions; they are never removed, a refused
+        // update leaving them their current access
+        List<Membership> users_to_update = diff.getUpdates();
+        if (!users_to_update.isEmpty()) {
+            log.debug("Updating the role of users: " + GsonUtils.toJson(users_to_update));
+            try {
+                instrumentation.run(Backend.SOURCE_MANAGER, "addMemberships", () -> sourceManager.addMemberships(users_to_update));
+            } catch (ApiException e) {
+                if (KathraException.ErrorCode.CONFLICT.getCode() != e.getCode())
+                    throw e;
+                log.warn("Source manager can't change the role of the members of " + membership_path
+                        + ", they keep their current role. Error: " + e.toString());
+            }
         }
 
-        if (!source_manager_members.isEmpty()) {
-            List<Membership> users_to_delete = new ArrayList<Membership>(source_manager_members.values());
+        List<Membership> users_to_delete = diff.getRemovals();
+        if (!users_to_delete.isEmpty()) {
             for (Membership userToDelete : users_to_delete)
-                userToDelete.setPath(group_to_sync.getPath() + "/" + path);
+                userToDelete.setPath(membership_path);
             log.debug("Removing users: " + GsonUtils.toJson(users_to_delete));
-            sourceManager.deleteMemberships(users_to_delete);
+            instrumentation.run(Backend.SOURCE_MANAGER, "deleteMemberships", () -> sourceManager.deleteMemberships(users_to_delete));
         }
     }
 
-    private boolean isGroupReady(Group group) {
-        return group != null && group.getStatus().equals(Resource.StatusEnum.READY);
-    }
-
-    private List<Assignation> get_group_user_manager_members(Group user_manager_group) {
-        List<Assignation> members = user_manager_group.getMembers();
-        return (members == null) ? new ArrayList<>() : members;
-    }
-
-    private void synchronizeSourceManagerUsersOfGroup(Group user_manager_group, Group group_to_sync, String path)
+    private boolean synchronizeSourceManagerUsersOfGroup(GroupSnapshot user_manager_group, String group_path, String path)
             throws ApiException {
         try {
-            List<Assignation> user_manager_group_members = get_group_user_manager_members(user_manager_group);
-            List<Membership> source_manager_group_members = get_source_manager_memberships_from_group_path(group_to_sync.getPath()+"/"+path);
-            synchronizeUsers(group_to_sync, user_manager_group_members, source_manager_group_members, path);
+            instrumentation.step(group_path, SyncStep.MEMBERSHIP, () -> {
+                List<Membership> source_manager_group_members = get_source_manager_memberships_from_group_path(group_path+"/"+path);
+                synchronizeUsers(group_path, user_manager_group.getMembers(), source_manager_group_members, path);
+                return null;
+            });
+            return true;
         } catch (Exception e) {
-            log.error("Cannot synchronize users of group " + group_to_sync.getPath() + ". Error: " + e.toString());
+            log.error("Cannot synchronize users of group " + group_path + ". Error: " + e.toString());
             e.printStackTrace();
+            return false;
         }
     }
 
     public void synchronizeGroups() throws ApiException {
-        log.info("Synchronizing groups");
-
-        List<Group> groupsFromUserManager = userManager.getGroups();
-        List<Group> groupsFromResourceManager = groupsClient.getGroups();
+        RunReporter runReporter = context.getRunReporter();
+        if (runReporter != null)
+            runReporter.start();
+        try {
+            synchronizeAllGroups();
+        } finally {
+            if (runReporter != null)
+                runReporter.finish();
+            if (context.getHistory() != null) {
+                try {
+                    context.getHistory().save();
+                } catch (IOException e) {
+                    log.error("Cannot save sync history. Error: " + e.toString());
+                }
+            }
+            if (context.getCursor() != null) {
+                try {
+                    context.getCursor().save();
+                } catch (IOException e) {
+                    log.error("Cannot save run cursor. Error: " + e.toString());
+                }
+            }
+            try {
+                existence.save();
+            } catch (IOException e) {
+                log.error("Cannot save existence cache. Error: " + e.toString());
+            }
+            log.info("Single-flight reads: " + context.getSingleFlight() + ", existence cache: " + existence);
+        }
+    }
 
-        log.debug("Groups from user manager: " + GsonUtils.toJson(groupsFromUserManager));
-        log.debug("Groups from resource manager: " + GsonUtils.toJson(groupsFromResourceManager));
+    private void synchronizeAllGroups() throws ApiException {
+        log.info("Synchronizing groups");
 
-        Map<String, Group> groupsFromResourceManagers = groupsFromResourceManager.stream()
-                .collect(Collectors.toMap(Group::getPath, g -> g));
-        log.debug("Groups from resource manager (map): " + groupsFromResourceManagers.toString());
-        Exception exceptionOccured = null;
-        for (Group groupFromUserManager : groupsFromUserManager) {
+        Map<String, GroupSnapshot> groupsFromResourceManagers = listGroups(Backend.RESOURCE_MANAGER, groupsClient::getGroups, null, null)
+                .stream().collect(Collectors.toMap(GroupSnapshot::getPath, g -> g));
+        // new groups are created from the full user manager model, the snapshots keep only what the run needs
+        Map<String, Group> groupsToCreate = new ConcurrentHashMap<>();
+        List<GroupSnapshot> groupsFromUserManager = listGroups(Backend.USER_MANAGER, userManager::getGroups, memberSets, g -> {
+            if (g.getPath() != null && !groupsFromResourceManagers.containsKey(g.getPath()))
+                groupsToCreate.put(g.getPath(), g);
+        });
+        // members of the groups exist in the user manager, technical users included
+        List<String> users = new ArrayList<>();
+        GroupSnapshot.membersOf(groupsFromUserManager).forEach((int member) -> users.add(memberSets.getDictionary().name(member)));
+        existence.presentAll(Backend.USER_MANAGER, ExistenceCache.Kind.USER, users);
+        SyncHistory history = context.getHistory();
+        // an empty listing is more likely a failed read than a user manager without groups
+        if (history != null && !groupsFromUserManager.isEmpty()) {
+            Shard shard = context.getShard();
+            int forgotten = history.retainGroups(groupsFromUserManager.stream().map(GroupSnapshot::getPath)
+                    .collect(Collectors.toSet()), shard::owns);
+            if (forgotten > 0)
+                log.info("Groups removed from the user manager forgotten by the history: " + forgotten);
+        }
+        if (context.getShard().isPartial())
+            context.shardGroupIds(groupsFromResourceManagers.values().stream().map(GroupSnapshot::getId)
+                    .filter(Objects::nonNull).collect(Collectors.toSet()));
+        log.debug("Groups from resource manager (map): " + groupsFromResourceManagers.keySet());
+        List<GroupScheduler.Task> tasks = new GroupScheduler(groupsFromResourceManagers, memberSets, context.getHistory())
+                .order(groupsFromUserManager);
+        RunCursor cursor = context.getCursor();
+        if (cursor != null && cursor.size() > 0) {
+            int scheduled = tasks.size();
+            tasks.removeIf(t -> t.getPriority() == GroupPriority.REFRESH && cursor.isDone(t.getGroup().getPath()));
+            log.info("Resuming the pass: " + (scheduled - tasks.size()) + " groups already refreshed");
+        }
+        log.info("Groups by priority: " + tasks.stream()
+                .collect(Collectors.groupingBy(t -> t.getPriority().tag(), TreeMap::new, Collectors.counting())));
+        AtomicReference<Exception> exceptionOccured = new AtomicReference<>();
+        int workers = context.getWorkers();
+        if (workers <= 1) {
+            for (GroupScheduler.Task task : tasks)
+                syncTask(groupsFromResourceManagers, groupsToCreate, task, exceptionOccured);
+        } else {
+            // the queue of the pool keeps the scheduled order
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            for (GroupScheduler.Task task : tasks)
+                executor.execute(() -> syncTask(groupsFromResourceManagers, groupsToCreate, task, exceptionOccured));
+            executor.shutdown();
             try {
-                syncGroup(groupsFromResourceManagers, groupFromUserManager);
-            } catch (Exception e) {
-                log.error("Cannot synchronize group " + groupFromUserManager.getPath() + ". Error: " + e.toString());
-                exceptionOccured = e;
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                    log.debug("Waiting for the workers to finish");
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        GroupLeases leases = context.getLeases();
+        if (leases != null && leases.getSkipped() > 0)
+            log.info("Groups skipped, leased by another run: " + leases.getSkipped());
+        RunBudget budget = context.getBudget();
+        Deadlines deadlines = context.getDeadlines();
+        if (deadlines != null && deadlines.getDeferredGroups() > 0)
+            log.info("Groups with steps deferred to the next run: " + deadlines.getDeferredGroups()
+                    + ", steps: " + deadlines.getDeferredSteps());
+        if (budget != null && budget.getDeferred() > 0)
+            log.info("Groups deferred to the next run: " + budget.getDeferred());
+        else if (cursor != null && (deadlines == null || deadlines.getDeferredGroups() == 0))
+            cursor.clear();
+        if (exceptionOccured.get() != null) {
+            exceptionOccured.get().printStackTrace();
+            if (exceptionOccured.get() instanceof ApiException)
+                throw (ApiException) exceptionOccured.get();
+            if (exceptionOccured.get() instanceof RuntimeException)
+                throw (RuntimeException) exceptionOccured.get();
+        }
+    }
+
+    private void syncTask(Map<String, GroupSnapshot> groupsFromResourceManagers, Map<String, Group> groupsToCreate,
+                          GroupScheduler.Task task, AtomicReference<Exception> exceptionOccured) {
+        GroupSnapshot groupFromUserManager = task.getGroup();
+        RunBudget budget = context.getBudget();
+        if (budget != null && !budget.canStart(task.getExpectedDurationMs()))
+            return;
+        GroupLeases leases = context.getLeases();
+        if (leases != null && !leases.acquire(groupFromUserManager.getPath())) {
+            log.info("Group " + groupFromUserManager.getPath() + " is synchronized by another run. Skipping");
+            return;
+        }
+        RunReporter runReporter = context.getRunReporter();
+        if (runReporter != null)
+            runReporter.priority(groupFromUserManager.getPath(), task.getPriority());
+        SyncHistory history = context.getHistory();
+        Deadlines deadlines = context.getDeadlines();
+        long start = context.getClock().millis();
+        try {
+            boolean synchronizedAll = instrumentation.step(groupFromUserManager.getPath(), SyncStep.GROUP,
+                    () -> syncGroup(groupsFromResourceManagers, groupsToCreate, groupFromUserManager));
+            if (deadlines != null && deadlines.isDeferred(groupFromUserManager.getPath()))
+                return;
+            // the members, the duration and the pass are only recorded once every step succeeded, the next run
+            // retries the group; a failed or deferred group would record a truncated duration
+            if (!synchronizedAll) {
+                log.info("Group " + groupFromUserManager.getPath() + " has failed steps, retried by the next run");
+                return;
+            }
+            if (history != null) {
+                history.synchronizedMembers(groupFromUserManager.getPath(), task.getMembersFingerprint());
+                history.synchronizedIn(groupFromUserManager.getPath(), context.getClock().millis() - start);
+            }
+            if (context.getCursor() != null)
+                context.getCursor().done(groupFromUserManager.getPath());
+        } catch (Exception e) {
+            if (DeadlineExceededException.find(e) != null) {
+                log.info("Group " + groupFromUserManager.getPath() + " deferred to the next run. " + e.getMessage());
+                return;
             }
+            log.error("Cannot synchronize group " + groupFromUserManager.getPath() + ". Error: " + e.toString());
+            exceptionOccured.set(e);
+        } finally {
+            if (leases != null)
+                leases.release(groupFromUserManager.getPath());
         }
-        if (exceptionOccured != null) {
-            exceptionOccured.printStackTrace();
-            if (exceptionOccured instanceof ApiException)
-                throw (ApiException) exceptionOccured;
-            if (exceptionOccured instanceof RuntimeException)
-                throw (RuntimeException) exceptionOccured;
+    }
+
+    /**
+     * Lists the groups of a backend owned by the shard of this replica as snapshots, the generated models are not
+     * kept past this call unless the retain consumer keeps them.
+     */
+    private List<GroupSnapshot> listGroups(Backend backend, ApiCall<List<Group>> getGroups, MemberSets members,
+                                           Consumer<Group> retain) throws ApiException {
+        List<Group> groups = instrumentation.call(backend, "getGroups", getGroups);
+        if (log.isDebugEnabled())
+            log.debug("Groups from " + backend + ": " + GsonUtils.toJson(groups));
+        Shard shard = context.getShard();
+        if (groups != null && shard.isPartial()) {
+            int listed = groups.size();
+            groups = groups.stream().filter(g -> shard.owns(g.getPath())).collect(Collectors.toList());
+            log.info("Shard " + shard + ": " + groups.size() + " of " + listed + " groups from " + backend);
         }
+        if (groups != null && retain != null)
+            groups.forEach(retain);
+        return GroupSnapshot.of(groups, members);
     }
 
-    private boolean syncGroup(Map<String, Group> groupsFromResourceManagers, Group groupFromUserManager) throws ApiException, NoSuchAlgorithmException {
+    /**
+     * @return whether every step of the group succeeded
+     */
+    private boolean syncGroup(Map<String, GroupSnapshot> groupsFromResourceManagers, Map<String, Group> groupsToCreate,
+                              GroupSnapshot groupFromUserManager) throws Exception {
         String group_path = groupFromUserManager.getPath();
         log.debug("SYNC GROUP loop; Group: " + group_path);
         Group groupToSync;
 
-        groupToSync = groupsFromResourceManagers.get(group_path);
-        log.debug("group found? " + (groupToSync == null ? "NO" : group_path));
-        if (isGroupReady(groupToSync)) {
+        GroupSnapshot existing = groupsFromResourceManagers.get(group_path);
+        log.debug("group found? " + (existing == null ? "NO" : group_path));
+        if (existing != null && existing.isReady()) {
             log.info("Group " + group_path + " is ready. Just sync users ");
-            synchronizeSourceManagerUsersOfGroup(groupFromUserManager, groupToSync, SOURCE_MANAGER_COMPONENT_PATH);
-            return true;
+            if (context.getRunReporter() != null)
+                context.getRunReporter().membersOnly();
+            return synchronizeSourceManagerUsersOfGroup(groupFromUserManager, group_path, SOURCE_MANAGER_COMPONENT_PATH);
         }
-        if (groupToSync == null) {
+        if (existing == null) {
             log.debug("Creating new group " + group_path);
-            groupToSync = groupsClient.addGroup(groupFromUserManager);
+            Group listed = groupsToCreate.remove(group_path);
+            Group newGroup = listed != null ? listed : groupFromUserManager.toGroup(memberSets.getDictionary());
+            groupToSync = instrumentation.call(Backend.RESOURCE_MANAGER, "addGroup", () -> groupsClient.addGroup(newGroup));
+        } else {
+            groupToSync = existing.toGroup(memberSets.getDictionary());
         }
 
-        syncTechnicalUser.syncTechnicalUser(groupToSync);
-        org.kathra.core.model.KeyPair keyPair = getKeyOrGenerateOne(groupToSync);
-        tryToSynchronizeGroupPipeline(groupToSync, keyPair);
-        tryToSynchronizeGroupBinary(groupToSync);
-        tryToSynchronizeSourceManager(groupToSync, keyPair);
+        Group group = groupToSync;
+        instrumentation.step(group_path, SyncStep.TECHNICAL_USER, () -> syncTechnicalUser.syncTechnicalUser(group));
+        org.kathra.core.model.KeyPair keyPair = instrumentation.step(group_path, SyncStep.KEY_PAIR, () -> getKeyOrGenerateOne(group));
+        // a failed step does not stop the next ones
+        boolean synchronizedAll = tryToSynchronizeGroupPipeline(groupToSync, keyPair);
+        synchronizedAll &= tryToSynchronizeGroupBinary(groupToSync);
+        synchronizedAll &= tryToSynchronizeSourceManager(groupToSync, keyPair);
 
-        synchronizeSourceManagerUsersOfGroup(groupFromUserManager, groupToSync, SOURCE_MANAGER_COMPONENT_PATH);
-        return false;
+        synchronizedAll &= synchronizeSourceManagerUsersOfGroup(groupFromUserManager, group_path, SOURCE_MANAGER_COMPONENT_PATH);
+        return synchronizedAll;
     }
 
-    private KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+    KeyPair generateKeyPair() throws NoSuchAlgorithmException {
         KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
-        kpg.initialize(4096);
+        kpg.initialize(KEY_SIZE);
         return kpg.generateKeyPair();
     }
 
-    private Optional<org.kathra.core.model.KeyPair> getKeyPairFromGroup(Group group) throws ApiException {
-        return keyPairsExisting.parallelStream().filter(keyPair -> keyPair.getGroup() != null
-                && keyPair.getGroup().getId() != null && keyPair.getGroup().getId().equals(group.getId())).findFirst();
+    Optional<org.kathra.core.model.KeyPair> getKeyPairFromGroup(Group group) throws ApiException {
+        return keyPairs.get(group.getId());
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.core.model.BinaryRepository;
+import org.kathra.core.model.Group;
+import org.kathra.resourcemanager.client.BinaryRepositoriesClient;
+import org.kathra.utils.ApiException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class BinaryRepositoryIndexTest {
+
+    private static BinaryRepository repository(String id, String groupId, BinaryRepository.TypeEnum type) {
+        return new BinaryRepository().id(id).type(type).group(new Group().id(groupId));
+    }
+
+    @Test
+    public void repositories_are_read_once_and_served_by_group_and_type() throws ApiException {
+        BinaryRepositoriesClient client = mock(BinaryRepositoriesClient.class);
+        when(client.getBinaryRepositories()).thenReturn(Arrays.asList(
+                repository("1", "a", BinaryRepository.TypeEnum.JAVA),
+                repository("2", "a", BinaryRepository.TypeEnum.HELM),
+                repository("3", "b", BinaryRepository.TypeEnum.JAVA)));
+        BinaryRepositoryIndex index = new BinaryRepositoryIndex(client, new SyncContext());
+
+        Map<BinaryRepository.TypeEnum, BinaryRepository> a = index.ofGroup(new Group().id("a"));
+        Map<BinaryRepository.TypeEnum, BinaryRepository> b = index.ofGroup(new Group().id("b")
+                .binaryRepositories(Collections.singletonList(new BinaryRepository().id("3"))));
+
+        assertEquals("1", a.get(BinaryRepository.TypeEnum.JAVA).getId());
+        assertEquals("2", a.get(BinaryRepository.TypeEnum.HELM).getId());
+        assertEquals(1, b.size());
+        verify(client, times(1)).getBinaryRepositories();
+        verify(client, never()).getBinaryRepository(anyString());
+    }
+
+    @Test
+    public void repositories_missing_from_the_index_are_read_and_added() throws ApiException {
+        BinaryRepositoriesClient client = mock(BinaryRepositoriesClient.class);
+        when(client.getBinaryRepositories()).thenReturn(Collections.emptyList());
+        when(client.getBinaryRepository("4")).thenReturn(repository("4", "c", BinaryRepository.TypeEnum.PYTHON));
+        BinaryRepositoryIndex index = new BinaryRepositoryIndex(client, new SyncContext());
+        Group group = new Group().id("c").binaryRepositories(Collections.singletonList(new BinaryRepository().id("4")));
+
+        assertEquals("4", index.ofGroup(group).get(BinaryRepository.TypeEnum.PYTHON).getId());
+        index.put(repository("5", "c", BinaryRepository.TypeEnum.DOCKER_IMAGE));
+        assertEquals("5", index.ofGroup(group).get(BinaryRepository.TypeEnum.DOCKER_IMAGE).getId());
+
+        verify(client, times(1)).getBinaryRepository("4");
+        assertEquals(2, index.size());
+    }
+}
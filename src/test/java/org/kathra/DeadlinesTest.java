@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import org.junit.Test;
+import org.kathra.utils.ApiException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DeadlinesTest {
+
+    private final VirtualClock clock = new VirtualClock(0);
+
+    @Test
+    public void calls_outside_of_a_group_are_not_bounded() throws Exception {
+        Deadlines deadlines = new Deadlines(clock, 1_000, null);
+        Thread caller = Thread.currentThread();
+
+        assertEquals(Long.MAX_VALUE, deadlines.remainingMs());
+        assertSame(caller, deadlines.aroundCall(Backend.USER_MANAGER, "getGroups", Thread::currentThread));
+    }
+
+    @Test
+    public void call_without_time_left_is_not_made() throws Exception {
+        Deadlines deadlines = new Deadlines(clock, 1_000, null);
+        boolean[] called = {false};
+
+        try {
+            deadlines.aroundStep("/kathra/team", SyncStep.GROUP, () ->
+                    deadlines.aroundStep("/kathra/team", SyncStep.PIPELINE, () -> {
+                        clock.advance(1_500);
+                        return deadlines.aroundCall(Backend.PIPELINE_MANAGER, "createFolder", () -> called[0] = true);
+                    }));
+            fail("deadline not exceeded");
+        } catch (DeadlineExceededException e) {
+            assertFalse(called[0]);
+        }
+        assertTrue(deadlines.isDeferred("/kathra/team"));
+        assertEquals(1, deadlines.getDeferredGroups());
+        assertEquals(1L, (long) deadlines.getDeferredSteps().get("pipeline"));
+        assertNull(deadlines.getDeferredSteps().get("group"));
+    }
+
+    @Test
+    public void unanswered_request_times_out_at_the_deadline() throws Exception {
+        Deadlines deadlines = new Deadlines(Clock.systemUTC(), 200, null);
+        OkHttpClient client = new OkHttpClient();
+        client.setReadTimeout(60, TimeUnit.SECONDS);
+        client.networkInterceptors().add(deadlines);
+        long start = System.nanoTime();
+
+        // connections are accepted by the backlog and never answered
+        try (ServerSocket server = new ServerSocket(0)) {
+            Request request = new Request.Builder().url("http://127.0.0.1:" + server.getLocalPort() + "/repositories").build();
+            deadlines.aroundStep("/kathra/team", SyncStep.GROUP, () ->
+                    deadlines.aroundCall(Backend.NEXUS, "getBinaryRepository", () -> {
+                        try {
+                            return client.newCall(request).execute();
+                        } catch (IOException e) {
+                            throw new ApiException(e);
+                        }
+                    }));
+            fail("deadline not exceeded");
+        } catch (DeadlineExceededException e) {
+            assertTrue((System.nanoTime() - start) / 1_000_000 < 10_000);
+            assertTrue(e.getCause() instanceof ApiException);
+        }
+        assertEquals(1L, (long) deadlines.getDeferredSteps().get("group"));
+    }
+
+    @Test
+    public void slow_response_body_is_read_until_the_deadline() throws Exception {
+        Deadlines deadlines = new Deadlines(Clock.systemUTC(), 300, null);
+        OkHttpClient client = new OkHttpClient();
+        client.setReadTimeout(60, TimeUnit.SECONDS);
+        client.networkInterceptors().add(deadlines);
+
+        // every byte of the body comes before the read timeout, the whole body after the deadline
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread trickle = new Thread(() -> {
+                try (Socket socket = server.accept()) {
+                    OutputStream out = socket.getOutputStream();
+                    out.write("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    for (int i = 0; i < 100; i++) {
+                        out.write('x');
+                        out.flush();
+                        Thread.sleep(50);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // the client gave up
+                }
+            });
+            trickle.setDaemon(true);
+            trickle.start();
+            Request request = new Request.Builder().url("http://127.0.0.1:" + server.getLocalPort() + "/groups").build();
+            long start = System.nanoTime();
+            try {
+                deadlines.aroundStep("/kathra/team", SyncStep.GROUP, () ->
+                        deadlines.aroundCall(Backend.RESOURCE_MANAGER, "getGroups", () -> {
+                            try {
+                                return client.newCall(request).execute().body().string();
+                            } catch (IOException e) {
+                                throw new ApiException(e);
+                            }
+                        }));
+                fail("deadline not exceeded");
+            } catch (DeadlineExceededException e) {
+                assertTrue((System.nanoTime() - start) / 1_000_000 < 3_000);
+            }
+        }
+    }
+
+    @Test
+    public void connect_timeout_is_capped_by_the_longest_deadline() {
+        RunBudget budget = new RunBudget(clock, 500, 100);
+
+        assertEquals(1_000, new Deadlines(clock, 1_000, null).getLongestDeadlineMs());
+        assertEquals(500, new Deadlines(clock, 10_000, budget).getLongestDeadlineMs());
+        assertEquals(Long.MAX_VALUE, new Deadlines(clock, 0, null).getLongestDeadlineMs());
+    }
+
+    @Test
+    public void call_failing_past_the_deadline_exceeds_it() throws Exception {
+        Deadlines deadlines = new Deadlines(clock, 1_000, null);
+        ApiException failure = new ApiException(502, "bad gateway");
+
+        try {
+            deadlines.aroundStep("/kathra/team", SyncStep.GROUP, () ->
+                    deadlines.aroundCall(Backend.HARBOR, "addBinaryRepository", () -> {
+                        clock.advance(1_500);
+                        throw failure;
+                    }));
+            fail("deadline not exceeded");
+        } catch (DeadlineExceededException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertTrue(deadlines.isDeferred("/kathra/team"));
+    }
+
+    @Test
+    public void call_failure_is_rethrown_as_is() throws Exception {
+        Deadlines deadlines = new Deadlines(clock, 1_000, null);
+        ApiException failure = new ApiException(503, "unavailable");
+
+        try {
+            deadlines.aroundStep("/kathra/team", SyncStep.GROUP, () ->
+                    deadlines.aroundCall(Backend.HARBOR, "addBinaryRepository", () -> {
+                        throw failure;
+                    }));
+            fail("failure not rethrown");
+        } catch (ApiException e) {
+            assertSame(failure, e);
+        }
+        assertFalse(deadlines.isDeferred("/kathra/team"));
+    }
+
+    @Test
+    public void group_deadline_is_bounded_by_the_run_budget() throws Exception {
+        RunBudget budget = new RunBudget(clock, 500, 100);
+        Deadlines deadlines = new Deadlines(clock, 10_000, budget);
+
+        long remainingMs = deadlines.aroundStep("/kathra/team", SyncStep.GROUP, deadlines::remainingMs);
+
+        assertEquals(500, remainingMs);
+    }
+
+    @Test
+    public void tight_group_budget_defers_the_slowest_steps() throws Exception {
+        Simulation.Scenario scenario = new Simulation.Scenario().set("groups", "50").set("ready", "0")
+                .set("errorRate", "0").set("groupBudgetMs", "6000");
+
+        Simulation.Result result = new Simulation(scenario).run();
+
+        long deferred = result.getDeferredSteps().values().stream().mapToLong(Long::longValue).sum();
+        assertTrue("deferred steps: " + deferred, deferred > 0 && deferred < 50);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class ExistenceCacheTest {
+
+    private static final String USER = "path1_technicaluser";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VirtualClock clock = new VirtualClock(0);
+
+    @Test
+    public void entries_expire_after_their_ttl() {
+        ExistenceCache cache = new ExistenceCache(null, clock, 10_000, 1_000);
+        cache.present(Backend.USER_MANAGER, ExistenceCache.Kind.USER, USER);
+        cache.absent(Backend.NEXUS, ExistenceCache.Kind.REPOSITORY, "maven");
+
+        assertEquals(Optional.of(true), cache.exists(Backend.USER_MANAGER, ExistenceCache.Kind.USER, USER));
+        assertEquals(Optional.of(false), cache.exists(Backend.NEXUS, ExistenceCache.Kind.REPOSITORY, "maven"));
+        assertEquals(Optional.empty(), cache.exists(Backend.HARBOR, ExistenceCache.Kind.REPOSITORY, "maven"));
+
+        clock.advance(1_000);
+        assertEquals(Optional.empty(), cache.exists(Backend.NEXUS, ExistenceCache.Kind.REPOSITORY, "maven"));
+        assertEquals(Optional.of(true), cache.exists(Backend.USER_MANAGER, ExistenceCache.Kind.USER, USER));
+
+        clock.advance(9_000);
+        assertEquals(Optional.empty(), cache.exists(Backend.USER_MANAGER, ExistenceCache.Kind.USER, USER));
+    }
+
+    @Test
+    public void listing_and_creation_replace_a_negative_entry() {
+        ExistenceCache cache = new ExistenceCache(null, clock, 10_000, 1_000);
+        cache.absent(Backend.SOURCE_MANAGER, ExistenceCache.Kind.FOLDER, "/kathra-projects/path1/components");
+        cache.absent(Backend.USER_MANAGER, ExistenceCache.Kind.USER, USER);
+
+        cache.present(Backend.SOURCE_MANAGER, ExistenceCache.Kind.FOLDER, "/kathra-projects/path1/components");
+        cache.presentAll(Backend.USER_MANAGER, ExistenceCache.Kind.USER, Arrays.asList(USER, "jdoe", null));
+
+        assertEquals(Optional.of(true), cache.exists(Backend.SOURCE_MANAGER, ExistenceCache.Kind.FOLDER, "/kathra-projects/path1/components"));
+        assertEquals(Optional.of(true), cache.exists(Backend.USER_MANAGER, ExistenceCache.Kind.USER, USER));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void valid_entries_are_kept_between_runs() throws Exception {
+        String file = folder.getRoot().toPath().resolve("existence.json").toString();
+        ExistenceCache cache = ExistenceCache.load(file, clock, 10_000, 1_000);
+        cache.present(Backend.PIPELINE_MANAGER, ExistenceCache.Kind.FOLDER, "/kathra-projects/path1/components");
+        cache.absent(Backend.USER_MANAGER, ExistenceCache.Kind.USER, USER);
+        cache.save();
+
+        clock.advance(2_000);
+        ExistenceCache next = ExistenceCache.load(file, clock, 10_000, 1_000);
+
+        assertEquals(1, next.size());
+        assertEquals(Optional.of(true), next.exists(Backend.PIPELINE_MANAGER, ExistenceCache.Kind.FOLDER, "/kathra-projects/path1/components"));
+    }
+}
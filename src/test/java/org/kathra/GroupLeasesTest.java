@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class GroupLeasesTest {
+
+    private static final String GROUP = "/kathra-projects/path1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VirtualClock clock = new VirtualClock(0);
+
+    private GroupLeases leases(String holder) throws IOException {
+        return new GroupLeases(new FileLeaseStore(folder.getRoot().toPath()), holder, 1000, clock);
+    }
+
+    @Test
+    public void lease_held_by_another_run_is_skipped() throws IOException {
+        GroupLeases first = leases("first");
+        GroupLeases second = leases("second");
+
+        assertTrue(first.acquire(GROUP));
+        assertFalse(second.acquire(GROUP));
+        assertTrue(second.acquire("/kathra-projects/path2"));
+        assertEquals(1, second.getSkipped());
+
+        first.release(GROUP);
+        assertTrue(second.acquire(GROUP));
+    }
+
+    @Test
+    public void expired_lease_can_be_taken() throws IOException {
+        GroupLeases first = leases("first");
+        GroupLeases second = leases("second");
+
+        assertTrue(first.acquire(GROUP));
+        clock.advance(1001);
+
+        assertTrue(second.acquire(GROUP));
+    }
+
+    @Test
+    public void steps_renew_the_lease() throws Exception {
+        GroupLeases first = leases("first");
+        GroupLeases second = leases("second");
+        assertTrue(first.acquire(GROUP));
+
+        clock.advance(600);
+        first.aroundStep(GROUP, SyncStep.KEY_PAIR, () -> null);
+        clock.advance(600);
+
+        assertFalse(second.acquire(GROUP));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lost_lease_stops_the_steps() throws Exception {
+        GroupLeases first = leases("first");
+        GroupLeases second = leases("second");
+        assertTrue(first.acquire(GROUP));
+        clock.advance(1001);
+        assertTrue(second.acquire(GROUP));
+
+        first.aroundStep(GROUP, SyncStep.KEY_PAIR, () -> null);
+    }
+
+    @Test
+    public void release_of_a_lease_taken_over_keeps_the_new_holder() throws IOException {
+        GroupLeases first = leases("first");
+        GroupLeases second = leases("second");
+        assertTrue(first.acquire(GROUP));
+        clock.advance(1001);
+        assertTrue(second.acquire(GROUP));
+
+        first.release(GROUP);
+
+        assertFalse(leases("third").acquire(GROUP));
+    }
+
+    @Test
+    public void synchronization_skips_leased_groups() throws Exception {
+        leases("other run").acquire("kathra-projects/group0");
+        Simulation.Scenario scenario = new Simulation.Scenario().set("groups", "10").set("ready", "1")
+                .set("memberChurn", "0").set("errorRate", "0");
+        Simulation.Result all = new Simulation(scenario).run();
+        Simulation.Result leased = new Simulation(scenario).leases(leases("this run")).run();
+
+        assertEquals(all.getCalls().get(Backend.SOURCE_MANAGER) - 1, (long) leased.getCalls().get(Backend.SOURCE_MANAGER));
+    }
+}
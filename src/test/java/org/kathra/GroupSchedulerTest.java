@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.core.model.Assignation;
+import org.kathra.core.model.Group;
+import org.kathra.core.model.Resource;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class GroupSchedulerTest {
+
+    private final MemberSets memberSets = new MemberSets(new MemberDictionary());
+    private final Map<String, GroupSnapshot> resourceManagerGroups = new HashMap<>();
+    private final List<GroupSnapshot> userManagerGroups = new ArrayList<>();
+
+    private void given_group(String path, Resource.StatusEnum status, String... members) {
+        Group group = new Group().path(path).members(Arrays.stream(members).map(m -> new Assignation().name(m))
+                .collect(Collectors.toList()));
+        userManagerGroups.add(GroupSnapshot.of(group, memberSets));
+        if (status != null) {
+            Group existing = new Group().path(path);
+            existing.setStatus(status);
+            resourceManagerGroups.put(path, GroupSnapshot.of(existing));
+        }
+    }
+
+    private List<String> order(SyncHistory history) {
+        return new GroupScheduler(resourceManagerGroups, memberSets, history).order(userManagerGroups).stream()
+                .map(t -> t.getGroup().getPath() + ":" + t.getPriority().tag()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void new_groups_go_first_in_listing_order() {
+        given_group("ready1", Resource.StatusEnum.READY, "alice");
+        given_group("new1", null, "alice");
+        given_group("pending1", Resource.StatusEnum.PENDING, "bob");
+        given_group("ready2", Resource.StatusEnum.READY, "bob");
+
+        assertEquals(Arrays.asList("new1:provision", "pending1:provision", "ready1:refresh", "ready2:refresh"),
+                order(null));
+    }
+
+    @Test
+    public void groups_with_changed_members_go_before_the_refreshes() {
+        given_group("ready1", Resource.StatusEnum.READY, "alice");
+        given_group("ready2", Resource.StatusEnum.READY, "alice", "bob");
+        SyncHistory history = new SyncHistory(null);
+        for (GroupScheduler.Task task : new GroupScheduler(resourceManagerGroups, memberSets, history).order(userManagerGroups))
+            history.synchronizedMembers(task.getGroup().getPath(), task.getMembersFingerprint());
+
+        userManagerGroups.clear();
+        given_group("ready1", Resource.StatusEnum.READY, "alice");
+        given_group("ready2", Resource.StatusEnum.READY, "alice", "carol");
+
+        assertEquals(Arrays.asList("ready2:members-changed", "ready1:refresh"), order(history));
+    }
+
+    @Test
+    public void fingerprint_does_not_depend_on_member_ids() {
+        MemberSets other = new MemberSets(new MemberDictionary());
+        other.ofAssignations(Collections.singletonList(new Assignation().name("zed")));
+
+        long fingerprint = memberSets.fingerprint(memberSets.ofAssignations(Arrays.asList(
+                new Assignation().name("alice"), new Assignation().name("bob"))));
+        long otherFingerprint = other.fingerprint(other.ofAssignations(Arrays.asList(
+                new Assignation().name("bob"), new Assignation().name("alice"))));
+
+        assertEquals(fingerprint, otherFingerprint);
+    }
+
+    @Test
+    public void slowest_groups_start_first_within_a_priority() {
+        given_group("new1", null, "alice");
+        given_group("ready1", Resource.StatusEnum.READY, "alice");
+        given_group("ready2", Resource.StatusEnum.READY, "alice");
+        given_group("ready3", Resource.StatusEnum.READY, "alice");
+        SyncHistory history = new SyncHistory(null);
+        for (GroupSnapshot group : userManagerGroups)
+            history.synchronizedMembers(group.getPath(), memberSets.fingerprint(group.getMembers()));
+        history.synchronizedIn("ready1", 100);
+        history.synchronizedIn("ready3", 5000);
+
+        assertEquals(Arrays.asList("new1:provision", "ready3:refresh", "ready2:refresh", "ready1:refresh"),
+                order(history));
+    }
+
+    @Test
+    public void durations_are_averaged_over_the_runs() {
+        SyncHistory history = new SyncHistory(null);
+        assertEquals(-1, history.expectedDurationMs("ready1"));
+        history.synchronizedIn("ready1", 1000);
+        history.synchronizedIn("ready1", 3000);
+
+        assertEquals(2000, history.expectedDurationMs("ready1"));
+    }
+
+    @Test
+    public void longest_first_shortens_a_skewed_run() {
+        List<Long> listed = new ArrayList<>();
+        for (int i = 0; i < 400; i++)
+            listed.add(1000L);
+        for (int i = 0; i < 4; i++)
+            listed.add(60_000L);
+        List<Long> longestFirst = new ArrayList<>(listed);
+        longestFirst.sort(Comparator.reverseOrder());
+
+        long listedMakespan = makespan(listed, 8);
+        long lptMakespan = makespan(longestFirst, 8);
+
+        assertEquals(110_000, listedMakespan);
+        assertEquals(80_000, lptMakespan);
+    }
+
+    /**
+     * Time taken by workers each starting the next task of the list as soon as they are free.
+     */
+    private static long makespan(List<Long> durationsMs, int workers) {
+        PriorityQueue<Long> freeAt = new PriorityQueue<>();
+        for (int i = 0; i < workers; i++)
+            freeAt.add(0L);
+        long makespan = 0;
+        for (long duration : durationsMs) {
+            long end = freeAt.poll() + duration;
+            makespan = Math.max(makespan, end);
+            freeAt.add(end);
+        }
+        return makespan;
+    }
+}
+
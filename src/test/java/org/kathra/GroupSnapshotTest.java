@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.core.model.Assignation;
+import org.kathra.core.model.Group;
+import org.kathra.core.model.Resource;
+import org.kathra.core.model.User;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class GroupSnapshotTest {
+
+    @Test
+    public void snapshot_keeps_the_fields_read_by_the_synchronizer() {
+        Group group = new Group().path(new String("/kathra-projects/path1"))
+                .pipelineFolderStatus(Group.PipelineFolderStatusEnum.READY)
+                .technicalUser(new User().id("user1").name("path1_technicaluser"));
+        group.setId("1");
+        group.setName("path1");
+        group.setStatus(Resource.StatusEnum.PENDING);
+
+        GroupSnapshot snapshot = GroupSnapshot.of(group);
+
+        assertSame("/kathra-projects/path1", snapshot.getPath());
+        assertEquals("1", snapshot.getId());
+        assertEquals("user1", snapshot.getTechnicalUserId());
+        assertEquals(Group.PipelineFolderStatusEnum.READY, snapshot.getPipelineFolderStatus());
+        assertNull(snapshot.getSourceRepositoryStatus());
+        assertFalse(snapshot.isReady());
+        assertTrue(snapshot.getMembers().isEmpty());
+    }
+
+    @Test
+    public void members_are_interned_and_restored() {
+        MemberSets memberSets = new MemberSets(new MemberDictionary());
+        Group group = new Group().path("/kathra-projects/path1")
+                .members(Arrays.asList(new Assignation().name("alice"), new Assignation().name("bob")));
+        group.setStatus(Resource.StatusEnum.READY);
+
+        GroupSnapshot snapshot = GroupSnapshot.of(group, memberSets);
+        Group restored = snapshot.toGroup(memberSets.getDictionary());
+
+        assertTrue(snapshot.isReady());
+        assertEquals(2, snapshot.getMembers().getCardinality());
+        assertEquals(2, memberSets.getDictionary().size());
+        assertEquals("/kathra-projects/path1", restored.getPath());
+        assertEquals(Resource.StatusEnum.READY, restored.getStatus());
+        assertEquals(Arrays.asList("alice", "bob"), Arrays.asList(restored.getMembers().get(0).getName(),
+                restored.getMembers().get(1).getName()));
+        assertNull(restored.getTechnicalUser());
+    }
+
+    @Test
+    public void members_returned_are_a_copy() {
+        MemberSets memberSets = new MemberSets(new MemberDictionary());
+        Group group = new Group().path("/kathra-projects/path1")
+                .members(Arrays.asList(new Assignation().name("alice")));
+        GroupSnapshot snapshot = GroupSnapshot.of(group, memberSets);
+
+        snapshot.getMembers().add(42);
+
+        assertEquals(1, snapshot.getMembers().getCardinality());
+    }
+}
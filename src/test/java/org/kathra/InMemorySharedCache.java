@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link SharedCache} kept in memory, shared by the replicas of a test.
+ */
+public class InMemorySharedCache implements SharedCache {
+
+    final private Clock clock;
+    final private Map<String, Long> versions = new ConcurrentHashMap<>();
+    final private Map<String, Entry> values = new ConcurrentHashMap<>();
+    final private Map<String, Long> expiries = new ConcurrentHashMap<>();
+    final private List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public InMemorySharedCache(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized Entry get(String key) {
+        long version = versions.getOrDefault(key, 0L);
+        Entry entry = values.get(key);
+        if (entry == null || entry.getVersion() != version || expiries.get(key) <= clock.millis())
+            return new Entry(version, null);
+        return new Entry(version, entry.getValue(), expiries.get(key) - clock.millis());
+    }
+
+    @Override
+    public synchronized boolean put(String key, long version, String value, long ttlMs) {
+        if (versions.getOrDefault(key, 0L) != version)
+            return false;
+        values.put(key, new Entry(version, value));
+        expiries.put(key, clock.millis() + ttlMs);
+        return true;
+    }
+
+    @Override
+    public void invalidate(String key) {
+        synchronized (this) {
+            versions.merge(key, 1L, Long::sum);
+        }
+        listeners.forEach(listener -> listener.accept(key));
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) throws IOException {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+    }
+}
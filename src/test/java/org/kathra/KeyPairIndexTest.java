@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.core.model.Group;
+import org.kathra.core.model.KeyPair;
+import org.kathra.resourcemanager.client.KeyPairsClient;
+import org.kathra.utils.ApiException;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class KeyPairIndexTest {
+
+    private static KeyPair keyPair(String id, String groupId) {
+        return new KeyPair().id(id).group(new Group().id(groupId)).privateKey("private" + id).publicKey("public" + id);
+    }
+
+    @Test
+    public void key_pairs_are_indexed_without_private_key() throws ApiException {
+        KeyPairsClient keyPairsClient = mock(KeyPairsClient.class);
+        KeyPair first = keyPair("1", "a");
+        when(keyPairsClient.getKeyPairs()).thenReturn(Arrays.asList(first, keyPair("2", "b"), keyPair("3", "a")));
+        when(keyPairsClient.getKeyPair("1")).thenReturn(first);
+        KeyPairIndex index = new KeyPairIndex(keyPairsClient, new SyncContext());
+
+        KeyPair indexed = index.get("a").get();
+
+        assertEquals("1", indexed.getId());
+        assertEquals("public1", indexed.getPublicKey());
+        assertNull(indexed.getPrivateKey());
+        assertEquals("private1", first.getPrivateKey());
+        assertEquals("private1", index.withPrivateKey(indexed).getPrivateKey());
+        assertFalse(index.get("c").isPresent());
+        assertEquals(2, index.size());
+        verify(keyPairsClient, times(1)).getKeyPairs();
+    }
+
+    @Test
+    public void added_key_pairs_are_found() throws ApiException {
+        KeyPairsClient keyPairsClient = mock(KeyPairsClient.class);
+        KeyPairIndex index = new KeyPairIndex(keyPairsClient, new SyncContext());
+        KeyPair added = keyPair("4", "d");
+
+        index.put(added);
+
+        assertEquals("4", index.get("d").get().getId());
+        assertSame(added, index.withPrivateKey(added));
+        verify(keyPairsClient, never()).getKeyPair(anyString());
+    }
+
+    @Test
+    public void key_pairs_without_private_key_are_rejected() throws ApiException {
+        KeyPairsClient keyPairsClient = mock(KeyPairsClient.class);
+        when(keyPairsClient.getKeyPair("5")).thenReturn(new KeyPair().id("5").publicKey("public5"));
+        KeyPairIndex index = new KeyPairIndex(keyPairsClient, new SyncContext());
+
+        try {
+            index.withPrivateKey(new KeyPair().group(new Group().id("e")).publicKey("public"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Key pair of group e has neither private key nor id", e.getMessage());
+        }
+        try {
+            index.withPrivateKey(new KeyPair().id("5").publicKey("public5"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Key pair 5 has no private key", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.core.model.Assignation;
+import org.kathra.core.model.Membership;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MemberSetsTest {
+
+    @Test
+    public void names_are_interned_once_across_groups_and_providers() {
+        MemberSets memberSets = new MemberSets(new MemberDictionary());
+        RoaringBitmap userManager = memberSets.ofAssignations(Arrays.asList(new Assignation().name("alice"),
+                new Assignation().name("bob")));
+        RoaringBitmap sourceManager = memberSets.ofMemberships(Arrays.asList(new Membership().memberName("bob"),
+                new Membership().memberName("carol")));
+
+        assertEquals(3, memberSets.getDictionary().size());
+        assertEquals(1, RoaringBitmap.and(userManager, sourceManager).getCardinality());
+        assertEquals("alice", memberSets.getDictionary().name(RoaringBitmap.andNot(userManager, sourceManager).first()));
+    }
+
+    @Test
+    public void membership_is_checked_without_interning() {
+        MemberSets memberSets = new MemberSets(new MemberDictionary());
+        RoaringBitmap members = memberSets.ofAssignations(Arrays.asList(new Assignation().name("alice")));
+        memberSets.ofAssignations(Arrays.asList(new Assignation().name("bob")));
+
+        assertTrue(memberSets.isMember(members, "alice"));
+        assertFalse(memberSets.isMember(members, "bob"));
+        assertFalse(memberSets.isMember(members, "path1_technicaluser"));
+        assertEquals(2, memberSets.getDictionary().size());
+    }
+
+    @Test
+    public void unknown_names_are_not_interned_by_lookups() {
+        MemberDictionary dictionary = new MemberDictionary();
+        assertEquals(-1, dictionary.find("alice"));
+        assertEquals(0, dictionary.size());
+        assertEquals(0, dictionary.id("alice"));
+        assertEquals(0, dictionary.id("alice"));
+        assertEquals(0, dictionary.find("alice"));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.core.model.Membership;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MembershipDiffTest {
+
+    private static Membership user(String name, Membership.RoleEnum role) {
+        return new Membership().memberName(name).memberType(Membership.MemberTypeEnum.USER).role(role);
+    }
+
+    private static Membership group(String name, Membership.RoleEnum role) {
+        return new Membership().memberName(name).memberType(Membership.MemberTypeEnum.GROUP).role(role);
+    }
+
+    @Test
+    public void additions_updates_and_removals_are_minimal() {
+        List<Membership> desired = Arrays.asList(user("kept", Membership.RoleEnum.MANAGER),
+                user("promoted", Membership.RoleEnum.MANAGER), user("new", Membership.RoleEnum.CONTRIBUTOR),
+                group("kept", Membership.RoleEnum.MANAGER));
+        List<Membership> observed = Arrays.asList(user("kept", Membership.RoleEnum.MANAGER),
+                user("promoted", Membership.RoleEnum.CONTRIBUTOR), user("gone", Membership.RoleEnum.MANAGER));
+
+        MembershipDiff diff = MembershipDiff.between(desired, observed);
+
+        assertEquals(2, diff.getAdditions().size());
+        assertEquals("new", diff.getAdditions().get(0).getMemberName());
+        assertEquals(Membership.MemberTypeEnum.GROUP, diff.getAdditions().get(1).getMemberType());
+        assertEquals(1, diff.getUpdates().size());
+        assertEquals(Membership.RoleEnum.MANAGER, diff.getUpdates().get(0).getRole());
+        assertEquals(1, diff.getRemovals().size());
+        assertEquals("gone", diff.getRemovals().get(0).getMemberName());
+    }
+
+    @Test
+    public void duplicates_and_missing_roles_are_tolerated() {
+        List<Membership> desired = Arrays.asList(user("twice", Membership.RoleEnum.CONTRIBUTOR),
+                user("twice", Membership.RoleEnum.MANAGER), new Membership().memberName("untyped").role(Membership.RoleEnum.MANAGER));
+        List<Membership> observed = Arrays.asList(new Membership().memberName("twice"),
+                new Membership().memberName("twice"), user("untyped", Membership.RoleEnum.MANAGER));
+
+        MembershipDiff diff = MembershipDiff.between(desired, observed);
+
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void large_groups_are_diffed() {
+        List<Membership> desired = new ArrayList<>();
+        List<Membership> observed = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            desired.add(user("user" + i, Membership.RoleEnum.MANAGER));
+            observed.add(user("user" + (i + 1000), Membership.RoleEnum.MANAGER));
+        }
+
+        MembershipDiff diff = MembershipDiff.between(desired, observed);
+
+        assertEquals(1000, diff.getAdditions().size());
+        assertEquals(1000, diff.getRemovals().size());
+        assertTrue(MembershipDiff.between(desired, Collections.emptyList()).getRemovals().isEmpty());
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+package org.kathra;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kathra.core.model.BinaryRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OperationJournalTest {
+
+    private static final String GROUP = "/kathra-projects/path1";
+    private static final String OPERATION = "nexus addBinaryRepository repository1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private String file() {
+        return folder.getRoot().toPath().resolve("journal.jsonl").toString();
+    }
+
+    private BinaryRepository addRepository(OperationJournal journal, boolean crash) throws Exception {
+        return journal.aroundStep(GROUP, SyncStep.BINARY_REPOSITORY, () -> {
+            BinaryRepository added = journal.once(OPERATION, BinaryRepository.class, () -> {
+                calls.incrementAndGet();
+                return new BinaryRepository().providerId("nexus" + calls.get()).url("https://nexus/path1-maven");
+            });
+            if (crash)
+                throw new IllegalStateException("killed before updateBinaryRepositoryAttributes");
+            return added;
+        });
+    }
+
+    @Test
+    public void interrupted_step_resumes_after_its_last_completed_call() throws Exception {
+        OperationJournal crashed = OperationJournal.open(file(), 100);
+        try {
+            addRepository(crashed, true);
+            fail("step not interrupted");
+        } catch (IllegalStateException e) {
+            // the process dies here
+        }
+
+        OperationJournal journal = OperationJournal.open(file(), 100);
+        assertEquals(1, journal.steps());
+        BinaryRepository resumed = addRepository(journal, false);
+
+        assertEquals(1, calls.get());
+        assertEquals("nexus1", resumed.getProviderId());
+        assertEquals(0, journal.steps());
+    }
+
+    @Test
+    public void completed_step_is_made_again_by_the_next_run() throws Exception {
+        OperationJournal journal = OperationJournal.open(file(), 100);
+        addRepository(journal, false);
+        journal.close();
+
+        addRepository(OperationJournal.open(file(), 100), false);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void calls_outside_of_a_step_are_not_journaled() throws Exception {
+        OperationJournal journal = OperationJournal.open(file(), 100);
+
+        journal.once(OPERATION, Void.class, () -> {
+            calls.incrementAndGet();
+            return null;
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals(0, journal.steps());
+    }
+
+    @Test
+    public void record_torn_by_a_crash_is_ignored() throws Exception {
+        OperationJournal crashed = OperationJournal.open(file(), 100);
+        try {
+            addRepository(crashed, true);
+        } catch (IllegalStateException e) {
+            // the process dies while appending the next record
+        }
+        Files.write(folder.getRoot().toPath().resolve("journal.jsonl"), "{\"type\":\"do".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        BinaryRepository resumed = addRepository(OperationJournal.open(file(), 100), false);
+
+        assertEquals(1, calls.get());
+        assertEquals("nexus1", resumed.getProviderId());
+    }
+
+    @Test
+    public void compaction_keeps_the_records_of_the_steps_in_progress() throws Exception {
+        OperationJournal journal = OperationJournal.open(file(), 4);
+        try {
+            addRepository(journal, true);
+        } catch (IllegalStateException e) {
+            // left in progress
+        }
+        for (int i = 0; i < 10; i++) {
+            String path = "/kathra-projects/group" + i;
+            journal.aroundStep(path, SyncStep.PIPELINE, () -> journal.once("pipeline-manager createFolder " + path,
+                    Void.class, () -> null));
+        }
+
+        assertTrue(Files.readAllLines(folder.getRoot().toPath().resolve("journal.jsonl")).size() <= 4);
+        assertEquals(1, OperationJournal.open(file(), 4).steps());
+    }
+
+    @Test
+    public void steps_failing_past_the_maximum_age_are_dropped() throws Exception {
+        VirtualClock clock = new VirtualClock(1_600_000_000_000L);
+        OperationJournal crashed = OperationJournal.open(file(), 100, 10_000, clock);
+        try {
+            addRepository(crashed, true);
+        } catch (IllegalStateException e) {
+            // the step fails on every run
+        }
+        clock.advance(5_000);
+        assertEquals(1, OperationJournal.open(file(), 100, 10_000, clock).steps());
+
+        clock.advance(6_000);
+        OperationJournal journal = OperationJournal.open(file(), 100, 10_000, clock);
+
+        assertEquals(0, journal.steps());
+        assertEquals(0, OperationJournal.open(file(), 100, 10_000, clock).steps());
+    }
+}
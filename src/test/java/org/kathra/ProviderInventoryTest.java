@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.binaryrepositorymanager.client.BinaryRepositoryManagerClient;
+import org.kathra.core.model.BinaryRepository;
+import org.kathra.utils.ApiException;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class ProviderInventoryTest {
+
+    @Test
+    public void presence_is_answered_from_one_listing_per_provider() throws ApiException {
+        BinaryRepositoryManagerClient nexus = mock(BinaryRepositoryManagerClient.class);
+        when(nexus.getBinaryRepositories()).thenReturn(Arrays.asList(
+                new BinaryRepository().providerId("maven"), new BinaryRepository().id("pip")));
+        ProviderInventory inventory = new ProviderInventory(new SyncContext());
+
+        assertTrue(inventory.knownToExist(Backend.NEXUS, nexus, "maven"));
+        assertTrue(inventory.knownToExist(Backend.NEXUS, nexus, "pip"));
+        assertFalse(inventory.knownToExist(Backend.NEXUS, nexus, "npm"));
+        inventory.added(Backend.NEXUS, "npm");
+        assertTrue(inventory.knownToExist(Backend.NEXUS, nexus, "npm"));
+
+        verify(nexus, times(1)).getBinaryRepositories();
+        verify(nexus, never()).getBinaryRepository(anyString());
+    }
+
+    @Test
+    public void repository_missing_from_the_listing_stays_unknown_until_probed() throws ApiException {
+        BinaryRepositoryManagerClient nexus = mock(BinaryRepositoryManagerClient.class);
+        when(nexus.getBinaryRepositories()).thenReturn(Arrays.asList(new BinaryRepository().providerId("maven")));
+        ProviderInventory inventory = new ProviderInventory(new SyncContext());
+
+        assertFalse(inventory.knownToExist(Backend.NEXUS, nexus, "npm"));
+        inventory.probed(Backend.NEXUS, "npm", true);
+        assertTrue(inventory.knownToExist(Backend.NEXUS, nexus, "npm"));
+    }
+
+    @Test
+    public void nothing_is_known_when_the_provider_cannot_list() throws ApiException {
+        BinaryRepositoryManagerClient harbor = mock(BinaryRepositoryManagerClient.class);
+        when(harbor.getBinaryRepositories()).thenThrow(new ApiException(501, "Not implemented"));
+        ProviderInventory inventory = new ProviderInventory(new SyncContext());
+
+        assertFalse(inventory.knownToExist(Backend.HARBOR, harbor, "docker"));
+        assertFalse(inventory.knownToExist(Backend.HARBOR, harbor, "helm"));
+
+        verify(harbor, times(1)).getBinaryRepositories();
+    }
+
+    @Test
+    public void probes_answer_when_the_provider_cannot_list() throws ApiException {
+        BinaryRepositoryManagerClient harbor = mock(BinaryRepositoryManagerClient.class);
+        when(harbor.getBinaryRepositories()).thenThrow(new ApiException(501, "Not implemented"));
+        ProviderInventory inventory = new ProviderInventory(new SyncContext());
+
+        inventory.probed(Backend.HARBOR, "docker", true);
+        inventory.probed(Backend.HARBOR, "helm", false);
+
+        assertTrue(inventory.knownToExist(Backend.HARBOR, harbor, "docker"));
+        assertFalse(inventory.knownToExist(Backend.HARBOR, harbor, "helm"));
+        inventory.added(Backend.HARBOR, "helm");
+        assertTrue(inventory.knownToExist(Backend.HARBOR, harbor, "helm"));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RedisSharedCacheTest {
+
+    private RedisSharedCache.Connection connection(String replies, ByteArrayOutputStream out) {
+        return new RedisSharedCache.Connection(new ByteArrayInputStream(replies.getBytes(StandardCharsets.UTF_8)), out);
+    }
+
+    @Test
+    public void commands_are_sent_as_arrays_of_bulk_strings() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("OK", connection("+OK\r\n", out).command("SET", "kathra-sync:version:users", "é"));
+
+        assertEquals("*3\r\n$3\r\nSET\r\n$25\r\nkathra-sync:version:users\r\n$2\r\né\r\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void replies_are_read_by_type() throws Exception {
+        RedisSharedCache.Connection connection = connection(
+                ":3\r\n$-1\r\n$4\r\n2\nab\r\n*2\r\n$1\r\n3\r\n$-1\r\n", new ByteArrayOutputStream());
+
+        assertEquals(3L, connection.read());
+        assertNull(connection.read());
+        assertEquals("2\nab", connection.read());
+        assertEquals(Arrays.asList("3", null), connection.read());
+    }
+
+    @Test
+    public void errors_are_thrown() {
+        try {
+            connection("-NOSCRIPT No matching script\r\n", new ByteArrayOutputStream()).read();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Redis error: NOSCRIPT No matching script", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class RunBudgetTest {
+
+    private final VirtualClock clock = new VirtualClock(0);
+
+    @Test
+    public void groups_start_until_the_budget_minus_margin() {
+        RunBudget budget = new RunBudget(clock, 30_000, 3_000);
+
+        assertTrue(budget.canStart(-1));
+        clock.advance(20_000);
+        assertTrue(budget.canStart(5_000));
+        assertFalse(budget.canStart(8_000));
+        assertFalse(budget.canStart(-1));
+        assertTrue(budget.isStopped());
+        assertEquals(2, budget.getDeferred());
+    }
+
+    @Test
+    public void no_budget_never_stops() {
+        RunBudget budget = new RunBudget(clock, 0, 0);
+        clock.advance(Long.MAX_VALUE / 2);
+
+        assertTrue(budget.canStart(1_000_000));
+    }
+
+    @Test
+    public void termination_stops_the_run_and_waits_for_it() throws Exception {
+        RunBudget budget = new RunBudget(clock, 0, 0);
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread hook = budget.shutdownHook(finished, 10_000);
+
+        hook.start();
+        while (!budget.isStopped())
+            Thread.sleep(1);
+        assertFalse(budget.canStart(-1));
+        assertTrue(hook.isAlive());
+        finished.countDown();
+        hook.join(10_000);
+        assertFalse(hook.isAlive());
+    }
+
+    @Test
+    public void hook_does_nothing_after_the_run() {
+        RunBudget budget = new RunBudget(clock, 0, 0);
+        CountDownLatch finished = new CountDownLatch(1);
+        finished.countDown();
+
+        budget.shutdownHook(finished, 10_000).run();
+
+        assertFalse(budget.isStopped());
+    }
+
+    @Test
+    public void stopped_run_is_resumed_by_the_next_one() throws Exception {
+        Simulation.Scenario scenario = new Simulation.Scenario().set("groups", "100").set("ready", "1")
+                .set("memberChurn", "0").set("errorRate", "0");
+        Simulation.Result all = new Simulation(scenario).run();
+        long groupCalls = all.getCalls().get(Backend.SOURCE_MANAGER);
+        RunCursor cursor = new RunCursor(null);
+        scenario.set("budgetMs", Long.toString(all.getMakespanMs() * 6 / 10));
+
+        Simulation.Result first = new Simulation(scenario).cursor(cursor).run();
+        int resumedFrom = cursor.size();
+        Simulation.Result second = new Simulation(scenario).cursor(cursor).run();
+
+        assertTrue(resumedFrom > 0 && resumedFrom < 100);
+        assertEquals(groupCalls, first.getCalls().get(Backend.SOURCE_MANAGER) + second.getCalls().get(Backend.SOURCE_MANAGER));
+        assertEquals(0, cursor.size());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.utils.ApiException;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RunReporterTest {
+
+    private RunReport run(RunReporter reporter, String failingPath) throws Exception {
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(reporter);
+        reporter.start();
+        for (String path : new String[]{"/kathra-projects/path0", "/kathra-projects/path1"}) {
+            try {
+                instrumentation.step(path, SyncStep.GROUP, () -> {
+                    instrumentation.step(path, SyncStep.PIPELINE, () -> {
+                        instrumentation.run(Backend.PIPELINE_MANAGER, "createFolder", () -> {});
+                        if (path.equals(failingPath))
+                            throw new ApiException("Foobar");
+                        return null;
+                    });
+                    return false;
+                });
+            } catch (ApiException e) {
+                // failed group
+            }
+        }
+        instrumentation.step("/kathra-projects/path2", SyncStep.GROUP, () -> {
+            reporter.membersOnly();
+            return true;
+        });
+        return reporter.build();
+    }
+
+    @Test
+    public void report_contains_groups_steps_and_calls() throws Exception {
+        RunReport report = run(new RunReporter(null, 2), "/kathra-projects/path1");
+
+        assertEquals(3, report.getGroups().size());
+        assertEquals(2, report.getSlowestGroups().size());
+        assertEquals(Long.valueOf(2), report.getCallsByBackend().get("pipeline-manager"));
+        assertEquals(Integer.valueOf(1), report.getOutcomes().get("synchronized"));
+        assertEquals(Integer.valueOf(1), report.getOutcomes().get("failed"));
+        assertEquals(Integer.valueOf(1), report.getOutcomes().get("members-refreshed"));
+        RunReport.GroupReport first = report.getGroups().get(0);
+        assertTrue(first.getStepTimeMs().containsKey("pipeline"));
+        assertEquals(Long.valueOf(1), first.getCallsByBackend().get("pipeline-manager"));
+    }
+
+    @Test
+    public void durations_are_measured_on_the_clock() throws Exception {
+        VirtualClock clock = new VirtualClock(1_000);
+        RunReporter reporter = new RunReporter(null, 10).clock(clock);
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(reporter);
+        reporter.start();
+        clock.advance(100);
+        instrumentation.step("/kathra-projects/path0", SyncStep.GROUP, () ->
+                instrumentation.step("/kathra-projects/path0", SyncStep.PIPELINE, () -> {
+                    instrumentation.run(Backend.PIPELINE_MANAGER, "createFolder", () -> clock.advance(250));
+                    return false;
+                }));
+
+        RunReport report = reporter.build();
+
+        assertEquals(350, report.getWallTimeMs());
+        assertEquals(Long.valueOf(250), report.getCallTimeMsByBackend().get("pipeline-manager"));
+        assertEquals(Long.valueOf(250), report.getStepTimeMs().get("pipeline"));
+        assertEquals(250, report.getGroups().get(0).getWallTimeMs());
+        assertEquals(350, report.getGroups().get(0).getFinishedAtMs());
+    }
+
+    @Test
+    public void compare_reports_changed_outcomes() throws Exception {
+        RunReport baseline = run(new RunReporter(null, 10), null);
+        RunReport current = run(new RunReporter(null, 10), "/kathra-projects/path1");
+
+        List<String> lines = RunReport.compare(baseline, current, 10);
+
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("wall time")));
+        assertTrue(lines.contains("group /kathra-projects/path1 outcome: synchronized -> failed"));
+    }
+
+    @Test
+    public void time_to_ready_covers_the_provisioned_groups() throws Exception {
+        RunReporter reporter = new RunReporter(null, 10);
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(reporter);
+        reporter.start();
+        reporter.priority("/kathra-projects/path0", GroupPriority.PROVISION);
+        reporter.priority("/kathra-projects/path1", GroupPriority.REFRESH);
+        instrumentation.step("/kathra-projects/path0", SyncStep.GROUP, () -> false);
+        instrumentation.step("/kathra-projects/path1", SyncStep.GROUP, () -> {
+            reporter.membersOnly();
+            return true;
+        });
+
+        RunReport report = reporter.build();
+
+        assertEquals(Long.valueOf(1), report.getTimeToReadyMs().get("count"));
+        assertEquals(report.getGroups().get(0).getFinishedAtMs(), (long) report.getTimeToReadyMs().get("max"));
+        assertEquals("provision", report.getGroups().get(0).getPriority());
+    }
+
+    @Test
+    public void deferred_steps_are_counted_once() throws Exception {
+        RunReporter reporter = new RunReporter(null, 10);
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(reporter);
+        reporter.start();
+        instrumentation.step("/kathra-projects/path0", SyncStep.GROUP, () -> {
+            try {
+                instrumentation.step("/kathra-projects/path0", SyncStep.BINARY_REPOSITORY, () -> {
+                    throw new DeadlineExceededException("No time left");
+                });
+            } catch (DeadlineExceededException e) {
+                // step deferred, the group goes on
+            }
+            return false;
+        });
+        try {
+            instrumentation.step("/kathra-projects/path1", SyncStep.GROUP, () -> {
+                instrumentation.step("/kathra-projects/path1", SyncStep.KEY_PAIR, () -> {
+                    throw new DeadlineExceededException("No time left");
+                });
+                return false;
+            });
+        } catch (DeadlineExceededException e) {
+            // group deferred
+        }
+
+        RunReport report = reporter.build();
+
+        assertEquals(Integer.valueOf(2), report.getOutcomes().get("deferred"));
+        assertEquals(Long.valueOf(1), report.getDeferredSteps().get("binary-repository"));
+        assertEquals(Long.valueOf(1), report.getDeferredSteps().get("key-pair"));
+        assertNull(report.getDeferredSteps().get("group"));
+    }
+
+    @Test
+    public void failed_refresh_of_a_ready_group_is_a_failure() throws Exception {
+        RunReporter reporter = new RunReporter(null, 10);
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(reporter);
+        reporter.start();
+        instrumentation.step("/kathra-projects/path0", SyncStep.GROUP, () -> {
+            reporter.membersOnly();
+            try {
+                instrumentation.step("/kathra-projects/path0", SyncStep.MEMBERSHIP, () -> {
+                    throw new ApiException("Foobar");
+                });
+            } catch (ApiException e) {
+                return false;
+            }
+            return true;
+        });
+
+        assertEquals(Integer.valueOf(1), reporter.build().getOutcomes().get("failed"));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShardTest {
+
+    private static String path(int group) {
+        return "/kathra-projects/path" + group;
+    }
+
+    @Test
+    public void each_group_is_owned_by_exactly_one_shard() {
+        int[] owned = new int[4];
+        for (int group = 0; group < 10000; group++) {
+            int owners = 0;
+            for (int index = 0; index < 4; index++) {
+                if (new Shard(index, 4).owns(path(group))) {
+                    owners++;
+                    owned[index]++;
+                }
+            }
+            assertEquals(1, owners);
+        }
+        for (int count : owned)
+            assertTrue("unbalanced shards: " + count, count > 2200 && count < 2800);
+    }
+
+    @Test
+    public void adding_a_shard_only_moves_groups_to_it() {
+        for (int group = 0; group < 10000; group++) {
+            int before = Shard.owner(path(group), 4);
+            int after = Shard.owner(path(group), 5);
+            assertTrue(after == before || after == 4);
+        }
+    }
+
+    @Test
+    public void single_shard_owns_everything() {
+        assertTrue(Shard.ALL.owns(path(1)));
+        assertTrue(Shard.ALL.owns(null));
+        assertEquals("report.json", Shard.ALL.file("report.json"));
+    }
+
+    @Test
+    public void files_are_named_after_the_shard() {
+        assertEquals("report.shard-2.json", new Shard(2, 3).file("report.json"));
+        assertEquals("/tmp/run.d/traffic.shard-0", new Shard(0, 3).file("/tmp/run.d/traffic"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void index_must_be_lower_than_count() {
+        new Shard(3, 3);
+    }
+}
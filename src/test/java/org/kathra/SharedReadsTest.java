@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class SharedReadsTest {
+
+    private static final Type NAMES = new TypeToken<List<String>>() {}.getType();
+
+    private final VirtualClock clock = new VirtualClock(0);
+    private final InMemorySharedCache cache = new InMemorySharedCache(clock);
+    private final AtomicInteger managerReads = new AtomicInteger();
+
+    private List<String> readManager() {
+        managerReads.incrementAndGet();
+        return Arrays.asList("path1", "path2");
+    }
+
+    @Test
+    public void a_list_is_read_from_the_manager_once_for_all_replicas() throws Exception {
+        SharedReads first = new SharedReads(cache, clock, 10_000);
+        SharedReads second = new SharedReads(cache, clock, 10_000);
+
+        assertEquals(Arrays.asList("path1", "path2"), first.read("groups", NAMES, this::readManager));
+        assertEquals(Arrays.asList("path1", "path2"), first.read("groups", NAMES, this::readManager));
+        assertEquals(Arrays.asList("path1", "path2"), second.read("groups", NAMES, this::readManager));
+
+        assertEquals(1, managerReads.get());
+        assertEquals("localHits=1 sharedHits=0 managerReads=1", first.toString());
+        assertEquals("localHits=0 sharedHits=1 managerReads=0", second.toString());
+    }
+
+    @Test
+    public void a_list_expires_after_its_ttl() throws Exception {
+        SharedReads reads = new SharedReads(cache, clock, 10_000);
+        reads.read("groups", NAMES, this::readManager);
+
+        clock.advance(10_000);
+        reads.read("groups", NAMES, this::readManager);
+
+        assertEquals(2, managerReads.get());
+    }
+
+    @Test
+    public void an_invalidation_evicts_the_copies_of_every_replica() throws Exception {
+        SharedReads first = new SharedReads(cache, clock, 10_000);
+        SharedReads second = new SharedReads(cache, clock, 10_000);
+        first.read("groups", NAMES, this::readManager);
+        second.read("groups", NAMES, this::readManager);
+
+        first.invalidate("groups");
+        second.read("groups", NAMES, this::readManager);
+        first.read("groups", NAMES, this::readManager);
+
+        assertEquals(2, managerReads.get());
+    }
+
+    @Test
+    public void a_list_read_before_an_invalidation_is_not_shared() throws Exception {
+        SharedReads first = new SharedReads(cache, clock, 10_000);
+        SharedReads second = new SharedReads(cache, clock, 10_000);
+
+        first.read("groups", NAMES, () -> {
+            second.invalidate("groups");
+            return readManager();
+        });
+        second.read("groups", NAMES, this::readManager);
+        first.read("groups", NAMES, this::readManager);
+
+        assertEquals(2, managerReads.get());
+        assertEquals("localHits=0 sharedHits=1 managerReads=1", first.toString());
+    }
+
+    @Test
+    public void a_list_invalidated_while_stored_is_not_kept_locally() throws Exception {
+        SharedReads reads = new SharedReads(new InMemorySharedCache(clock) {
+            @Override
+            public synchronized boolean put(String key, long version, String value, long ttlMs) {
+                boolean stored = super.put(key, version, value, ttlMs);
+                // another replica creates a group before the local copy is stored
+                invalidate(key);
+                return stored;
+            }
+        }, clock, 10_000);
+
+        reads.read("groups", NAMES, this::readManager);
+        reads.read("groups", NAMES, this::readManager);
+
+        assertEquals(2, managerReads.get());
+        assertEquals("localHits=0 sharedHits=0 managerReads=2", reads.toString());
+    }
+
+    @Test
+    public void a_local_copy_of_a_shared_list_expires_with_it() throws Exception {
+        SharedReads first = new SharedReads(cache, clock, 10_000);
+        SharedReads second = new SharedReads(cache, clock, 10_000);
+        first.read("groups", NAMES, this::readManager);
+
+        clock.advance(8_000);
+        second.read("groups", NAMES, this::readManager);
+        clock.advance(2_000);
+        second.read("groups", NAMES, this::readManager);
+
+        assertEquals(2, managerReads.get());
+        assertEquals("localHits=0 sharedHits=1 managerReads=1", second.toString());
+    }
+
+    @Test
+    public void lists_are_read_from_the_manager_when_the_cache_is_unavailable() throws Exception {
+        SharedReads reads = new SharedReads(new InMemorySharedCache(clock) {
+            @Override
+            public Entry get(String key) {
+                throw new IllegalStateException("not expected");
+            }
+
+            @Override
+            public void subscribe(Consumer<String> listener) throws IOException {
+                throw new ConnectException("Connection refused");
+            }
+        }, clock, 10_000);
+
+        reads.read("groups", NAMES, this::readManager);
+        reads.read("groups", NAMES, this::readManager);
+
+        assertEquals(2, managerReads.get());
+    }
+
+    @Test
+    public void context_reads_directly_without_shared_cache() throws Exception {
+        SyncContext context = new SyncContext();
+        context.sharedRead("groups", NAMES, this::readManager);
+        context.sharedRead("groups", NAMES, this::readManager);
+        context.invalidateShared("groups");
+
+        assertEquals(2, managerReads.get());
+    }
+}
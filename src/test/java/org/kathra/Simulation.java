@@ -0,0 +1,566 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.kathra.binaryrepositorymanager.client.BinaryRepositoryManagerClient;
+import org.kathra.core.model.*;
+import org.kathra.pipelinemanager.client.PipelineManagerClient;
+import org.kathra.resourcemanager.client.BinaryRepositoriesClient;
+import org.kathra.resourcemanager.client.GroupsClient;
+import org.kathra.resourcemanager.client.KeyPairsClient;
+import org.kathra.resourcemanager.client.UsersClient;
+import org.kathra.sourcemanager.client.SourceManagerClient;
+import org.kathra.usermanager.client.UserManagerClient;
+import org.kathra.utils.ApiException;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Runs {@link UserSynchronizerManager} against in-memory fakes of every client in virtual time, with one
+ * {@link VirtualClock} timeline per worker (see {@link Timelines}); the makespan is the latest of them.
+ * Each downstream call advances the timeline of its worker by a log-normal latency drawn for its backend, may fail
+ * with a 503, and pays a login when the shared session token has expired. Draws are derived from the seed, the group
+ * being synchronized, the call's arguments and its occurrence within the group, so they do not depend on the order
+ * in which the workers make their calls; only the reads shared by concurrent groups make the numbers of a run with
+ * several workers vary slightly.
+ * <p>
+ * {@code main} takes key=value arguments overriding the {@link Scenario} fields, e.g. groups=10000 workers=8. The
+ * default scenario of 100 000 groups takes about half a minute, mostly spent scanning the user list for each new
+ * group and interning the members.
+ */
+public class Simulation {
+
+    public static class Scenario {
+        long seed = 42;
+        int groups = 100_000;
+        int members = 20;
+        double ready = 0.9;
+        double memberChurn = 0.1;
+        double errorRate = 0.001;
+        long tokenTtlMs = 300_000;
+        long loginMs = 300;
+        int shardIndex = 0;
+        int shardCount = 1;
+        int workers = 1;
+        long budgetMs = 0;
+        long groupBudgetMs = 0;
+        Map<Backend, double[]> latencyMs = new EnumMap<>(Backend.class);
+
+        public Scenario() {
+            latencyMs.put(Backend.USER_MANAGER, new double[]{40, 400});
+            latencyMs.put(Backend.RESOURCE_MANAGER, new double[]{30, 300});
+            latencyMs.put(Backend.SOURCE_MANAGER, new double[]{120, 1500});
+            latencyMs.put(Backend.PIPELINE_MANAGER, new double[]{80, 800});
+            latencyMs.put(Backend.NEXUS, new double[]{100, 1000});
+            latencyMs.put(Backend.HARBOR, new double[]{100, 1000});
+        }
+
+        public Scenario set(String key, String value) {
+            switch (key) {
+                case "seed": seed = Long.parseLong(value); break;
+                case "groups": groups = Integer.parseInt(value); break;
+                case "members": members = Integer.parseInt(value); break;
+                case "ready": ready = Double.parseDouble(value); break;
+                case "memberChurn": memberChurn = Double.parseDouble(value); break;
+                case "errorRate": errorRate = Double.parseDouble(value); break;
+                case "tokenTtlMs": tokenTtlMs = Long.parseLong(value); break;
+                case "loginMs": loginMs = Long.parseLong(value); break;
+                case "shardIndex": shardIndex = Integer.parseInt(value); break;
+                case "shardCount": shardCount = Integer.parseInt(value); break;
+                case "workers": workers = Integer.parseInt(value); break;
+                case "budgetMs": budgetMs = Long.parseLong(value); break;
+                case "groupBudgetMs": groupBudgetMs = Long.parseLong(value); break;
+                default:
+                    Backend backend = Backend.valueOf(key.replace('-', '_').toUpperCase());
+                    String[] latency = value.split("/");
+                    latencyMs.put(backend, new double[]{Double.parseDouble(latency[0]), Double.parseDouble(latency[1])});
+            }
+            return this;
+        }
+    }
+
+    public static class Result {
+        long makespanMs;
+        long realTimeMs;
+        int groups;
+        long failures;
+        long logins;
+        Map<Backend, Long> calls = new TreeMap<>();
+        Map<String, Long> callsByOperation = new TreeMap<>();
+        Map<String, Long> deferredSteps = new TreeMap<>();
+        RunReport report;
+
+        public long getMakespanMs() {
+            return makespanMs;
+        }
+
+        public long getRealTimeMs() {
+            return realTimeMs;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getLogins() {
+            return logins;
+        }
+
+        public Map<Backend, Long> getCalls() {
+            return calls;
+        }
+
+        /**
+         * Calls by backend and operation, as "RESOURCE_MANAGER getGroup".
+         */
+        public Map<String, Long> getCallsByOperation() {
+            return callsByOperation;
+        }
+
+        public Map<String, Long> getDeferredSteps() {
+            return deferredSteps;
+        }
+
+        /**
+         * Report of the run, timed on the virtual clock.
+         */
+        public RunReport getReport() {
+            return report;
+        }
+
+        public double getGroupsPerHour() {
+            return makespanMs == 0 ? 0 : groups * 3_600_000.0 / makespanMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("groups=%d makespan=%.2fh throughput=%.0f groups/h realTime=%dms failures=%d logins=%d calls=%s",
+                    groups, makespanMs / 3_600_000.0, getGroupsPerHour(), realTimeMs, failures, logins, calls);
+        }
+    }
+
+    /**
+     * Virtual time of a run: the thread running the simulation has its own timeline, the workers of the pool share
+     * one timeline each.
+     * <p>
+     * A worker starting a group takes the free timeline lagging the most, brought up to the time the groups were
+     * dispatched, and gives it back once the group is synchronized. Groups are thus spread over the timelines as a
+     * pool of that many workers would spread them in time, whatever the real threads that run them.
+     */
+    static class Timelines extends Clock implements SyncInterceptor {
+
+        final private VirtualClock main = new VirtualClock(0);
+        final private List<VirtualClock> free = new ArrayList<>();
+        final private List<VirtualClock> all = new ArrayList<>();
+        final private ThreadLocal<VirtualClock> current = new ThreadLocal<>();
+        final private ThreadLocal<String> group = new ThreadLocal<>();
+        final private ThreadLocal<Map<String, Long>> occurrences = new ThreadLocal<>();
+        final private Map<String, Long> runOccurrences = new HashMap<>();
+        private volatile Thread mainThread;
+
+        Timelines(int workers) {
+            for (int i = 0; i < workers; i++)
+                all.add(new VirtualClock(0));
+            free.addAll(all);
+        }
+
+        void start() {
+            mainThread = Thread.currentThread();
+        }
+
+        private VirtualClock timeline() {
+            if (Thread.currentThread() == mainThread)
+                return main;
+            VirtualClock timeline = current.get();
+            if (timeline == null) {
+                synchronized (this) {
+                    timeline = free.stream().min(Comparator.comparingLong(VirtualClock::millis)).get();
+                    free.remove(timeline);
+                    if (timeline.millis() < main.millis())
+                        timeline.advance(main.millis() - timeline.millis());
+                }
+                current.set(timeline);
+            }
+            return timeline;
+        }
+
+        long advance(long durationMs) {
+            return timeline().advance(durationMs);
+        }
+
+        /**
+         * @return how many times the call was made before within the current group, or the run outside of groups
+         */
+        long occurrence(String key) {
+            Map<String, Long> counts = occurrences.get();
+            if (counts == null) {
+                synchronized (runOccurrences) {
+                    return runOccurrences.merge(key, 1L, Long::sum) - 1;
+                }
+            }
+            return counts.merge(key, 1L, Long::sum) - 1;
+        }
+
+        String group() {
+            return group.get();
+        }
+
+        /**
+         * Brings the timeline of the thread running the simulation to the latest of the workers.
+         */
+        long join() {
+            long end = all.stream().mapToLong(VirtualClock::millis).max().orElse(0);
+            if (end > main.millis())
+                main.advance(end - main.millis());
+            return main.millis();
+        }
+
+        @Override
+        public <T> T aroundStep(String groupPath, SyncStep step, StepCall<T> call) throws Exception {
+            if (step != SyncStep.GROUP)
+                return call.call();
+            group.set(groupPath);
+            occurrences.set(new HashMap<>());
+            try {
+                return call.call();
+            } finally {
+                group.remove();
+                occurrences.remove();
+                VirtualClock timeline = current.get();
+                if (timeline != null) {
+                    current.remove();
+                    synchronized (this) {
+                        free.add(timeline);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public long millis() {
+            return timeline().millis();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException("Timelines are UTC only");
+        }
+    }
+
+    final private Scenario scenario;
+    final private Timelines clock;
+    final private Map<Backend, AtomicLong> calls = new ConcurrentHashMap<>();
+    final private Map<String, AtomicLong> callsByOperation = new ConcurrentHashMap<>();
+    final private AtomicLong failures = new AtomicLong();
+    final private AtomicLong logins = new AtomicLong();
+    final private AtomicLong ids = new AtomicLong();
+    private GroupLeases leases;
+    private RunCursor cursor;
+    private long tokenExpiresAt;
+
+    final private Map<String, Group> userManagerGroups = new LinkedHashMap<>();
+    final private Set<String> userManagerUsers = ConcurrentHashMap.newKeySet();
+    final private Map<String, Group> groups = new ConcurrentHashMap<>();
+    final private Map<String, User> users = new ConcurrentHashMap<>();
+    final private Map<String, KeyPair> keyPairs = new ConcurrentHashMap<>();
+    final private Map<String, BinaryRepository> binaryRepositories = new ConcurrentHashMap<>();
+    final private Map<String, BinaryRepository> providerRepositories = new ConcurrentHashMap<>();
+    final private Map<String, Map<String, Membership>> memberships = new ConcurrentHashMap<>();
+
+    public Simulation(Scenario scenario) {
+        this.scenario = scenario;
+        this.clock = new Timelines(Math.max(1, scenario.workers));
+        seed();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LogManager.getRootLogger().setLevel(Level.WARN);
+        Scenario scenario = new Scenario();
+        for (String arg : args) {
+            String[] keyValue = arg.split("=", 2);
+            scenario.set(keyValue[0], keyValue[1]);
+        }
+        System.out.println(new Simulation(scenario).run());
+    }
+
+    /**
+     * Groups in the user manager and their key pairs. The READY fraction of them have their members in the source
+     * manager, minus the churn, the others are PENDING and go through every step.
+     */
+    private void seed() {
+        Random random = new Random(scenario.seed);
+        for (int i = 0; i < scenario.groups; i++) {
+            String path = "kathra-projects/group" + i;
+            List<Assignation> assignations = new ArrayList<>();
+            Map<String, Membership> groupMemberships = new ConcurrentHashMap<>();
+            for (int m = 0; m < scenario.members; m++) {
+                String name = "user" + random.nextInt(Math.max(1, scenario.groups * scenario.members / 4));
+                assignations.add(new Assignation().name(name));
+                userManagerUsers.add(name);
+                if (random.nextDouble() >= scenario.memberChurn)
+                    groupMemberships.put(name, new Membership().memberName(name));
+            }
+            userManagerGroups.put(path, new Group().id("um" + i).name("group" + i).path(path).members(assignations));
+            String id = "group" + i;
+            if (i < scenario.groups * scenario.ready) {
+                groups.put(id, new Group().id(id).name("group" + i).path(path).status(Resource.StatusEnum.READY));
+                memberships.put(path + "/components", groupMemberships);
+            } else {
+                groups.put(id, new Group().id(id).name("group" + i).path(path).status(Resource.StatusEnum.PENDING)
+                        .binaryRepositories(new ArrayList<>()));
+            }
+            keyPairs.put("key" + i, new KeyPair().id("key" + i).group(new Group().id("group" + i))
+                    .publicKey("ssh-rsa AAAA" + i).privateKey("private" + i));
+        }
+    }
+
+    public Simulation leases(GroupLeases leases) {
+        this.leases = leases;
+        return this;
+    }
+
+    public Simulation cursor(RunCursor cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    public Result run() throws ApiException {
+        long start = System.nanoTime();
+        clock.start();
+        SyncContext context = new SyncContext();
+        // outermost, the timeline of a group is held until the other interceptors are done with it
+        context.getInstrumentation().addInterceptor(clock);
+        context.clock(clock).shard(new Shard(scenario.shardIndex, scenario.shardCount))
+                .workers(scenario.workers).runReporter(new RunReporter(null, 10));
+        if (leases != null)
+            context.leases(leases);
+        if (cursor != null)
+            context.cursor(cursor);
+        if (scenario.budgetMs > 0)
+            context.budget(new RunBudget(clock, scenario.budgetMs, 0));
+        if (scenario.groupBudgetMs > 0)
+            context.deadlines(new Deadlines(clock, scenario.groupBudgetMs, context.getBudget()));
+        UserSynchronizerManager manager = new UserSynchronizerManager(
+                client(SourceManagerClient.class, Backend.SOURCE_MANAGER),
+                client(PipelineManagerClient.class, Backend.PIPELINE_MANAGER),
+                client(UserManagerClient.class, Backend.USER_MANAGER),
+                client(GroupsClient.class, Backend.RESOURCE_MANAGER),
+                client(KeyPairsClient.class, Backend.RESOURCE_MANAGER),
+                new SyncBinaryRepository(client(BinaryRepositoryManagerClient.class, Backend.NEXUS),
+                        client(BinaryRepositoryManagerClient.class, Backend.HARBOR),
+                        client(GroupsClient.class, Backend.RESOURCE_MANAGER),
+                        client(UsersClient.class, Backend.RESOURCE_MANAGER),
+                        client(BinaryRepositoriesClient.class, Backend.RESOURCE_MANAGER), context),
+                new SyncTechnicalUser(client(UserManagerClient.class, Backend.USER_MANAGER),
+                        client(GroupsClient.class, Backend.RESOURCE_MANAGER),
+                        client(UsersClient.class, Backend.RESOURCE_MANAGER), context),
+                context);
+        try {
+            manager.synchronizeGroups();
+        } catch (ApiException e) {
+            // failures are part of the scenario, they are counted below
+        }
+        Result result = new Result();
+        result.makespanMs = clock.join();
+        result.realTimeMs = (System.nanoTime() - start) / 1_000_000;
+        result.groups = scenario.groups;
+        result.failures = failures.get();
+        result.logins = logins.get();
+        calls.forEach((backend, count) -> result.calls.put(backend, count.get()));
+        callsByOperation.forEach((operation, count) -> result.callsByOperation.put(operation, count.get()));
+        result.report = context.getRunReporter().build();
+        if (context.getDeadlines() != null)
+            result.deferredSteps = context.getDeadlines().getDeferredSteps();
+        return result;
+    }
+
+    private <T> T client(Class<T> type, Backend backend) {
+        // stub only: the invocations are not recorded for verification, which would keep every call of the run
+        return mock(type, withSettings().stubOnly().defaultAnswer((Answer<Object>) invocation -> call(backend, invocation)));
+    }
+
+    private Object call(Backend backend, InvocationOnMock invocation) throws ApiException {
+        String operation = invocation.getMethod().getName();
+        Object[] arguments = invocation.getArguments();
+        String key = backend + " " + operation + " " + (arguments.length > 0 && arguments[0] instanceof String ? arguments[0] : "");
+        long occurrence = clock.occurrence(key);
+        SplittableRandom random = new SplittableRandom(scenario.seed * 31 + Objects.hashCode(clock.group()) * 961L
+                + key.hashCode() * 17L + occurrence);
+
+        calls.computeIfAbsent(backend, b -> new AtomicLong()).incrementAndGet();
+        callsByOperation.computeIfAbsent(backend + " " + operation, o -> new AtomicLong()).incrementAndGet();
+        synchronized (this) {
+            // the session is shared by the workers, its token is renewed by the first of them to see it expired
+            if (clock.millis() >= tokenExpiresAt) {
+                clock.advance(scenario.loginMs);
+                tokenExpiresAt = clock.millis() + scenario.tokenTtlMs;
+                logins.incrementAndGet();
+            }
+        }
+        double[] latency = scenario.latencyMs.get(backend);
+        double sigma = Math.log(latency[1] / latency[0]) / 2.326;
+        clock.advance(Math.round(latency[0] * Math.exp(sigma * gaussian(random))));
+        if (random.nextDouble() < scenario.errorRate) {
+            failures.incrementAndGet();
+            throw new ApiException(503, "Simulated failure of " + backend.tag() + " " + operation);
+        }
+        return answer(backend, operation, arguments);
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private Object answer(Backend backend, String operation, Object[] arguments) throws ApiException {
+        switch (backend + " " + operation) {
+            case "USER_MANAGER getGroups":
+                return new ArrayList<>(userManagerGroups.values());
+            case "USER_MANAGER getGroup":
+                return Optional.ofNullable(userManagerGroups.get(arguments[0])).orElseThrow(() -> new ApiException(404, "Not found"));
+            case "USER_MANAGER getUser":
+                if (!userManagerUsers.contains(arguments[0]))
+                    throw new ApiException(404, "Not found");
+                return new User().name((String) arguments[0]);
+            case "USER_MANAGER createUser":
+                userManagerUsers.add(((User) arguments[0]).getName());
+                return arguments[0];
+            case "RESOURCE_MANAGER getGroups":
+                return new ArrayList<>(groups.values());
+            case "RESOURCE_MANAGER getGroup":
+                return Optional.ofNullable(groups.get(arguments[0])).orElseThrow(() -> new ApiException(404, "Not found"));
+            case "RESOURCE_MANAGER addGroup":
+                Group source = (Group) arguments[0];
+                Group group = new Group().id("group" + ids.incrementAndGet()).name(source.getName()).path(source.getPath())
+                        .binaryRepositories(new ArrayList<>());
+                groups.put(group.getId(), group);
+                return group;
+            case "RESOURCE_MANAGER updateGroupAttributes":
+                return patch(groups.get(arguments[0]), (Group) arguments[1]);
+            case "RESOURCE_MANAGER getUsers":
+                return new ArrayList<>(users.values());
+            case "RESOURCE_MANAGER getUser":
+                return users.get(arguments[0]);
+            case "RESOURCE_MANAGER addUser":
+                User user = (User) arguments[0];
+                user.setId("user" + ids.incrementAndGet());
+                users.put(user.getId(), user);
+                return user;
+            case "RESOURCE_MANAGER getKeyPairs":
+                return new ArrayList<>(keyPairs.values());
+            case "RESOURCE_MANAGER getKeyPair":
+                return keyPairs.get(arguments[0]);
+            case "RESOURCE_MANAGER addKeyPair":
+                KeyPair keyPair = (KeyPair) arguments[0];
+                keyPair.setId("key" + ids.incrementAndGet());
+                keyPairs.put(keyPair.getId(), keyPair);
+                return keyPair;
+            case "RESOURCE_MANAGER getBinaryRepositories":
+                return new ArrayList<>(binaryRepositories.values());
+            case "RESOURCE_MANAGER getBinaryRepository":
+                return binaryRepositories.get(arguments[0]);
+            case "RESOURCE_MANAGER addBinaryRepository":
+                BinaryRepository repository = (BinaryRepository) arguments[0];
+                repository.setId("repository" + ids.incrementAndGet());
+                binaryRepositories.put(repository.getId(), repository);
+                return repository;
+            case "NEXUS addBinaryRepository":
+            case "HARBOR addBinaryRepository":
+                BinaryRepository created = (BinaryRepository) arguments[0];
+                BinaryRepository provided = new BinaryRepository().url("https://" + backend.tag() + "/" + created.getName())
+                        .provider(backend.tag()).providerId(backend.tag() + ids.incrementAndGet());
+                providerRepositories.put(provided.getProviderId(), provided);
+                return provided;
+            case "NEXUS getBinaryRepositoryMembership":
+            case "HARBOR getBinaryRepositoryMembership":
+                return new ArrayList<>(memberships.getOrDefault(backend.tag() + ":" + arguments[0], Collections.emptyMap()).values());
+            case "NEXUS addBinaryRepositoryMembership":
+            case "HARBOR addBinaryRepositoryMembership":
+                Membership added = (Membership) arguments[1];
+                memberships.computeIfAbsent(backend.tag() + ":" + arguments[0], r -> new ConcurrentHashMap<>())
+                        .put(added.getMemberName(), added);
+                return added;
+            case "NEXUS getBinaryRepositories":
+            case "HARBOR getBinaryRepositories":
+                List<BinaryRepository> inventory = new ArrayList<>();
+                providerRepositories.values().stream().filter(p -> p.getProvider().equals(backend.tag())).forEach(inventory::add);
+                return inventory;
+            case "NEXUS getBinaryRepository":
+            case "HARBOR getBinaryRepository":
+                return Optional.ofNullable(providerRepositories.get(arguments[0])).orElseThrow(() -> new ApiException(404, "Not found"));
+            case "SOURCE_MANAGER getMemberships":
+                return new ArrayList<>(memberships.getOrDefault(arguments[0], Collections.emptyMap()).values());
+            case "SOURCE_MANAGER addMemberships":
+            case "SOURCE_MANAGER deleteMemberships":
+                @SuppressWarnings("unchecked")
+                List<Membership> changed = (List<Membership>) arguments[0];
+                for (Membership membership : changed) {
+                    if (membership.getPath() == null)
+                        continue;
+                    Map<String, Membership> members = memberships.computeIfAbsent(membership.getPath(), p -> new ConcurrentHashMap<>());
+                    if (operation.equals("addMemberships"))
+                        members.put(membership.getMemberName(), membership);
+                    else
+                        members.remove(membership.getMemberName());
+                }
+                return changed;
+            default:
+                return null;
+        }
+    }
+
+    private static Group patch(Group group, Group patch) {
+        if (group == null)
+            return null;
+        if (patch.getTechnicalUser() != null)
+            group.setTechnicalUser(patch.getTechnicalUser());
+        if (patch.getPipelineFolderStatus() != null)
+            group.setPipelineFolderStatus(patch.getPipelineFolderStatus());
+        if (patch.getBinaryRepositoryStatus() != null)
+            group.setBinaryRepositoryStatus(patch.getBinaryRepositoryStatus());
+        if (patch.getSourceRepositoryStatus() != null)
+            group.setSourceRepositoryStatus(patch.getSourceRepositoryStatus());
+        return group;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SimulationTest {
+
+    private static Simulation.Result simulate() throws Exception {
+        return new Simulation(new Simulation.Scenario().set("groups", "300").set("members", "5")
+                .set("ready", "0.8").set("errorRate", "0.01")).run();
+    }
+
+    @Test
+    public void same_scenario_gives_same_numbers() throws Exception {
+        Simulation.Result first = simulate();
+        Simulation.Result second = simulate();
+
+        assertEquals(first.getMakespanMs(), second.getMakespanMs());
+        assertEquals(first.getCalls(), second.getCalls());
+        assertEquals(first.getFailures(), second.getFailures());
+    }
+
+    @Test
+    public void time_is_virtual() throws Exception {
+        Simulation.Result result = simulate();
+
+        assertTrue(result.getMakespanMs() > 10 * result.getRealTimeMs());
+        assertTrue(result.getLogins() > 1);
+        assertTrue(result.getCalls().get(Backend.SOURCE_MANAGER) >= 300);
+        assertEquals(result.getMakespanMs(), result.getReport().getWallTimeMs());
+        assertEquals(300, result.getReport().getGroups().size());
+    }
+
+    @Test
+    public void shards_split_the_groups() throws Exception {
+        long memberships = 0;
+        for (int index = 0; index < 3; index++) {
+            Simulation.Result shard = new Simulation(new Simulation.Scenario().set("groups", "300").set("members", "5")
+                    .set("ready", "1").set("errorRate", "0").set("shardIndex", Integer.toString(index))
+                    .set("shardCount", "3")).run();
+            assertTrue(shard.getCalls().get(Backend.SOURCE_MANAGER) < 200);
+            memberships += shard.getCalls().get(Backend.SOURCE_MANAGER);
+        }
+        Simulation.Result all = new Simulation(new Simulation.Scenario().set("groups", "300").set("members", "5")
+                .set("ready", "1").set("errorRate", "0")).run();
+
+        assertEquals((long) all.getCalls().get(Backend.SOURCE_MANAGER), memberships);
+    }
+
+    @Test
+    public void workers_make_the_same_calls() throws Exception {
+        Simulation.Scenario scenario = new Simulation.Scenario().set("groups", "200").set("members", "5")
+                .set("ready", "0.5").set("errorRate", "0");
+        Simulation.Result sequential = new Simulation(scenario).run();
+        Simulation.Result parallel = new Simulation(scenario.set("workers", "4")).run();
+
+        for (Backend backend : sequential.getCalls().keySet()) {
+            // concurrent identical reads of the resource manager are shared
+            if (backend == Backend.RESOURCE_MANAGER)
+                assertTrue(parallel.getCalls().get(backend) <= sequential.getCalls().get(backend));
+            else
+                assertEquals(sequential.getCalls().get(backend), parallel.getCalls().get(backend));
+        }
+        assertEquals(0, parallel.getFailures());
+    }
+
+    @Test
+    public void makespan_drops_as_workers_are_added() throws Exception {
+        long previous = Long.MAX_VALUE;
+        for (int workers : new int[]{1, 2, 4, 8}) {
+            Simulation.Result result = new Simulation(new Simulation.Scenario().set("groups", "200").set("members", "5")
+                    .set("ready", "0.5").set("errorRate", "0").set("workers", Integer.toString(workers))).run();
+
+            assertTrue(workers + " workers: " + result.getMakespanMs(), result.getMakespanMs() < previous);
+            assertEquals(result.getMakespanMs(), result.getReport().getWallTimeMs());
+            previous = result.getMakespanMs();
+        }
+    }
+
+    @Test
+    public void binary_repositories_read_their_group_once() throws Exception {
+        Simulation.Result result = new Simulation(new Simulation.Scenario().set("groups", "100").set("members", "5")
+                .set("ready", "0").set("errorRate", "0")).run();
+
+        assertEquals(100L, (long) result.getCallsByOperation().get("RESOURCE_MANAGER getGroup"));
+        assertEquals(100L, (long) result.getCallsByOperation().get("RESOURCE_MANAGER getUser"));
+    }
+
+    @Test
+    public void report_tells_provisioned_groups_from_refreshed_ones() throws Exception {
+        Simulation.Result result = new Simulation(new Simulation.Scenario().set("groups", "100").set("members", "5")
+                .set("ready", "0.5").set("errorRate", "0")).run();
+
+        assertEquals(Integer.valueOf(50), result.getReport().getOutcomes().get("synchronized"));
+        assertEquals(Integer.valueOf(50), result.getReport().getOutcomes().get("members-refreshed"));
+        assertEquals(Long.valueOf(50), result.getReport().getTimeToReadyMs().get("count"));
+    }
+}
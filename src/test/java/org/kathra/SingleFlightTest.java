@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Test;
+import org.kathra.utils.ApiException;
+
+import java.time.Clock;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void concurrent_identical_calls_share_one_request() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> response = Collections.singletonList("user");
+        ApiCall<List<String>> call = () -> {
+            requests.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new ApiException("interrupted");
+            }
+            return response;
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> first = executor.submit(() -> singleFlight.execute("users", call));
+            while (singleFlight.getExecuted() == 0)
+                Thread.sleep(1);
+            Future<List<String>> second = executor.submit(() -> singleFlight.execute("users", call));
+            while (singleFlight.getSaved() == 0)
+                Thread.sleep(1);
+            release.countDown();
+
+            assertSame(response, first.get());
+            assertSame(response, second.get());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, requests.get());
+        assertEquals(1, singleFlight.getExecuted());
+        assertEquals(1, singleFlight.getSaved());
+    }
+
+    @Test
+    public void joiner_waits_no_longer_than_its_own_deadline() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        Deadlines deadlines = new Deadlines(Clock.systemUTC(), 200, null);
+        singleFlight.deadlines(deadlines);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> singleFlight.execute("users", () -> {
+                await(release);
+                return "user";
+            }));
+            while (singleFlight.getExecuted() == 0)
+                Thread.sleep(1);
+            long start = System.nanoTime();
+            try {
+                deadlines.aroundStep("/kathra/team", SyncStep.GROUP, () -> singleFlight.execute("users", () -> "user"));
+                fail("deadline not exceeded");
+            } catch (DeadlineExceededException e) {
+                assertTrue((System.nanoTime() - start) / 1_000_000 < 10_000);
+            }
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        assertTrue(deadlines.isDeferred("/kathra/team"));
+    }
+
+    @Test
+    public void deadline_of_the_leader_is_not_shared() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger requests = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("users", () -> {
+                requests.incrementAndGet();
+                await(release);
+                throw new DeadlineExceededException("No time left for the leader");
+            }));
+            while (singleFlight.getExecuted() == 0)
+                Thread.sleep(1);
+            Future<String> joiner = executor.submit(() -> singleFlight.execute("users", () -> {
+                requests.incrementAndGet();
+                return "user";
+            }));
+            while (singleFlight.getSaved() == 0)
+                Thread.sleep(1);
+            release.countDown();
+
+            assertEquals("user", joiner.get());
+            try {
+                leader.get();
+                fail("deadline of the leader not rethrown");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof DeadlineExceededException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, requests.get());
+        assertEquals(2, singleFlight.getExecuted());
+        assertEquals(0, singleFlight.getSaved());
+    }
+
+    @Test
+    public void sequential_calls_are_not_shared() throws ApiException {
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger requests = new AtomicInteger();
+
+        singleFlight.execute("group:1", requests::incrementAndGet);
+        singleFlight.execute("group:1", requests::incrementAndGet);
+        singleFlight.execute("group:2", requests::incrementAndGet);
+
+        assertEquals(3, requests.get());
+        assertEquals(0, singleFlight.getSaved());
+    }
+
+    @Test(expected = ApiException.class)
+    public void errors_are_propagated_to_the_caller() throws ApiException {
+        new SingleFlight().execute("keyPairs", () -> {
+            throw new ApiException("Foobar");
+        });
+    }
+
+    private static void await(CountDownLatch latch) throws ApiException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new ApiException("interrupted");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kathra.binaryrepositorymanager.client.BinaryRepositoryManagerClient;
+import org.kathra.core.model.*;
+import org.kathra.resourcemanager.client.BinaryRepositoriesClient;
+import org.kathra.resourcemanager.client.GroupsClient;
+import org.kathra.resourcemanager.client.UsersClient;
+import org.kathra.utils.ApiException;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class SyncBinaryRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BinaryRepositoryManagerClient nexus = mock(BinaryRepositoryManagerClient.class);
+    private final BinaryRepositoryManagerClient harbor = mock(BinaryRepositoryManagerClient.class);
+    private final GroupsClient groupsClient = mock(GroupsClient.class);
+    private final UsersClient usersClient = mock(UsersClient.class);
+    private final BinaryRepositoriesClient binaryRepositoriesClient = mock(BinaryRepositoriesClient.class);
+    private final List<BinaryRepository> listed = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        when(groupsClient.getGroup("g1")).thenReturn(new Group().id("g1").name("group1").path("kathra-projects/group1")
+                .members(Collections.singletonList(new Assignation().name("alice")))
+                .technicalUser(new User().id("u1")));
+        when(usersClient.getUser("u1")).thenReturn(new User().id("u1").name("group1_technicaluser"));
+        for (BinaryRepository.TypeEnum type : BinaryRepository.TypeEnum.values())
+            listed.add(new BinaryRepository().id("r-" + type).type(type).group(new Group().id("g1"))
+                    .status(Resource.StatusEnum.READY));
+        when(binaryRepositoriesClient.getBinaryRepositories()).thenReturn(listed);
+        for (BinaryRepositoryManagerClient provider : new BinaryRepositoryManagerClient[]{nexus, harbor}) {
+            when(provider.getBinaryRepositories()).thenReturn(new ArrayList<>());
+            when(provider.addBinaryRepository(any())).then(invocation -> {
+                BinaryRepository request = invocation.getArgument(0);
+                return new BinaryRepository().url("https://provider/" + request.getId()).provider("provider")
+                        .providerId("p-" + request.getId());
+            });
+        }
+    }
+
+    private SyncBinaryRepository sync() {
+        return new SyncBinaryRepository(nexus, harbor, groupsClient, usersClient, binaryRepositoriesClient,
+                new SyncContext());
+    }
+
+    @Test
+    public void group_and_technical_user_are_read_once() throws Exception {
+        sync().synchronize(new Group().id("g1"));
+
+        verify(groupsClient, times(1)).getGroup("g1");
+        verify(usersClient, times(1)).getUser("u1");
+        verify(nexus, times(4)).addBinaryRepositoryMembership(anyString(), any());
+        verify(harbor, times(4)).addBinaryRepositoryMembership(anyString(), any());
+    }
+
+    @Test
+    public void indexed_repositories_keep_their_group_reference() throws Exception {
+        sync().synchronize(new Group().id("g1"));
+
+        ArgumentCaptor<BinaryRepository> requests = ArgumentCaptor.forClass(BinaryRepository.class);
+        verify(nexus, times(2)).addBinaryRepository(requests.capture());
+        for (BinaryRepository request : requests.getAllValues())
+            assertEquals("group1", request.getGroup().getName());
+        for (BinaryRepository repository : listed) {
+            assertNull(repository.getGroup().getName());
+            assertNull(repository.getGroup().getMembers());
+            assertEquals("p-" + repository.getId(), repository.getProviderId());
+        }
+    }
+
+    @Test
+    public void repository_missing_from_the_listing_is_probed_before_being_created() throws Exception {
+        for (BinaryRepository repository : listed)
+            repository.providerId("p-" + repository.getId());
+        when(nexus.getBinaryRepository(anyString())).then(invocation ->
+                new BinaryRepository().providerId(invocation.getArgument(0)));
+        when(harbor.getBinaryRepository(anyString())).thenThrow(new ApiException(404, "Not found"));
+
+        sync().synchronize(new Group().id("g1"));
+
+        verify(nexus, times(2)).getBinaryRepository(anyString());
+        verify(nexus, never()).addBinaryRepository(any());
+        verify(harbor, times(2)).getBinaryRepository(anyString());
+        verify(harbor, times(2)).addBinaryRepository(any());
+    }
+
+    @Test
+    public void exceeded_deadline_stops_the_next_types() throws Exception {
+        for (BinaryRepositoryManagerClient provider : new BinaryRepositoryManagerClient[]{nexus, harbor})
+            doThrow(new DeadlineExceededException("No time left")).when(provider).addBinaryRepository(any());
+
+        try {
+            sync().synchronize(new Group().id("g1"));
+            fail("deadline not rethrown");
+        } catch (DeadlineExceededException e) {
+            verify(nexus, atMost(1)).addBinaryRepository(any());
+            verify(harbor, atMost(1)).addBinaryRepository(any());
+            verify(binaryRepositoriesClient, never()).updateBinaryRepositoryAttributes(anyString(), any());
+        }
+    }
+
+    @Test
+    public void failed_type_keeps_the_journaled_calls_of_the_step() throws Exception {
+        OperationJournal journal = OperationJournal.open(folder.getRoot().toPath().resolve("journal.jsonl").toString(), 100);
+        SyncContext context = new SyncContext().journal(journal);
+        SyncBinaryRepository sync = new SyncBinaryRepository(nexus, harbor, groupsClient, usersClient,
+                binaryRepositoriesClient, context);
+        doThrow(new ApiException(503, "Harbor unavailable")).when(harbor).addBinaryRepositoryMembership(anyString(), any());
+
+        try {
+            context.getInstrumentation().step("kathra-projects/group1", SyncStep.BINARY_REPOSITORY,
+                    () -> sync.synchronize(new Group().id("g1")));
+            fail("failure not rethrown");
+        } catch (ApiException e) {
+            assertEquals(1, journal.steps());
+        }
+        verify(nexus, times(4)).addBinaryRepositoryMembership(anyString(), any());
+    }
+}
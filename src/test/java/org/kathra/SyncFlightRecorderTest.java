@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SyncFlightRecorderTest {
+
+    @Test
+    public void records_group_step_and_call_events() throws Exception {
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(new SyncFlightRecorder());
+        Path dump = Files.createTempFile("synchronizer", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("org.kathra.synchronizer.GroupSync");
+            recording.enable("org.kathra.synchronizer.SyncStep");
+            recording.enable("org.kathra.synchronizer.DownstreamCall");
+            recording.start();
+            instrumentation.step("/kathra-projects/path0", SyncStep.GROUP,
+                    () -> instrumentation.step("/kathra-projects/path0", SyncStep.PIPELINE, () -> {
+                        instrumentation.run(Backend.PIPELINE_MANAGER, "createFolder", () -> {});
+                        return null;
+                    }));
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        Files.deleteIfExists(dump);
+        RecordedEvent call = events.stream()
+                .filter(e -> e.getEventType().getName().equals("org.kathra.synchronizer.DownstreamCall"))
+                .findFirst().orElseThrow(AssertionError::new);
+        assertEquals("/kathra-projects/path0", call.getString("groupPath"));
+        assertEquals("pipeline-manager", call.getString("backend"));
+        assertEquals("createFolder", call.getString("operation"));
+        assertEquals("ok", call.getString("status"));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("org.kathra.synchronizer.SyncStep")
+                && e.getString("step").equals("pipeline")));
+        assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("org.kathra.synchronizer.GroupSync")));
+    }
+}
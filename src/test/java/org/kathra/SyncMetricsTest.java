@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.kathra.utils.ApiException;
+
+import static org.junit.Assert.*;
+
+public class SyncMetricsTest {
+
+    @Test
+    public void downstream_calls_are_timed_by_backend_and_operation() throws ApiException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(new SyncMetrics(registry));
+
+        instrumentation.run(Backend.PIPELINE_MANAGER, "createFolder", () -> {});
+        instrumentation.run(Backend.PIPELINE_MANAGER, "createFolder", () -> {});
+
+        assertEquals(2, registry.get("kathra.synchronizer.calls")
+                .tags("backend", "pipeline-manager", "operation", "createFolder", "outcome", "success")
+                .timer().count());
+        assertEquals(0, registry.get("kathra.synchronizer.calls.inflight")
+                .tags("backend", "pipeline-manager", "operation", "createFolder")
+                .gauge().value(), 0);
+    }
+
+    @Test
+    public void downstream_errors_are_counted() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(new SyncMetrics(registry));
+
+        try {
+            instrumentation.run(Backend.HARBOR, "addBinaryRepository", () -> {
+                throw new ApiException("Foobar");
+            });
+            fail();
+        } catch (ApiException e) {
+            // expected
+        }
+
+        assertEquals(1, registry.get("kathra.synchronizer.call.errors")
+                .tags("backend", "harbor", "operation", "addBinaryRepository")
+                .counter().count(), 0);
+        assertEquals(1, registry.get("kathra.synchronizer.calls")
+                .tags("backend", "harbor", "outcome", "error")
+                .timer().count());
+    }
+
+    @Test
+    public void steps_are_timed() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(new SyncMetrics(registry));
+
+        assertTrue(instrumentation.step("/kathra-projects/path0", SyncStep.GROUP, () -> true));
+
+        assertEquals(1, registry.get("kathra.synchronizer.steps")
+                .tags("step", "group", "outcome", "success")
+                .timer().count());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020. The Kathra Authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *    IRT SystemX (https://www.kathra.org/)
+ *
+ */
+
+package org.kathra;
+
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.Test;
+import org.kathra.utils.ApiException;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SyncTracingTest {
+
+    private SpanData span(List<SpanData> spans, String name) {
+        return spans.stream().filter(s -> s.getName().equals(name)).findFirst().orElseThrow(AssertionError::new);
+    }
+
+    @Test
+    public void group_steps_and_calls_are_nested_spans() throws Exception {
+        InMemorySpanExporter exporter = InMemorySpanExporter.create();
+        OpenTelemetrySdk openTelemetry = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder().addSpanProcessor(SimpleSpanProcessor.create(exporter)).build())
+                .build();
+        Instrumentation instrumentation = new Instrumentation().addInterceptor(new SyncTracing(openTelemetry));
+
+        try {
+            instrumentation.step("/kathra-projects/path0", SyncStep.GROUP,
+                    () -> instrumentation.step("/kathra-projects/path0", SyncStep.PIPELINE, () -> {
+                        instrumentation.run(Backend.PIPELINE_MANAGER, "createFolder", () -> {
+                            throw new ApiException("Foobar");
+                        });
+                        return null;
+                    }));
+            fail();
+        } catch (ApiException e) {
+            // expected
+        }
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        SpanData group = span(spans, "syncGroup");
+        SpanData step = span(spans, "tryToSynchronizeGroupPipeline");
+        SpanData call = span(spans, "pipeline-manager createFolder");
+        assertFalse(group.getParentSpanContext().isValid());
+        assertEquals(group.getSpanId(), step.getParentSpanId());
+        assertEquals(step.getSpanId(), call.getParentSpanId());
+        assertEquals(group.getTraceId(), call.getTraceId());
+        assertEquals(StatusCode.ERROR, call.getStatus().getStatusCode());
+        assertEquals("/kathra-projects/path0", group.getAttributes().get(SyncTracing.GROUP_PATH));
+    }
+}
@@ -21,6 +21,7 @@
 package org.kathra;
 
 import org.junit.Test;
+import org.kathra.core.model.Group;
 import org.kathra.core.model.KeyPair;
 import org.kathra.resourcemanager.client.KeyPairsClient;
 import org.kathra.utils.ApiException;
@@ -28,6 +29,8 @@ import org.kathra.utils.ApiException;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 /**
@@ -37,13 +40,28 @@ public class UserSynchronizerManagerInitTest extends UserSynchronizerTests {
 
 
     @Test
-    public void init_manager_get_keys_pairs() throws ApiException {
+    public void init_manager_doesnt_get_keys_pairs() throws ApiException {
         List<KeyPair> mockedKeyPairs = new ArrayList<KeyPair>(1);
         keyPairsClient = mock(KeyPairsClient.class);
         when(keyPairsClient.getKeyPairs()).thenReturn(mockedKeyPairs);
 
         init_user_sync_manager();
 
+        verify(keyPairsClient, times(0)).getKeyPairs();
+
+    }
+
+    @Test
+    public void keys_pairs_are_got_once_on_first_lookup() throws ApiException {
+        List<KeyPair> mockedKeyPairs = new ArrayList<KeyPair>(1);
+        mockedKeyPairs.add(new KeyPair().id("key").group(new Group().id("0")).privateKey("private").publicKey("public"));
+        keyPairsClient = mock(KeyPairsClient.class);
+        when(keyPairsClient.getKeyPairs()).thenReturn(mockedKeyPairs);
+
+        init_user_sync_manager();
+
+        assertTrue(userSynchronizerManager.getKeyPairFromGroup(new Group().id("0")).isPresent());
+        assertFalse(userSynchronizerManager.getKeyPairFromGroup(new Group().id("1")).isPresent());
         verify(keyPairsClient, times(1)).getKeyPairs();
 
     }
@@ -120,6 +120,22 @@ public class UserSynchronizerManagerSyncGroupsPipelineManagerTest extends UserSy
         tearDown();
     }
 
+    @Test
+    public void create_group_on_resource_manager_from_the_user_manager_model()
+            throws ApiException {
+        setUp();
+        init_user_sync_manager();
+
+        given_groups_from_user_manager(0, 1);
+        given_pending_groups_from_resource_manager(0);
+
+        userSynchronizerManager.synchronizeGroups();
+
+        verify(groupsClient, times(1)).addGroup(same(groupsFromUserManager.get(1)));
+
+        tearDown();
+    }
+
 
     @Test
     public void do_not_add_group_if_group_is_on_user_manager_but_not_in_resource_manager()
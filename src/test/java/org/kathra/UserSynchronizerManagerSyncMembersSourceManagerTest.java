@@ -32,6 +32,7 @@ import org.kathra.core.model.Resource.StatusEnum;
 import org.kathra.utils.ApiException;
 import org.kathra.utils.serialization.GsonUtils;
 import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -43,6 +44,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -256,4 +258,98 @@ public class UserSynchronizerManagerSyncMembersSourceManagerTest extends UserSyn
                 tearDown();
         }
 
-}
\ No newline at end of file
+        @Test
+        public void members_with_another_role_are_added_again_before_removals() throws ApiException, NoSuchAlgorithmException {
+                setUp();
+
+                int[] groups = { 0 };
+                int[][] user_manager_groups_members = { { 0, 1 } };
+                given_groups_with_members_from_user_manager(groups, user_manager_groups_members);
+                given_ready_groups_from_resource_manager(groups);
+                given_groups_have_key_pairs(groups);
+                List<Membership>[] source_manager_members = create_memberships(groups, new int[][] { { 1, 2, 2 } });
+                source_manager_members[0].get(0).role(Membership.RoleEnum.CONTRIBUTOR);
+                when(sourceManager.getMemberships(any(), any()))
+                                .then(new AnswerGetMembershipWithUsers(source_manager_members));
+                init_user_sync_manager();
+
+                userSynchronizerManager.synchronizeGroups();
+
+                InOrder order = inOrder(sourceManager);
+                order.verify(sourceManager).addMemberships(argThat(new MembershipListMatcher(
+                                create_memberships(groups, new int[][] { { 0 } })[0])));
+                order.verify(sourceManager).addMemberships(argThat(new MembershipListMatcher(
+                                create_memberships(groups, new int[][] { { 1 } })[0])));
+                order.verify(sourceManager).deleteMemberships(argThat(new MembershipListMatcher(
+                                create_memberships(groups, new int[][] { { 2 } })[0])));
+
+                tearDown();
+        }
+
+        @Test
+        public void refused_role_update_does_not_fail_the_additions() throws ApiException, NoSuchAlgorithmException {
+                setUp();
+
+                int[] groups = { 0 };
+                given_groups_with_members_from_user_manager(groups, new int[][] { { 0, 1 } });
+                given_ready_groups_from_resource_manager(groups);
+                given_groups_have_key_pairs(groups);
+                List<Membership>[] source_manager_members = create_memberships(groups, new int[][] { { 1, 2 } });
+                source_manager_members[0].get(0).role(Membership.RoleEnum.CONTRIBUTOR);
+                when(sourceManager.getMemberships(any(), any()))
+                                .then(new AnswerGetMembershipWithUsers(source_manager_members));
+                List<Membership> update = create_memberships(groups, new int[][] { { 1 } })[0];
+                doThrow(new ApiException(409, "Member already exists")).when(sourceManager)
+                                .addMemberships(argThat(new MembershipListMatcher(update)));
+                init_user_sync_manager();
+
+                userSynchronizerManager.synchronizeGroups();
+
+                verify(sourceManager, times(1)).addMemberships(argThat(new MembershipListMatcher(
+                                create_memberships(groups, new int[][] { { 0 } })[0])));
+                verify(sourceManager, times(1)).deleteMemberships(argThat(new MembershipListMatcher(
+                                create_memberships(groups, new int[][] { { 2 } })[0])));
+
+                tearDown();
+        }
+
+        @Test
+        public void groups_with_a_failed_step_are_not_recorded_as_synchronized() throws ApiException, NoSuchAlgorithmException {
+                setUp();
+
+                int[] groups = { 0, 1 };
+                int[][] user_manager_groups_members = { { 0, 1 }, { 5, 6 } };
+                given_groups_with_members_from_user_manager(groups, user_manager_groups_members);
+                given_ready_groups_from_resource_manager(groups);
+                given_groups_have_key_pairs(groups);
+                given_source_manager_groups_members(groups, new int[][] { {}, {} });
+                doThrow(new ApiException(503, "Source manager unavailable")).when(sourceManager)
+                                .getMemberships(eq("/kathra-projects/path1/components"), any());
+                SyncHistory history = new SyncHistory(null);
+                history.synchronizedMembers("/kathra-projects/removed", 1);
+                RunCursor cursor = new RunCursor(null);
+                SyncContext context = new SyncContext().history(history).cursor(cursor);
+                userSynchronizerManager = new UserSynchronizerManager(sourceManager, pipelineManager, userManager,
+                                groupsClient, keyPairsClient, syncBinaryRepository, syncUserTechnical, context);
+
+                userSynchronizerManager.synchronizeGroups();
+
+                assertFalse(history.membersChanged("/kathra-projects/path0", fingerprint(0, 0, 1)));
+                assertTrue(history.membersChanged("/kathra-projects/path1", fingerprint(1, 5, 6)));
+                assertNull(history.get("/kathra-projects/removed"));
+                // the duration of a failed group would make it look short to the scheduler
+                assertNull(history.get("/kathra-projects/path1"));
+                assertTrue(history.expectedDurationMs("/kathra-projects/path0") > 0);
+
+                tearDown();
+        }
+
+        private long fingerprint(int group, int... members) {
+                MemberSets memberSets = new MemberSets(new MemberDictionary());
+                List<Assignation> assignations = new ArrayList<>();
+                for (int member : members)
+                        assignations.add(createAssignation(group, member));
+                return memberSets.fingerprint(memberSets.ofAssignations(assignations));
+        }
+
+}